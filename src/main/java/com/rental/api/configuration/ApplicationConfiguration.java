@@ -1,11 +1,13 @@
 package com.rental.api.configuration;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -17,6 +19,9 @@ public class ApplicationConfiguration {
 
     private final UserRepository userRepository;
 
+    @Value("${security.password.bcrypt-strength:10}")
+    private int bcryptStrength;
+
     public ApplicationConfiguration(UserRepository userRepository){
         this.userRepository = userRepository;
     }
@@ -32,14 +37,43 @@ public class ApplicationConfiguration {
             .orElseThrow(() -> new UsernameNotFoundException("User not found"));
     }
 
+    /**
+     * Retrieves the UserDetailsPasswordService implementation that stores rehashed passwords.
+     * 
+     * @return UserDetailsPasswordService implementation based on UserRepository.
+     */
+    @Bean
+    UserDetailsPasswordService userDetailsPasswordService(){
+        return (userDetails, newPassword) -> userRepository.findByEmail(userDetails.getUsername())
+            .map(user -> {
+                user.updatePassword(newPassword);
+                return userRepository.save(user);
+            })
+            .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    }
+
     /**
      * Provides a BCrypt password encoder bean.
+     * <p>
+     * The work factor is set by {@code security.password.bcrypt-strength}. Passwords hashed with
+     * another factor are rehashed on the next successful login.
+     * </p>
      * 
      * @return BCryptPasswordEncoder instance.
      */
     @Bean
     BCryptPasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength) {
+            @Override
+            public boolean upgradeEncoding(String encodedPassword) {
+                // BCrypt validates the hash and upgrades weaker ones, stronger ones are downgraded here
+                if (super.upgradeEncoding(encodedPassword)) {
+                    return true;
+                }
+                return encodedPassword != null && !encodedPassword.isEmpty()
+                    && Integer.parseInt(encodedPassword.substring(4, 6)) != bcryptStrength;
+            }
+        };
     }
 
     /**
@@ -65,6 +99,7 @@ public class ApplicationConfiguration {
 
         authProvider.setUserDetailsService(userDetailsService());
         authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setUserDetailsPasswordService(userDetailsPasswordService());
         return authProvider;
     }
 }
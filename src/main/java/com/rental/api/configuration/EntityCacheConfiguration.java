@@ -0,0 +1,86 @@
+package com.rental.api.configuration;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.MissingCacheStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+/**
+ * Configures the Hibernate second-level cache of the {@code User} and {@code Rental} entities.
+ * <p>
+ * Regions are in-process Caffeine caches accessed through JCache, bounded by size and age.
+ * Entities use the read-write strategy, so a committed {@code save} updates or evicts their entry.
+ * Hit and miss counts are exposed through actuator as {@code hibernate.second.level.cache.requests}
+ * and {@code hibernate.cache.natural.id.requests}.
+ * </p>
+ */
+@Configuration
+public class EntityCacheConfiguration {
+    /** Region of the rental entities, declared on {@code Rental}. */
+    public static final String RENTAL_REGION = "rentals";
+    /** Region of the user entities, declared on {@code User}. */
+    public static final String USER_REGION = "users";
+    /** Region resolving user emails to IDs, declared on {@code User}. */
+    public static final String USER_NATURAL_ID_REGION = "users-by-email";
+
+    /**
+     * Creates the JCache manager holding the second-level cache regions.
+     *
+     * @param expireAfterWrite The maximum age of a cached entity.
+     * @param rentalMaxSize The maximum number of cached rentals.
+     * @param userMaxSize The maximum number of cached users and email resolutions.
+     * @return CacheManager with one cache per region.
+     */
+    @Bean(destroyMethod = "close")
+    CacheManager entityCacheManager(
+        @Value("${entity-cache.expire-after-write:10m}") Duration expireAfterWrite,
+        @Value("${entity-cache.rentals.max-size:10000}") long rentalMaxSize,
+        @Value("${entity-cache.users.max-size:10000}") long userMaxSize
+    ) {
+        // A dedicated URI so that several application contexts do not share regions
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+            .getCacheManager(URI.create("rental-api-entities-" + System.identityHashCode(this)), getClass().getClassLoader());
+
+        cacheManager.createCache(RENTAL_REGION, regionConfiguration(expireAfterWrite, rentalMaxSize));
+        cacheManager.createCache(USER_REGION, regionConfiguration(expireAfterWrite, userMaxSize));
+        cacheManager.createCache(USER_NATURAL_ID_REGION, regionConfiguration(expireAfterWrite, userMaxSize));
+        return cacheManager;
+    }
+
+    /**
+     * Enables the second-level cache on top of the entity cache manager.
+     *
+     * @param entityCacheManager The cache manager holding the regions.
+     * @return HibernatePropertiesCustomizer enabling the JCache region factory.
+     */
+    @Bean
+    HibernatePropertiesCustomizer entityCacheHibernateProperties(CacheManager entityCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, entityCacheManager);
+            // Every region is created above, a missing one is a mapping mistake
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, MissingCacheStrategy.FAIL.getExternalRepresentation());
+        };
+    }
+
+    private CaffeineConfiguration<Object, Object> regionConfiguration(Duration expireAfterWrite, long maxSize) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setExpireAfterWrite(OptionalLong.of(expireAfterWrite.toNanos()));
+        configuration.setMaximumSize(OptionalLong.of(maxSize));
+        return configuration;
+    }
+}
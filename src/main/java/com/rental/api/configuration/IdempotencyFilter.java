@@ -0,0 +1,429 @@
+package com.rental.api.configuration;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rental.api.model.AuthenticatedUser;
+import com.rental.api.response.GenericResponse;
+import com.rental.api.service.IdempotencyService;
+import com.rental.api.service.IdempotencyService.Claim;
+import com.rental.api.service.IdempotencyService.StoredResponse;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Applies the {@link IdempotencyService} to the mutating requests sent with an {@code Idempotency-Key} header.
+ * <p>
+ * Keys are scoped to the authenticated user, or shared by anonymous requests. A request is
+ * fingerprinted by its method, URI and media type without parameters. JSON bodies are read in
+ * memory up to {@code idempotency.max-body-size}, larger ones are answered with 413 Payload Too
+ * Large, and their length and digest are added to the fingerprint. Other bodies, such as multipart
+ * uploads, are not read, so that retried uploads are answered before their body is received: the
+ * key is trusted to stand for their content, as their length and any {@code Content-Digest} cover
+ * the multipart boundary that clients generate again for each attempt. The filter runs before the
+ * {@link UploadAdmissionFilter}, so that retries take no upload capacity.
+ * </p>
+ * <p>
+ * Logins are not filtered, and responses carrying a token are never stored: handlers issuing
+ * one call {@link #doNotStore}, so that tokens are not kept with the idempotency keys and a
+ * retry executes the request again. A handler may instead store the outcome of the request with
+ * {@link #storeOutcome}, such as the ID of a registered user: retries are then executed with the
+ * outcome available from {@link #replayedOutcome}, to issue a new token without redoing the work.
+ * </p>
+ * <p>
+ * Replayed responses carry an {@code Idempotent-Replayed: true} header. A key reused with a
+ * different request is answered with 422 Unprocessable Entity, and a retry whose original request
+ * is still in progress with 409 Conflict and a {@code Retry-After} header.
+ * </p>
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 100)
+public class IdempotencyFilter extends OncePerRequestFilter {
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final String CLAIM_ATTRIBUTE = IdempotencyFilter.class.getName() + ".claim";
+    private static final String NOT_STORED_ATTRIBUTE = IdempotencyFilter.class.getName() + ".notStored";
+    private static final String OUTCOME_ATTRIBUTE = IdempotencyFilter.class.getName() + ".outcome";
+    private static final String REPLAYED_OUTCOME_ATTRIBUTE = IdempotencyFilter.class.getName() + ".replayedOutcome";
+    /** The content type marking the stored outcomes, handed back to the handler instead of being replayed. */
+    private static final String OUTCOME_CONTENT_TYPE = "application/vnd.rental-api.idempotent-outcome";
+    private static final String LOGIN_PATH = "/api/auth/login";
+
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
+    private final int maxBodySize;
+
+    /**
+     * Constructs the filter.
+     *
+     * @param idempotencyService The service storing the responses of the idempotency keys.
+     * @param objectMapper       The mapper writing the error responses.
+     * @param maxBodySize        The maximum size of a JSON body read to be fingerprinted.
+     */
+    public IdempotencyFilter(
+        IdempotencyService idempotencyService,
+        ObjectMapper objectMapper,
+        @Value("${idempotency.max-body-size:64KB}") DataSize maxBodySize
+    ) {
+        this.idempotencyService = idempotencyService;
+        this.objectMapper = objectMapper;
+        this.maxBodySize = Math.toIntExact(maxBodySize.toBytes());
+    }
+
+    /**
+     * Prevents the response of a request from being stored, such as a response carrying a token.
+     * A retry with the same key then executes the request again.
+     *
+     * @param request The HTTP servlet request.
+     */
+    public static void doNotStore(HttpServletRequest request) {
+        request.setAttribute(NOT_STORED_ATTRIBUTE, Boolean.TRUE);
+    }
+
+    /**
+     * Stores the outcome of a request instead of its response, such as a response carrying a token.
+     * A retry with the same key then executes the request again with the outcome available from
+     * {@link #replayedOutcome}.
+     *
+     * @param request The HTTP servlet request.
+     * @param outcome The outcome of the request, enough to build its response again.
+     */
+    public static void storeOutcome(HttpServletRequest request, String outcome) {
+        request.setAttribute(OUTCOME_ATTRIBUTE, outcome);
+    }
+
+    /**
+     * Retrieves the outcome stored by the original request of a retry.
+     *
+     * @param request The HTTP servlet request.
+     * @return The outcome stored with {@link #storeOutcome}, or empty if the request is not a retry.
+     */
+    public static Optional<String> replayedOutcome(HttpServletRequest request) {
+        return Optional.ofNullable((String) request.getAttribute(REPLAYED_OUTCOME_ATTRIBUTE));
+    }
+
+    /**
+     * Replays the response of a request already made with the same key, or executes the request
+     * and stores its response.
+     *
+     * @param request     The HTTP servlet request.
+     * @param response    The HTTP servlet response.
+     * @param filterChain The filter chain executing the request.
+     * @throws ServletException If a servlet exception occurs.
+     * @throws IOException      If an I/O exception occurs.
+     */
+    @Override
+    protected void doFilterInternal(
+        @NonNull HttpServletRequest request,
+        @NonNull HttpServletResponse response,
+        @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        if (isAsyncDispatch(request)) {
+            // Result of an asynchronous request, written to the wrapper created on its first dispatch
+            filterChain.doFilter(request, response);
+            Claim claim = (Claim) request.getAttribute(CLAIM_ATTRIBUTE);
+            ContentCachingResponseWrapper wrapper = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+            if (claim != null && wrapper != null && !isAsyncStarted(request)) {
+                complete(request, claim, wrapper);
+            }
+            return;
+        }
+
+        String key = request.getHeader(IDEMPOTENCY_KEY);
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            reject(response, HttpStatus.BAD_REQUEST, "Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+
+        HttpServletRequest executed = request;
+        String fingerprint = String.join("\n",
+            request.getMethod(),
+            request.getRequestURI(),
+            String.valueOf(request.getQueryString()),
+            mediaType(request));
+        if (isJson(request)) {
+            // Chunked bodies have no length, they are bounded while read
+            byte[] body = request.getContentLengthLong() > maxBodySize
+                ? null : request.getInputStream().readNBytes(maxBodySize + 1);
+            if (body == null || body.length > maxBodySize) {
+                reject(response, HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Request bodies sent with an Idempotency-Key are limited to " + maxBodySize + " bytes");
+                return;
+            }
+            fingerprint += "\n" + body.length + "\n" + sha256(body);
+            executed = new CachedBodyRequest(request, body);
+        }
+
+        Claim claim;
+        try {
+            claim = idempotencyService.claim(scope() + ":" + key, fingerprint);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for the original request");
+            return;
+        }
+
+        switch (claim.getState()) {
+            case REPLAY -> {
+                if (OUTCOME_CONTENT_TYPE.equals(claim.getResponse().getContentType())) {
+                    // Executed again by the handler from the outcome, and not stored again
+                    executed.setAttribute(REPLAYED_OUTCOME_ATTRIBUTE, new String(claim.getResponse().getBody(), StandardCharsets.UTF_8));
+                    response.setHeader(IDEMPOTENT_REPLAYED, "true");
+                    filterChain.doFilter(executed, response);
+                } else {
+                    replay(response, claim.getResponse());
+                }
+            }
+            case MISMATCH -> reject(response, HttpStatus.UNPROCESSABLE_ENTITY, "Idempotency-Key already used by a different request");
+            case IN_PROGRESS -> {
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(idempotencyService.getMaxWait().plusMillis(999).toSeconds()));
+                reject(response, HttpStatus.CONFLICT, "A request with this Idempotency-Key is in progress, retry later");
+            }
+            case EXECUTE -> execute(executed, response, filterChain, claim);
+        }
+    }
+
+    /**
+     * Only filters the mutating API requests sent with an idempotency key, except logins.
+     *
+     * @param request The HTTP servlet request.
+     * @return true if the request is not a mutating request with an idempotency key, or is a login.
+     */
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        if (request.getHeader(IDEMPOTENCY_KEY) == null) {
+            return true;
+        }
+        String method = request.getMethod();
+        boolean mutating = HttpMethod.POST.matches(method) || HttpMethod.PUT.matches(method)
+            || HttpMethod.PATCH.matches(method) || HttpMethod.DELETE.matches(method);
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !mutating || !path.startsWith("/api/") || path.equals(LOGIN_PATH);
+    }
+
+    /**
+     * Also filters the dispatch of asynchronous results, whose response is stored once complete.
+     *
+     * @return false.
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    private void execute(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain, Claim claim)
+        throws ServletException, IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            filterChain.doFilter(request, wrapper);
+        } catch (ServletException | IOException | RuntimeException e) {
+            claim.release();
+            throw e;
+        }
+
+        if (isAsyncStarted(request)) {
+            request.setAttribute(CLAIM_ATTRIBUTE, claim);
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    // Released unless completed by the dispatch of the result
+                    claim.release();
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    claim.release();
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    claim.release();
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+            return;
+        }
+        complete(request, claim, wrapper);
+    }
+
+    private void complete(HttpServletRequest request, Claim claim, ContentCachingResponseWrapper wrapper) throws IOException {
+        String outcome = (String) request.getAttribute(OUTCOME_ATTRIBUTE);
+        if (outcome != null) {
+            claim.complete(new StoredResponse(
+                wrapper.getStatus(),
+                OUTCOME_CONTENT_TYPE,
+                null,
+                outcome.getBytes(StandardCharsets.UTF_8)
+            ));
+            wrapper.copyBodyToResponse();
+            return;
+        }
+        if (request.getAttribute(NOT_STORED_ATTRIBUTE) != null) {
+            claim.release();
+            wrapper.copyBodyToResponse();
+            return;
+        }
+        claim.complete(new StoredResponse(
+            wrapper.getStatus(),
+            wrapper.getContentType(),
+            wrapper.getHeader(HttpHeaders.LOCATION),
+            wrapper.getContentAsByteArray()
+        ));
+        wrapper.copyBodyToResponse();
+    }
+
+    private void replay(HttpServletResponse response, StoredResponse stored) throws IOException {
+        response.setStatus(stored.getStatus());
+        response.setHeader(IDEMPOTENT_REPLAYED, "true");
+        if (stored.getContentType() != null) {
+            response.setContentType(stored.getContentType());
+        }
+        if (stored.getLocation() != null) {
+            response.setHeader(HttpHeaders.LOCATION, stored.getLocation());
+        }
+        response.setContentLength(stored.getBody().length);
+        response.getOutputStream().write(stored.getBody());
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new GenericResponse(message));
+    }
+
+    private static String scope() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof AuthenticatedUser user) {
+            return "user:" + user.getId();
+        }
+        return "anonymous";
+    }
+
+    /**
+     * The media type of a request without its parameters, such as the multipart boundary that
+     * clients generate again for each attempt.
+     */
+    private static String mediaType(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        if (contentType == null) {
+            return "null";
+        }
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            return mediaType.getType() + "/" + mediaType.getSubtype();
+        } catch (IllegalArgumentException e) {
+            return contentType;
+        }
+    }
+
+    private static boolean isJson(HttpServletRequest request) {
+        try {
+            return request.getContentType() != null
+                && MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(request.getContentType()));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String sha256(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * A request whose body was read to be fingerprinted, and is read again from memory.
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return input.read(buffer, offset, length);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    // The whole body is already in memory
+                    try {
+                        listener.onDataAvailable();
+                        listener.onAllDataRead();
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.rental.api.configuration;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -13,7 +14,10 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.servlet.HandlerExceptionResolver;
 
+import com.rental.api.model.AuthenticatedUser;
+import com.rental.api.model.User;
 import com.rental.api.service.JwtService;
+import com.rental.api.service.VerifiedToken;
 
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -62,20 +66,21 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter{
         }
         try {
             final String jwt = authHeader.substring(7); // get token
-            final String userEmail = jwtService.extractUsername(jwt); // get email
+            final VerifiedToken token = jwtService.verify(jwt); // check signature and expiration once
+            final String userEmail = token.getSubject(); // get email
 
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication(); // if already authenticated
 
             if (userEmail != null && authentication == null) {
 
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail); // load user
+                AuthenticatedUser principal = getPrincipal(token); // build user from claims
 
-                if(jwtService.isTokenValid(jwt, userDetails)){
-                    // if token valid create authToken
+                if(principal != null){
+                    // if token matches a user create authToken
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails,
+                        principal,
                         null,
-                        userDetails.getAuthorities()
+                        List.of()
                     );
 
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -91,4 +96,25 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter{
 
     }
 
+    /**
+     * Builds the principal of a verified token.
+     * <p>
+     * Tokens carrying the user claims are trusted as is. Tokens issued before these claims
+     * were added fall back to loading the user.
+     * </p>
+     *
+     * @param token The verified token.
+     * @return The principal, or null if the token does not match a user.
+     */
+    private AuthenticatedUser getPrincipal(VerifiedToken token) {
+        if (token.getUserId() != null) {
+            return new AuthenticatedUser(token.getUserId(), token.getSubject(), token.getName());
+        }
+
+        UserDetails userDetails = this.userDetailsService.loadUserByUsername(token.getSubject()); // load user
+        if (userDetails instanceof User user && token.getSubject().equals(user.getUsername())) {
+            return AuthenticatedUser.of(user);
+        }
+        return null;
+    }
 }
@@ -0,0 +1,36 @@
+package com.rental.api.configuration;
+
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.boot.web.servlet.MultipartConfigFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.rental.api.service.UploadLimits;
+
+import jakarta.servlet.MultipartConfigElement;
+
+/**
+ * Configures the servlet multipart parsing of the rental uploads sent to {@code POST} and
+ * {@code PUT /api/rentals}.
+ */
+@Configuration
+public class MultipartConfiguration {
+    /**
+     * Creates the multipart configuration of the dispatcher servlet, limited by the
+     * {@link UploadLimits} instead of {@code spring.servlet.multipart.max-file-size} and
+     * {@code max-request-size}, so that a full gallery is accepted.
+     *
+     * @param properties The other {@code spring.servlet.multipart} properties.
+     * @param uploadLimits The size limits of the rental uploads.
+     * @return MultipartConfigElement of the dispatcher servlet.
+     */
+    @Bean
+    MultipartConfigElement multipartConfigElement(MultipartProperties properties, UploadLimits uploadLimits) {
+        MultipartConfigFactory factory = new MultipartConfigFactory();
+        factory.setLocation(properties.getLocation());
+        factory.setFileSizeThreshold(properties.getFileSizeThreshold());
+        factory.setMaxFileSize(uploadLimits.getMaxPictureSize());
+        factory.setMaxRequestSize(uploadLimits.getMaxRequestSize());
+        return factory.createMultipartConfig();
+    }
+}
@@ -0,0 +1,29 @@
+package com.rental.api.configuration;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.stat.spi.StatisticsFactory;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.rental.api.monitoring.CountingStatementInspector;
+import com.rental.api.monitoring.JdbcTimingSessionListener;
+import com.rental.api.monitoring.RowCountingStatistics;
+
+@Configuration
+public class QueryMonitoringConfiguration {
+
+    /**
+     * Registers the Hibernate hooks recording the SQL activity of each request.
+     *
+     * @return HibernatePropertiesCustomizer adding the statement inspector, session listener and statistics.
+     */
+    @Bean
+    HibernatePropertiesCustomizer queryMonitoringHibernateProperties() {
+        return properties -> {
+            properties.put(AvailableSettings.STATEMENT_INSPECTOR, new CountingStatementInspector());
+            properties.put(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, JdbcTimingSessionListener.class.getName());
+            properties.put(AvailableSettings.STATS_BUILDER, (StatisticsFactory) RowCountingStatistics::new);
+        };
+    }
+}
@@ -1,16 +1,20 @@
 package com.rental.api.configuration;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 
+/**
+ * Configures the Amazon S3 client of the {@code s3} storage backend, the default one.
+ */
 @Configuration
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
 public class S3Configuration {
     @Value("${aws.access.key}")
     private String awsAccessKey;
@@ -18,11 +22,14 @@ public class S3Configuration {
     @Value("${aws.secret.key}")
     private String awsSecretKey;
 
+    @Value("${aws.s3.region:eu-central-1}")
+    private String awsRegion;
+
     /**
      * Creates and configures an Amazon S3 client using the AWS SDK.
      * 
      * @return Configured AmazonS3 client instance.
-     * @throws IllegalArgumentException If the AWS access or secret key is invalid.
+     * @throws IllegalArgumentException If the AWS access or secret key, or the region, is invalid.
      */
     @Bean
     public AmazonS3 s3client() {
@@ -33,7 +40,7 @@ public class S3Configuration {
         // Creates client
         var awsS3Config = AmazonS3ClientBuilder.standard()
                 .withCredentials(new AWSStaticCredentialsProvider(awsCreds))
-                .withRegion(Regions.EU_CENTRAL_1) // This field if not exist throws an exception
+                .withRegion(awsRegion) // This field if not exist throws an exception
                 .build();
 
         return awsS3Config;
@@ -0,0 +1,108 @@
+package com.rental.api.configuration;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rental.api.response.GenericResponse;
+import com.rental.api.service.UploadAdmission;
+import com.rental.api.service.UploadAdmission.Permit;
+import com.rental.api.service.UploadLimits;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Applies the {@link UploadAdmission} to the rental uploads before their body is read.
+ * <p>
+ * Multipart bodies are resolved lazily, so an upload rejected here never reaches the heap, the
+ * disk or the storage backend. Rejected uploads are answered with 503 Service Unavailable and a
+ * {@code Retry-After} header. The filter runs after authentication, so anonymous requests do not
+ * take any capacity.
+ * </p>
+ */
+@Component
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+    private static final Pattern RENTAL_PATH = Pattern.compile("/api/rentals/[^/]+");
+
+    private final UploadAdmission uploadAdmission;
+    private final UploadLimits uploadLimits;
+    private final ObjectMapper objectMapper;
+
+    public UploadAdmissionFilter(UploadAdmission uploadAdmission, UploadLimits uploadLimits, ObjectMapper objectMapper) {
+        this.uploadAdmission = uploadAdmission;
+        this.uploadLimits = uploadLimits;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Holds an admission permit while an upload is received and handled, or rejects it.
+     *
+     * @param request     The HTTP servlet request.
+     * @param response    The HTTP servlet response.
+     * @param filterChain The filter chain to proceed with once the upload is admitted.
+     * @throws ServletException If a servlet exception occurs.
+     * @throws IOException      If an I/O exception occurs.
+     */
+    @Override
+    protected void doFilterInternal(
+        @NonNull HttpServletRequest request,
+        @NonNull HttpServletResponse response,
+        @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        // Bodies of unknown length, sent chunked, may be as large as the request size limit
+        long length = request.getContentLengthLong();
+        Optional<Permit> permit;
+        try {
+            permit = uploadAdmission.tryAdmit(length >= 0 ? length : uploadLimits.getMaxRequestSize().toBytes());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permit = Optional.empty();
+        }
+
+        if (permit.isEmpty()) {
+            reject(response);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permit.get().close();
+        }
+    }
+
+    /**
+     * Only filters the requests creating or updating a rental, which carry its pictures.
+     *
+     * @param request The HTTP servlet request.
+     * @return true if the request is not a rental upload.
+     */
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (HttpMethod.POST.matches(request.getMethod())) {
+            return !(path.equals("/api/rentals") || path.equals("/api/rentals/stream"));
+        }
+        return !(HttpMethod.PUT.matches(request.getMethod()) && RENTAL_PATH.matcher(path).matches());
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(uploadAdmission.getRetryAfter().plusMillis(999).toSeconds()));
+        // The unread body is not worth keeping the connection open for
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new GenericResponse("Too many uploads in progress, retry later"));
+    }
+}
@@ -1,16 +1,25 @@
 package com.rental.api.controller;
 
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.rental.api.configuration.IdempotencyFilter;
 import com.rental.api.dto.LoginUserDto;
 import com.rental.api.dto.RegisterUserDto;
+import com.rental.api.model.AuthenticatedUser;
 import com.rental.api.model.User;
 import com.rental.api.response.AuthResponse;
 import com.rental.api.response.GenericResponse;
 import com.rental.api.response.UserDetailsResponse;
 import com.rental.api.service.AuthenticationService;
 import com.rental.api.service.JwtService;
+import com.rental.api.service.LoginThrottle;
+import com.rental.api.service.UserService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -20,7 +29,11 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.security.SecurityRequirements;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -41,20 +54,31 @@ import org.springframework.web.bind.annotation.GetMapping;
 public class AuthenticationController {
     private JwtService jwtService;
     private AuthenticationService authenticationService;
+    private UserService userService;
+    private LoginThrottle loginThrottle;
+
+    @Value("${security.password.hashing.retry-after:1}")
+    private long retryAfterSeconds;
 
     public AuthenticationController (
         JwtService jwtService,
-        AuthenticationService authenticationService
+        AuthenticationService authenticationService,
+        UserService userService,
+        LoginThrottle loginThrottle
     ){
         this.jwtService = jwtService;
         this.authenticationService = authenticationService;
+        this.userService = userService;
+        this.loginThrottle = loginThrottle;
     }
 
     /**
      * Endpoint for user registration.
      * 
      * @param registerUserDto DTO containing user registration details.
-     * @return ResponseEntity containing an AuthResponse with JWT token upon successful registration.
+     * @param request The HTTP request, through which retries with the same Idempotency-Key get a new token.
+     * @return Future of a ResponseEntity containing an AuthResponse with JWT token upon successful registration,
+     *         or a GenericResponse if too many passwords are being hashed.
      */
     @PostMapping("/register")
     @Operation(
@@ -67,22 +91,46 @@ public class AuthenticationController {
             responseCode = "200", 
             description = "User registered successfully", 
             content = @Content(mediaType = "application/json", schema = @Schema(implementation = AuthResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "503", 
+            description = "Too many concurrent authentications, retry after the Retry-After delay",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
         )
     })
-    public ResponseEntity<AuthResponse> register(@RequestBody RegisterUserDto registerUserDto) {
-        User registeredUser = authenticationService.signup(registerUserDto);
-        String jwtToken = jwtService.generateToken(registeredUser);
-        AuthResponse response = new AuthResponse(jwtToken);
-        
-        return ResponseEntity.ok(response);
+    public CompletableFuture<ResponseEntity<?>> register(@RequestBody RegisterUserDto registerUserDto, HttpServletRequest request) {
+        // The token is not stored to be replayed to retries, only the ID of the registered user
+        IdempotencyFilter.doNotStore(request);
+        Optional<User> registered = IdempotencyFilter.replayedOutcome(request)
+            .flatMap(id -> userService.getUserById(Integer.valueOf(id)));
+        if (registered.isPresent()) {
+            // Retry of a registration whose response was lost: a new token, without hashing the password again
+            AuthResponse response = new AuthResponse(jwtService.generateToken(registered.get()));
+            return CompletableFuture.completedFuture(ResponseEntity.ok(response));
+        }
+
+        try {
+            return authenticationService.signupAsync(registerUserDto).thenApply(registeredUser -> {
+                IdempotencyFilter.storeOutcome(request, String.valueOf(registeredUser.getId()));
+                String jwtToken = jwtService.generateToken(registeredUser);
+                AuthResponse response = new AuthResponse(jwtToken);
+
+                return ResponseEntity.ok(response);
+            });
+        }
+        catch (TaskRejectedException ex) {
+            return CompletableFuture.completedFuture(busyResponse());
+        }
     }
 
     /**
      * Endpoint for user authentication (login).
      * 
      * @param loginUserDto DTO containing user login credentials.
-     * @return ResponseEntity containing an AuthResponse with JWT token upon successful authentication,
-     *         or a GenericResponse with error details upon authentication failure.
+     * @param request The HTTP request, used to throttle attempts per client address.
+     * @return Future of a ResponseEntity containing an AuthResponse with JWT token upon successful authentication,
+     *         or a GenericResponse with error details upon authentication failure, if too many attempts were made
+     *         or if too many passwords are being hashed.
      */
     @PostMapping("/login")
     @Operation(
@@ -99,20 +147,45 @@ public class AuthenticationController {
             responseCode = "401", 
             description = "Authentication failed due to invalid credentials",
             content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "429", 
+            description = "Too many login attempts for this email or client, retry after the Retry-After delay",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "503", 
+            description = "Too many concurrent authentications, retry after the Retry-After delay",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
         )
     })
-    public ResponseEntity<?> authenticate(@RequestBody LoginUserDto loginUserDto) {
-        try {
-            User authenticatedUser = authenticationService.authenticate(loginUserDto);
+    public CompletableFuture<ResponseEntity<?>> authenticate(@RequestBody LoginUserDto loginUserDto, HttpServletRequest request) {
+        // Reject floods before looking up the user or hashing the password
+        Duration retryAfter = loginThrottle.tryAcquire(request.getRemoteAddr(), loginUserDto.getEmail());
+        if (!retryAfter.isZero()) {
+            GenericResponse errorResponse = new GenericResponse("Too many login attempts, retry later");
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter.plusMillis(999).toSeconds()))
+                .body(errorResponse));
+        }
 
-            String jwtToken = jwtService.generateToken(authenticatedUser);
-            AuthResponse response = new AuthResponse(jwtToken);
+        try {
+            return authenticationService.authenticateAsync(loginUserDto).<ResponseEntity<?>>thenApply(authenticatedUser -> {
+                String jwtToken = jwtService.generateToken(authenticatedUser);
+                AuthResponse response = new AuthResponse(jwtToken);
 
-            return ResponseEntity.ok(response);
+                return ResponseEntity.ok(response);
+            }).exceptionally(ex -> {
+                Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                if (cause instanceof AuthenticationException) {
+                    GenericResponse errorResponse = new GenericResponse("error");
+                    return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
+                }
+                throw new CompletionException(cause);
+            });
         }
-        catch (AuthenticationException ex) {
-            GenericResponse errorResponse = new GenericResponse("error");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
+        catch (TaskRejectedException ex) {
+            return CompletableFuture.completedFuture(busyResponse());
         }
     }
 
@@ -145,14 +218,22 @@ public class AuthenticationController {
 
         /*
             Handle case where user tries to access /me without being authenticated 
-            (Error in terminal when casting `authentication.getPrincipal()` to User class)
+            (Error in terminal when casting `authentication.getPrincipal()` to AuthenticatedUser class)
         */ 
-        if (authentication == null || !authentication.isAuthenticated() || !(authentication.getPrincipal() instanceof User)) {
+        if (authentication == null || !authentication.isAuthenticated() || !(authentication.getPrincipal() instanceof AuthenticatedUser)) {
+            GenericResponse errorResponse = new GenericResponse("Forbidden");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(errorResponse);
+        }
+
+        // The principal only holds the token claims, load the full user
+        AuthenticatedUser principal = (AuthenticatedUser) authentication.getPrincipal();
+        Optional<User> fetchedUser = userService.getUserById(principal.getId());
+        if (fetchedUser.isEmpty()) {
             GenericResponse errorResponse = new GenericResponse("Forbidden");
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(errorResponse);
         }
 
-        User currentUser = (User) authentication.getPrincipal();
+        User currentUser = fetchedUser.get();
 
         UserDetailsResponse userDetails = new UserDetailsResponse(
             currentUser.getId(),
@@ -164,4 +245,16 @@ public class AuthenticationController {
 
         return ResponseEntity.ok(userDetails);
     }
+
+    /**
+     * Builds the response sent when the password hashing executor is saturated.
+     *
+     * @return ResponseEntity with a 503 status and a Retry-After header.
+     */
+    private ResponseEntity<?> busyResponse() {
+        GenericResponse errorResponse = new GenericResponse("Service busy, retry later");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+            .body(errorResponse);
+    }
 }
@@ -1,13 +1,22 @@
 package com.rental.api.controller;
 
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.rental.api.dto.MessageDto;
 import com.rental.api.response.GenericResponse;
+import com.rental.api.response.InboxResponse;
+import com.rental.api.response.MessageCountsResponse;
 import com.rental.api.service.MessageService;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -15,6 +24,9 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -29,13 +41,19 @@ public class MessageController {
 
     private MessageService messageService;
 
+    @Value("${message.ingestion.retry-after:1s}")
+    private Duration retryAfter;
+
     public MessageController(MessageService messageService){
         this.messageService = messageService;
     }
 
     /**
      * Endpoint to send a message to the owner of a rental.
-     * 
+     * <p>
+     * The message is acknowledged once validated and queued, it is written shortly after.
+     * </p>
+     *
      * @param messageDto DTO containing details of the message to be sent.
      * @return ResponseEntity containing a GenericResponse indicating success or failure of the operation.
      */
@@ -53,14 +71,144 @@ public class MessageController {
             responseCode = "200", 
             description = "Message sent successfully",
             content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "400",
+            description = "Empty or too long message",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "503",
+            description = "Too many messages waiting to be written, retry after the delay of the Retry-After header",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
         )
     })
     @SecurityRequirement(name = "bearerAuth")
     public  ResponseEntity<GenericResponse> sendMessage(@RequestBody MessageDto messageDto) {
-        
-        messageService.addNewMessage(messageDto);
+
+        try {
+            if (!messageService.addNewMessage(messageDto)) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter.plusMillis(999).toSeconds()))
+                    .body(new GenericResponse("Too many messages, retry later"));
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new GenericResponse(e.getMessage()));
+        }
         GenericResponse response = new GenericResponse("Message sent with success");
         return ResponseEntity.ok(response);
     }
-    
+
+    /**
+     * Endpoint to fetch a page of the messages received by the current user about their rentals.
+     *
+     * @param after Opaque cursor returned as {@code next_cursor} by the previous page.
+     * @param limit Maximum number of messages to return.
+     * @return ResponseEntity containing an InboxResponse with the page of messages, newest first,
+     *         or a GenericResponse if the cursor is invalid.
+     */
+    @GetMapping("/inbox")
+    @Operation(
+        summary = "Get the inbox",
+        description = "Retrieve a page of the messages received about the rentals of the current user, newest first. Use `next_cursor` as `after` to fetch the next page.",
+        parameters = {
+            @Parameter(name = "after", description = "Cursor of the previous page"),
+            @Parameter(name = "limit", description = "Maximum number of messages to return")
+        }
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Messages retrieved successfully",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = InboxResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "400",
+            description = "Invalid cursor",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        )
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<?> getInbox(
+        @RequestParam(required = false) String after,
+        @RequestParam(required = false) Integer limit
+    ) {
+        try {
+            return ResponseEntity.ok(messageService.getInbox(after, limit));
+        } catch (IllegalArgumentException ex) {
+            GenericResponse response = new GenericResponse("Invalid cursor");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
+    /**
+     * Endpoint to receive the messages sent to the current user about their rentals as they are written.
+     *
+     * @return SseEmitter streaming a {@code message} event per message, formatted as in the inbox.
+     */
+    @GetMapping(path = "/inbox/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+        summary = "Stream the inbox",
+        description = "Receive the new messages about the rentals of the current user as server-sent `message` events. "
+            + "Heartbeat comments are sent while idle. The stream is closed if the client does not keep up or after a timeout, "
+            + "clients then reconnect and catch up with the inbox."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Stream opened",
+            content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE)
+        )
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    public SseEmitter streamInbox() {
+        return messageService.subscribeToInbox();
+    }
+
+    /**
+     * Endpoint to fetch the number of messages, and of unread messages, received about each rental of the current user.
+     *
+     * @return ResponseEntity containing a MessageCountsResponse with the counts per rental and their totals.
+     */
+    @GetMapping("/counts")
+    @Operation(
+        summary = "Get the message counts",
+        description = "Retrieve the number of messages and of unread messages received about each rental of the current user, and their totals"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Message counts retrieved successfully",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = MessageCountsResponse.class))
+        )
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<MessageCountsResponse> getMessageCounts() {
+        return ResponseEntity.ok(messageService.getMessageCounts());
+    }
+
+    /**
+     * Endpoint to mark the messages received so far about the rentals of the current user as read.
+     *
+     * @param rentalId The ID of one of their rentals, or null for all of them.
+     * @return ResponseEntity containing a GenericResponse indicating success of the operation.
+     */
+    @PostMapping("/read")
+    @Operation(
+        summary = "Mark messages as read",
+        description = "Mark the messages received so far about a rental of the current user, or about all of them, as read",
+        parameters = @Parameter(name = "rental_id", description = "ID of the rental, all rentals of the current user if omitted")
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Messages marked as read",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        )
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<GenericResponse> markAsRead(@RequestParam(name = "rental_id", required = false) Integer rentalId) {
+        messageService.markAsRead(rentalId);
+        return ResponseEntity.ok(new GenericResponse("Messages marked as read"));
+    }
 }
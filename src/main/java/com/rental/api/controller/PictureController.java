@@ -0,0 +1,270 @@
+package com.rental.api.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.rental.api.response.GenericResponse;
+import com.rental.api.service.PictureCache;
+import com.rental.api.service.PictureCache.CachedPicture;
+import com.rental.api.service.PictureCache.Tier;
+import com.rental.api.service.PictureKeys;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Controller class serving the rental pictures through the {@link PictureCache}.
+ * <p>
+ * Only files of the local storage backend are sent without copying: they are handed to the
+ * connector, which sends them with {@code sendfile} when the servlet container supports it.
+ * Pictures held in memory are written from their direct buffer, and files of the disk tier, which
+ * may be evicted once the handler returns, with {@link FileChannel#transferTo} while the handler
+ * holds them, as are local files when {@code sendfile} is not supported. Both write to the
+ * response through {@link Channels#newChannel}, which copies them through a
+ * small heap buffer, 8KB at a time.
+ * </p>
+ */
+@RequestMapping("/api/pictures")
+@RestController
+@Tag(name = "Picture API", description = "API for rental pictures")
+public class PictureController {
+    /** Request attributes through which Tomcat sends a file with {@code sendfile}. */
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final String NOSNIFF_HEADER = "X-Content-Type-Options";
+
+    private final PictureCache pictureCache;
+
+    public PictureController(PictureCache pictureCache) {
+        this.pictureCache = pictureCache;
+    }
+
+    /**
+     * Endpoint to download a picture, or a single byte range of it.
+     * 
+     * @param key Key of the picture.
+     * @param request The current request, carrying the {@code Range} and conditional headers.
+     * @param response The response the picture is written to.
+     * @return null once the picture is written, or a GenericResponse if the key or the range is invalid,
+     *         or if the picture cannot be retrieved from the storage backend.
+     *         Answers 304 Not Modified when the picture matches the {@code If-None-Match} or {@code If-Modified-Since} headers.
+     * @throws IOException if reading the picture or writing the response fails.
+     */
+    @GetMapping("/{key}")
+    @Operation(
+        summary = "Get a picture",
+        description = "Download a rental picture, supporting single byte ranges",
+        parameters = @Parameter(name = "key", description = "Key of the picture", required = true)
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200", 
+            description = "Picture returned successfully"
+        ),
+        @ApiResponse(
+            responseCode = "206", 
+            description = "Requested range of the picture returned successfully"
+        ),
+        @ApiResponse(
+            responseCode = "304", 
+            description = "Picture not modified since the provided ETag or date"
+        ),
+        @ApiResponse(
+            responseCode = "404", 
+            description = "Picture not found for the provided key",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "416", 
+            description = "Requested range not satisfiable",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "502", 
+            description = "Picture storage unavailable",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        )
+    })
+    public ResponseEntity<?> getPicture(
+        @PathVariable("key") String key,
+        HttpServletRequest request,
+        HttpServletResponse response
+    ) throws IOException {
+        Optional<CachedPicture> cached;
+        try {
+            cached = pictureCache.get(key);
+        } catch (IllegalArgumentException e) {
+            cached = Optional.empty();
+        } catch (IllegalStateException e) {
+            GenericResponse body = new GenericResponse("Picture storage unavailable");
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(body);
+        }
+        if (cached.isEmpty()) {
+            GenericResponse body = new GenericResponse("Picture not found");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(body);
+        }
+
+        try (CachedPicture picture = cached.get()) {
+            return writePicture(key, picture, request, response);
+        }
+    }
+
+    /**
+     * Writes a picture, or the requested range of it, unless it is not modified.
+     *
+     * @return null once the picture is written, or a GenericResponse if the range is invalid.
+     */
+    private ResponseEntity<?> writePicture(String key, CachedPicture picture, HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+        long length = picture.getLength();
+        long lastModified = picture.getLastModified();
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+        // A content key always designates the same picture
+        if (PictureKeys.isContentAddressed(key)) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, PictureKeys.IMMUTABLE_CACHE_CONTROL);
+        }
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return null;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        // Invalid and multiple ranges are answered with the whole picture, as allowed by RFC 9110
+        List<HttpRange> ranges = parseRanges(request, etag, lastModified);
+        if (ranges.size() == 1) {
+            start = ranges.get(0).getRangeStart(length);
+            end = ranges.get(0).getRangeEnd(length);
+            if (start >= length || start > end) {
+                GenericResponse body = new GenericResponse("Range not satisfiable");
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                    .body(body);
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+
+        // Pictures are served from the API origin: anything but an image is downloaded, never rendered
+        Optional<String> contentType = PictureKeys.imageContentType(key);
+        response.setHeader(NOSNIFF_HEADER, "nosniff");
+        if (contentType.isPresent()) {
+            response.setContentType(contentType.get());
+        } else {
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().build().toString());
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentLengthLong(end - start + 1);
+        if (length > 0) {
+            if (picture.getFile() != null) {
+                send(picture.getFile(), picture.getTier() == Tier.LOCAL, start, end, request, response);
+            } else {
+                send(picture.getContent(), start, end, response);
+            }
+            pictureCache.served(picture, end - start + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Parses the {@code Range} header, unless it is invalid or an {@code If-Range} header does not
+     * match the current version of the picture.
+     *
+     * @return The requested ranges, empty if the whole picture must be sent.
+     */
+    private List<HttpRange> parseRanges(HttpServletRequest request, String etag, long lastModified) {
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range == null) {
+            return List.of();
+        }
+        if (ifRange != null) {
+            boolean matches = ifRange.startsWith("\"") || ifRange.startsWith("W/")
+                ? ifRange.equals(etag)
+                : lastModified / 1000 <= ifRangeDate(request) / 1000;
+            if (!matches) {
+                return List.of();
+            }
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+
+    private long ifRangeDate(HttpServletRequest request) {
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Sends the bytes {@code start} to {@code end} (inclusive) of a picture held in memory.
+     */
+    private void send(ByteBuffer content, long start, long end, HttpServletResponse response) throws IOException {
+        content.limit((int) end + 1).position((int) start);
+        WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+        while (content.hasRemaining()) {
+            target.write(content);
+        }
+    }
+
+    /**
+     * Sends the bytes {@code start} to {@code end} (inclusive) of a file, by {@code sendfile} after
+     * the handler returns if allowed and supported.
+     */
+    private void send(Path file, boolean sendfile, long start, long end, HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+        if (sendfile && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            while (position <= end) {
+                long transferred = channel.transferTo(position, end - position + 1, target);
+                if (transferred <= 0) {
+                    break; // the file was truncated
+                }
+                position += transferred;
+            }
+        }
+    }
+}
@@ -3,13 +3,18 @@ package com.rental.api.controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.rental.api.dto.RentalCreateDto;
 import com.rental.api.dto.RentalUpdateDto;
 import com.rental.api.model.Rental;
 import com.rental.api.response.GenericResponse;
 import com.rental.api.response.RentalResponse;
+import com.rental.api.service.RentalResponseCache;
+import com.rental.api.service.RentalResponseCache.CachedJson;
 import com.rental.api.service.RentalService;
+import com.rental.api.service.ResourceVersions;
+import com.rental.api.service.StreamingUploadService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -19,10 +24,19 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
+import org.apache.commons.fileupload2.core.FileUploadException;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -31,6 +45,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * Controller class for handling CRUD operations on rentals.
@@ -41,40 +56,123 @@ import org.springframework.web.bind.annotation.PutMapping;
 public class RentalController {
 
     private final RentalService rentalService;
+    private final RentalResponseCache rentalResponseCache;
+    private final StreamingUploadService streamingUploadService;
 
-    public RentalController(RentalService rentalService){
+    @Value("${rental.picture-upload.retry-after:5s}")
+    private Duration uploadRetryAfter;
+
+    public RentalController(
+        RentalService rentalService,
+        RentalResponseCache rentalResponseCache,
+        StreamingUploadService streamingUploadService
+    ){
         this.rentalService = rentalService;
+        this.rentalResponseCache = rentalResponseCache;
+        this.streamingUploadService = streamingUploadService;
     }
 
     /**
-     * Endpoint to fetch all rentals from the database.
+     * Endpoint to fetch a page of rentals from the database.
      * 
-     * @return ResponseEntity containing a RentalResponse with the list of rentals retrieved.
+     * @param after Opaque cursor returned as {@code next_cursor} by the previous page.
+     * @param limit Maximum number of rentals to return.
+     * @param request The current request, used to answer conditional requests.
+     * @return ResponseEntity containing a RentalResponse with the page of rentals retrieved,
+     *         or a GenericResponse if the cursor is invalid.
+     *         Answers 304 Not Modified when the page matches the {@code If-None-Match} header.
      */
     @GetMapping("")
     @Operation(
         summary = "Get all rentals",
-        description = "Retrieve a list of all rental properties from the database"
+        description = "Retrieve a page of rental properties ordered by creation date. Use `next_cursor` as `after` to fetch the next page.",
+        parameters = {
+            @Parameter(name = "after", description = "Cursor of the previous page"),
+            @Parameter(name = "limit", description = "Maximum number of rentals to return")
+        }
     )
     @ApiResponses(value = {
         @ApiResponse(
             responseCode = "200", 
             description = "List of rentals retrieved successfully",
             content = @Content(mediaType = "application/json", schema = @Schema(implementation = RentalResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "304", 
+            description = "Page not modified since the provided ETag"
+        ),
+        @ApiResponse(
+            responseCode = "400", 
+            description = "Invalid cursor",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        )
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<?> getAllRentals(
+        @RequestParam(required = false) String after,
+        @RequestParam(required = false) Integer limit,
+        WebRequest request
+    ) {
+        int pageLimit = rentalService.getPageLimit(limit);
+        try {
+            // Answer conditional requests from the page versions when the page is not cached
+            if (ResourceVersions.isConditional(request) && rentalResponseCache.peekPage(after, pageLimit).isEmpty()
+                && request.checkNotModified(rentalService.getRentalPageVersion(after, pageLimit))) {
+                return null;
+            }
+
+            CachedJson page = rentalResponseCache.getPage(after, pageLimit, () -> rentalService.getRentalPage(after, pageLimit));
+            return json(page);
+        } catch (IllegalArgumentException ex) {
+            GenericResponse response = new GenericResponse("Invalid cursor");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
+    /**
+     * Endpoint to export all rentals as newline-delimited JSON.
+     * <p>
+     * Also served on {@code GET /api/rentals} when the client sends {@code Accept: application/x-ndjson}.
+     * </p>
+     * 
+     * @return ResponseEntity streaming one rental per line.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(
+        summary = "Export all rentals",
+        description = "Stream every rental property as newline-delimited JSON, one rental per line"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200", 
+            description = "Rentals streamed successfully",
+            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = Rental.class))
         )
     })
     @SecurityRequirement(name = "bearerAuth")
-    public ResponseEntity<RentalResponse> getAllRentals() {
-        List<Rental> rentals = (List<Rental>) rentalService.getAllRentals();
-        RentalResponse rentalResponse = new RentalResponse(rentals);
-        return ResponseEntity.ok(rentalResponse);
+    public ResponseEntity<StreamingResponseBody> streamRentals() {
+        StreamingResponseBody body = rentalService::exportRentals;
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Endpoint to export all rentals when the listing is requested as newline-delimited JSON.
+     * 
+     * @return ResponseEntity streaming one rental per line.
+     */
+    @GetMapping(path = "", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(hidden = true)
+    public ResponseEntity<StreamingResponseBody> streamAllRentals() {
+        return streamRentals();
     }
 
     /**
      * Endpoint to fetch a rental by its ID.
      * 
      * @param id ID of the rental to be retrieved.
+     * @param request The current request, used to answer conditional requests.
      * @return ResponseEntity containing either the Rental found or a GenericResponse with an error message if not found.
+     *         Answers 304 Not Modified when the rental matches the {@code If-None-Match} or {@code If-Modified-Since} headers.
      */
     @GetMapping("/{id}")
     @Operation(
@@ -88,6 +186,10 @@ public class RentalController {
             description = "Rental found and returned successfully",
             content = @Content(mediaType = "application/json", schema = @Schema(implementation = Rental.class))
         ),
+        @ApiResponse(
+            responseCode = "304", 
+            description = "Rental not modified since the provided ETag or date"
+        ),
         @ApiResponse(
             responseCode = "404", 
             description = "Rental not found for the provided ID",
@@ -95,12 +197,22 @@ public class RentalController {
         )
     })
     @SecurityRequirement(name = "bearerAuth")
-    public ResponseEntity<?> getRental(@PathVariable("id") final Integer id) {
-        Optional<Rental> fetchedRental = rentalService.getRentalById(id);
+    public ResponseEntity<?> getRental(@PathVariable("id") final Integer id, WebRequest request) {
+        // Answer conditional requests from the rental version when the rental is not cached
+        if (ResourceVersions.isConditional(request) && rentalResponseCache.peekRental(id).isEmpty()) {
+            Optional<Date> version = rentalService.getRentalVersion(id);
+            if (version.isPresent() && request.checkNotModified(
+                ResourceVersions.etag("rental", id, version.get()),
+                ResourceVersions.millis(version.get())
+            )) {
+                return null;
+            }
+        }
+
+        Optional<CachedJson> fetchedRental = rentalResponseCache.getRental(id, () -> rentalService.getRentalWithGallery(id));
         
         if (fetchedRental.isPresent()) {
-            Rental rental = fetchedRental.get();
-            return ResponseEntity.ok().body(rental);
+            return json(fetchedRental.get());
         } else {
             GenericResponse response = new GenericResponse("Rental not found");
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
@@ -113,7 +225,7 @@ public class RentalController {
      * @param name Name of the rental.
      * @param surface Surface area of the rental.
      * @param price Price of the rental.
-     * @param picture Picture of the rental.
+     * @param pictures Pictures of the rental, cover first, sent as repeated {@code picture} parts.
      * @param description Description of the rental.
      * @return ResponseEntity containing a GenericResponse indicating success or failure of the operation.
      */
@@ -130,7 +242,17 @@ public class RentalController {
     @ApiResponses(value = {
         @ApiResponse(
             responseCode = "201", 
-            description = "Rental created successfully",
+            description = "Rental created successfully, its pictures are uploaded in the background (picture_status PENDING)",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "400", 
+            description = "Too many pictures",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "503", 
+            description = "Too many uploads in progress, retry after the Retry-After delay",
             content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
         )
     })
@@ -139,7 +261,7 @@ public class RentalController {
         @RequestParam String name,
         @RequestParam int surface,
         @RequestParam double price,
-        @RequestParam MultipartFile picture,
+        @RequestParam("picture") List<MultipartFile> pictures,
         @RequestParam String description
     ) {
         RentalCreateDto rentalDto = new RentalCreateDto();
@@ -147,13 +269,79 @@ public class RentalController {
         rentalDto.setSurface(surface);
         rentalDto.setPrice(price);
         rentalDto.setDescription(description);
-        rentalDto.setPicture(picture);
+        rentalDto.setPictures(pictures);
 
-        rentalService.addRental(rentalDto);
+        try {
+            rentalService.addRental(rentalDto);
+        } catch (IllegalArgumentException e) {
+            GenericResponse response = new GenericResponse(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        } catch (TaskRejectedException e) {
+            return uploadsBusyResponse();
+        }
         GenericResponse response = new GenericResponse("Rental created !");
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    /**
+     * Endpoint to create a new rental, streaming its picture to storage while it is received.
+     * <p>
+     * Accepts the same multipart form as {@link #createRental}, with optional pictures. The
+     * body is parsed as it arrives and never spooled to memory or disk, whatever the size of
+     * the picture.
+     * </p>
+     * 
+     * @param request The multipart request.
+     * @return ResponseEntity containing a GenericResponse indicating success or failure of the operation.
+     * @throws IOException if reading the request fails.
+     */
+    @PostMapping(path = "/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+        summary = "Create a new rental with a streamed picture",
+        description = "Create a new rental property, uploading its picture to storage while it is received",
+        requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+            description = "Details of the rental to be created",
+            required = true,
+            content = @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE, schema = @Schema(implementation = RentalCreateDto.class))
+        )
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "201", 
+            description = "Rental created successfully with its pictures uploaded",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "400", 
+            description = "Missing or invalid field, too many pictures, or malformed multipart body",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "413", 
+            description = "Picture, field or request over its size limit",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "503", 
+            description = "Too many uploads in progress, retry after the Retry-After delay",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        )
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<GenericResponse> createRentalStreaming(HttpServletRequest request) throws IOException {
+        try {
+            streamingUploadService.createRental(request);
+            GenericResponse response = new GenericResponse("Rental created !");
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (FileUploadSizeException e) {
+            GenericResponse response = new GenericResponse(e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(response);
+        } catch (FileUploadException | IllegalArgumentException e) {
+            GenericResponse response = new GenericResponse(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
     /**
      * Endpoint to update an existing rental.
      * 
@@ -162,6 +350,8 @@ public class RentalController {
      * @param surface Updated surface area of the rental.
      * @param price Updated price of the rental.
      * @param description Updated description of the rental.
+     * @param pictures New pictures replacing the gallery, cover first, sent as repeated {@code picture} parts.
+     *                 The gallery is kept if none are sent.
      * @return ResponseEntity containing a GenericResponse indicating success or failure of the operation.
      */
     @PutMapping(path = "/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -178,7 +368,17 @@ public class RentalController {
     @ApiResponses(value = {
         @ApiResponse(
             responseCode = "200", 
-            description = "Rental updated successfully",
+            description = "Rental updated successfully, its new pictures are uploaded in the background (picture_status PENDING)",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "400", 
+            description = "Too many pictures",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "503", 
+            description = "Too many uploads in progress, retry after the Retry-After delay",
             content = @Content(mediaType = "application/json", schema = @Schema(implementation = GenericResponse.class))
         )
     })
@@ -188,7 +388,8 @@ public class RentalController {
         @RequestParam String name,
         @RequestParam int surface,
         @RequestParam double price,
-        @RequestParam String description
+        @RequestParam String description,
+        @RequestParam(name = "picture", required = false) List<MultipartFile> pictures
     ) {
 
         // Creates the new Dto used in service
@@ -197,10 +398,47 @@ public class RentalController {
         rentalDto.setSurface(surface);
         rentalDto.setPrice(price);
         rentalDto.setDescription(description);
+        rentalDto.setPictures(pictures);
 
-        rentalService.updateRental(id, rentalDto);
+        try {
+            rentalService.updateRental(id, rentalDto);
+        } catch (IllegalArgumentException e) {
+            GenericResponse response = new GenericResponse(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        } catch (TaskRejectedException e) {
+            return uploadsBusyResponse();
+        }
         GenericResponse response = new GenericResponse("Rental updated !");
         return ResponseEntity.ok(response);
     }
-    
+
+    /**
+     * Builds the response sent when too many picture uploads are pending.
+     *
+     * @return ResponseEntity with a 503 status and a Retry-After header.
+     */
+    private ResponseEntity<GenericResponse> uploadsBusyResponse() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(uploadRetryAfter.plusMillis(999).toSeconds()))
+            .body(new GenericResponse("Too many uploads in progress, retry later"));
+    }
+
+    /**
+     * Builds the response of a cached payload with its validators.
+     * <p>
+     * Conditional requests matching the validators are answered with 304 Not Modified by Spring MVC.
+     * </p>
+     *
+     * @param payload The cached payload.
+     * @return ResponseEntity containing the payload.
+     */
+    private ResponseEntity<byte[]> json(CachedJson payload) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .eTag(payload.getEtag());
+        if (payload.getLastModified() >= 0) {
+            builder.lastModified(payload.getLastModified());
+        }
+        return builder.body(payload.getBody());
+    }
 }
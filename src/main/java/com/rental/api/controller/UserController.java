@@ -1,5 +1,6 @@
 package com.rental.api.controller;
 
+import java.util.Date;
 import java.util.Optional;
 
 import org.springframework.http.HttpStatus;
@@ -8,10 +9,12 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import com.rental.api.model.User;
 import com.rental.api.response.GenericResponse;
 import com.rental.api.response.UserDetailsResponse;
+import com.rental.api.service.ResourceVersions;
 import com.rental.api.service.UserService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -41,7 +44,9 @@ public class UserController {
      * Endpoint to fetch a user by their ID.
      * 
      * @param id ID of the user to be retrieved.
+     * @param request The current request, used to answer conditional requests.
      * @return ResponseEntity containing either the UserDetailsResponse with user details or a GenericResponse if user is not found.
+     *         Answers 304 Not Modified when the user matches the {@code If-None-Match} or {@code If-Modified-Since} headers.
      */
     @GetMapping("/{id}")
     @Operation(
@@ -55,6 +60,10 @@ public class UserController {
             description = "User found and returned successfully",
             content = @Content(mediaType = "application/json", schema = @Schema(implementation = UserDetailsResponse.class))
         ),
+        @ApiResponse(
+            responseCode = "304", 
+            description = "User not modified since the provided ETag or date"
+        ),
         @ApiResponse(
             responseCode = "401", 
             description = "Unauthorized request",
@@ -62,7 +71,18 @@ public class UserController {
         )
     })
     @SecurityRequirement(name = "bearerAuth")
-    public ResponseEntity<?> getUser(@PathVariable("id") final Integer id) {
+    public ResponseEntity<?> getUser(@PathVariable("id") final Integer id, WebRequest request) {
+        // Answer conditional requests from the user version without loading the user
+        if (ResourceVersions.isConditional(request)) {
+            Optional<Date> version = userService.getUserVersion(id);
+            if (version.isPresent() && request.checkNotModified(
+                ResourceVersions.etag("user", id, version.get()),
+                ResourceVersions.millis(version.get())
+            )) {
+                return null;
+            }
+        }
+
         Optional<User> fetchedUser = userService.getUserById(id);
         
         if (fetchedUser.isPresent()) {
@@ -74,7 +94,12 @@ public class UserController {
                 user.getCreatedAt(),
                 user.getUpdatedAt()
             );
-            return ResponseEntity.ok().body(userDetails);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(ResourceVersions.etag("user", id, user.getUpdatedAt()));
+            if (user.getUpdatedAt() != null) {
+                builder.lastModified(user.getUpdatedAt().getTime());
+            }
+            return builder.body(userDetails);
         } else {
             GenericResponse response = new GenericResponse("Unauthorized");
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
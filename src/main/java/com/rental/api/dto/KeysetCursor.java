@@ -0,0 +1,79 @@
+package com.rental.api.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Opaque cursor pointing at a row ordered by {@code (created_at, id)}.
+ * <p>
+ * The cursor is exchanged with clients as a URL-safe Base64 string so that
+ * its internal format can evolve without breaking them.
+ * </p>
+ */
+public final class KeysetCursor {
+    private final Date createdAt;
+    private final Integer id;
+
+    /**
+     * Constructs a cursor positioned on the given row.
+     *
+     * @param createdAt The creation timestamp of the row
+     * @param id        The ID of the row
+     */
+    public KeysetCursor(Date createdAt, Integer id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    /**
+     * Retrieves the creation timestamp of the row the cursor points at.
+     *
+     * @return The creation timestamp
+     */
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Retrieves the ID of the row the cursor points at.
+     *
+     * @return The ID of the row
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Encodes the cursor into its opaque string form.
+     *
+     * @return The encoded cursor
+     */
+    public String encode() {
+        String raw = createdAt.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode()}.
+     *
+     * @param value The encoded cursor
+     * @return The decoded cursor
+     * @throws IllegalArgumentException if the value is not a valid cursor
+     */
+    public static KeysetCursor decode(String value) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            long createdAt = Long.parseLong(raw.substring(0, separator));
+            int id = Integer.parseInt(raw.substring(separator + 1));
+            return new KeysetCursor(new Date(createdAt), id);
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException and Base64 errors are both IllegalArgumentExceptions
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
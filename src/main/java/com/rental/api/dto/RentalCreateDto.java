@@ -1,7 +1,11 @@
 package com.rental.api.dto;
 
+import java.util.List;
+
 import org.springframework.web.multipart.MultipartFile;
 
+import io.swagger.v3.oas.annotations.media.Schema;
+
 /**
  * Data Transfer Object (DTO) representing the details required to create a rental.
  */
@@ -9,7 +13,8 @@ public class RentalCreateDto {
     private String name;
     private int surface;
     private double price;
-    private MultipartFile picture;
+    @Schema(name = "picture", description = "Pictures of the rental, cover first, one part each")
+    private List<MultipartFile> pictures;
     private String description;
 
     /**
@@ -40,12 +45,12 @@ public class RentalCreateDto {
     }
 
     /**
-     * Retrieves the picture of the rental property.
+     * Retrieves the pictures of the rental property.
      *
-     * @return The picture file of the rental
+     * @return The picture files of the rental, cover first, or null if none were sent
      */
-    public MultipartFile getPicture() {
-        return picture;
+    public List<MultipartFile> getPictures() {
+        return pictures;
     }
 
     /**
@@ -85,14 +90,19 @@ public class RentalCreateDto {
     }
 
     /**
-     * Sets the description of the rental property.
+     * Sets the pictures of the rental property.
      *
-     * @param description The description to set
+     * @param pictures The picture files to set, cover first
      */
-    public void setPicture(MultipartFile picture) {
-        this.picture = picture;
+    public void setPictures(List<MultipartFile> pictures) {
+        this.pictures = pictures;
     }
 
+    /**
+     * Sets the description of the rental property.
+     *
+     * @param description The description to set
+     */
     public void setDescription(String description) {
         this.description = description;
     }
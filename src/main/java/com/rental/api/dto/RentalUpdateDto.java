@@ -1,5 +1,11 @@
 package com.rental.api.dto;
 
+import java.util.List;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
 /**
  * Data Transfer Object (DTO) representing the details required to update a rental.
  */
@@ -8,6 +14,8 @@ public class RentalUpdateDto {
     private int surface;
     private double price;
     private String description;
+    @Schema(name = "picture", description = "New pictures replacing the gallery, cover first, one part each")
+    private List<MultipartFile> pictures;
 
     /**
      * Retrieves the name of the rental property.
@@ -45,6 +53,15 @@ public class RentalUpdateDto {
         return description;
     }
 
+    /**
+     * Retrieves the new pictures of the rental property.
+     *
+     * @return The picture files replacing the gallery, cover first, or null to keep the gallery
+     */
+    public List<MultipartFile> getPictures() {
+        return pictures;
+    }
+
     /**
      * Sets the name of the rental property.
      *
@@ -80,4 +97,13 @@ public class RentalUpdateDto {
     public void setDescription(String description) {
         this.description = description;
     }
+
+    /**
+     * Sets the new pictures of the rental property.
+     *
+     * @param pictures The picture files replacing the gallery, cover first
+     */
+    public void setPictures(List<MultipartFile> pictures) {
+        this.pictures = pictures;
+    }
 }
@@ -0,0 +1,93 @@
+package com.rental.api.model;
+
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Represents the principal of an authenticated request.
+ * <p>
+ * Built from the claims of a verified JWT token, so authenticating a request does not load
+ * the {@link User} entity. Services resolve the full user from {@link #getId()} only when they
+ * need more than these fields.
+ * </p>
+ */
+public final class AuthenticatedUser {
+    private final Integer id;
+    private final String email;
+    private final String name;
+
+    /**
+     * Constructs the principal of an authenticated user.
+     *
+     * @param id The identifier of the user
+     * @param email The email address of the user, used as username
+     * @param name The name of the user
+     */
+    public AuthenticatedUser(Integer id, String email, String name) {
+        this.id = id;
+        this.email = email;
+        this.name = name;
+    }
+
+    /**
+     * Constructs the principal of a loaded user.
+     *
+     * @param user The user entity
+     * @return The principal of the user
+     */
+    public static AuthenticatedUser of(User user) {
+        return new AuthenticatedUser(user.getId(), user.getEmail(), user.getName());
+    }
+
+    /**
+     * Retrieves the principal of the current request.
+     *
+     * @return The principal of the authenticated user
+     * @throws AuthenticationCredentialsNotFoundException if the request is not authenticated by a JWT token
+     */
+    public static AuthenticatedUser current() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof AuthenticatedUser principal)) {
+            throw new AuthenticationCredentialsNotFoundException("No authenticated user");
+        }
+        return principal;
+    }
+
+    /**
+     * Retrieves the identifier of the user.
+     *
+     * @return The user's identifier
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the email address of the user.
+     *
+     * @return The user's email address
+     */
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * Retrieves the name of the user.
+     *
+     * @return The user's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the email of the user, used by Spring Security as the name of the authentication.
+     *
+     * @return The user's email address
+     */
+    @Override
+    public String toString() {
+        return email;
+    }
+}
@@ -0,0 +1,88 @@
+package com.rental.api.model;
+
+import java.util.Date;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+
+/**
+ * Represents a request made with an {@code Idempotency-Key} header, and its response once completed.
+ * <p>
+ * The record is maintained with JDBC by the {@code IdempotencyService}: it is inserted when the
+ * request starts, which claims the key across nodes, and holds the response once the request
+ * completes. A record without status is in progress.
+ * </p>
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = @Index(name = "idx_idempotency_keys_expires_at", columnList = "expires_at"))
+public class IdempotencyRecord {
+    @Id
+    @Column(name = "idempotency_key", length = 320)
+    private String key;
+
+    @Column(nullable = false, length = 64)
+    private String fingerprint;
+
+    private Integer status;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(length = 2048)
+    private String location;
+
+    @Lob
+    @Column(length = 1_048_576)
+    private byte[] body;
+
+    @Column(name = "created_at", nullable = false)
+    private Date createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private Date expiresAt;
+
+    /**
+     * Protected constructor for Hibernate.
+     */
+    protected IdempotencyRecord() {}
+
+    /**
+     * Retrieves the idempotency key, scoped to the caller.
+     *
+     * @return The scoped key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Retrieves the fingerprint of the request made with the key.
+     *
+     * @return The fingerprint of the request
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Retrieves the status of the response.
+     *
+     * @return The status of the response, or null while the request is in progress
+     */
+    public Integer getStatus() {
+        return status;
+    }
+
+    /**
+     * Retrieves the expiration date of the record.
+     *
+     * @return The date after which the key may be reused
+     */
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+}
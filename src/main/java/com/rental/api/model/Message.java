@@ -9,18 +9,25 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
 
 /**
  * Represents a message entity associated with a user and a rental.
+ * <p>
+ * Messages are indexed by rental then creation date, which serves the inbox of an owner newest
+ * first; InnoDB secondary indexes also hold the primary key, so the {@code id} tie-breaker of
+ * the inbox pages is covered as well.
+ * </p>
  */
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = @Index(name = "idx_messages_rental_id_created_at", columnList = "rental_id, created_at"))
 public class Message {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -29,12 +36,12 @@ public class Message {
     @Column(nullable = false)
     private String message;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     @JsonProperty("user_id")
     private User user;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "rental_id", nullable = false)
     @JsonProperty("rental_id")
     private Rental rental;
@@ -0,0 +1,13 @@
+package com.rental.api.model;
+
+/**
+ * Represents the state of the picture upload of a rental.
+ */
+public enum PictureStatus {
+    /** The picture is being uploaded, the rental has no picture URL yet. */
+    PENDING,
+    /** The picture is uploaded and its URL is set. */
+    READY,
+    /** The picture could not be uploaded. */
+    FAILED
+}
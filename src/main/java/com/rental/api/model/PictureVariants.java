@@ -0,0 +1,68 @@
+package com.rental.api.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+/**
+ * Represents the resized copies of the picture of a rental.
+ * <p>
+ * Lists should display the {@code thumbnail} or {@code card} variant rather than the original
+ * picture, which may weigh several megabytes.
+ * </p>
+ */
+@Embeddable
+public class PictureVariants {
+    @Column(name = "picture_thumbnail")
+    private String thumbnail;
+
+    @Column(name = "picture_card")
+    private String card;
+
+    @Column(name = "picture_full")
+    private String full;
+
+    /**
+     * Protected constructor for Hibernate.
+     */
+    protected PictureVariants() {}
+
+    /**
+     * Constructs the variants of a picture.
+     *
+     * @param thumbnail The URL of the thumbnail variant
+     * @param card The URL of the card variant
+     * @param full The URL of the full-screen variant
+     */
+    public PictureVariants(String thumbnail, String card, String full) {
+        this.thumbnail = thumbnail;
+        this.card = card;
+        this.full = full;
+    }
+
+    /**
+     * Retrieves the URL of the thumbnail variant.
+     *
+     * @return The URL of the smallest variant
+     */
+    public String getThumbnail() {
+        return thumbnail;
+    }
+
+    /**
+     * Retrieves the URL of the card variant.
+     *
+     * @return The URL of the variant sized for listing cards
+     */
+    public String getCard() {
+        return card;
+    }
+
+    /**
+     * Retrieves the URL of the full-screen variant.
+     *
+     * @return The URL of the largest variant
+     */
+    public String getFull() {
+        return full;
+    }
+}
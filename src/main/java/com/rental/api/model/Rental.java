@@ -1,26 +1,54 @@
 package com.rental.api.model;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
+import jakarta.persistence.Embedded;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToMany;
+import jakarta.persistence.OrderBy;
 import jakarta.persistence.Table;
 
 /**
  * Represents a rental property entity.
+ * <p>
+ * Rentals are kept in the second-level cache.
+ * </p>
+ * <p>
+ * The {@code picture} column holds the cover of the gallery, the whole gallery is only read when
+ * it is fetched with the rental and is left out of the JSON otherwise.
+ * </p>
+ * <p>
+ * Each gallery sent with an update increments the {@code gallery_generation} column, and the
+ * outcome of a gallery upload is only recorded if no newer gallery was sent meanwhile.
+ * </p>
  */
-@Table(name = "rentals")
+@Table(name = "rentals", indexes = @Index(name = "idx_rentals_created_at_id_updated_at", columnList = "created_at, id, updated_at"))
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "rentals")
 public class Rental {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -38,10 +66,27 @@ public class Rental {
     @Column
     private String picture;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "picture_status", length = 16)
+    @JsonProperty("picture_status")
+    private PictureStatus pictureStatus;
+
+    @Embedded
+    @JsonProperty("picture_variants")
+    private PictureVariants pictureVariants;
+
+    @ColumnDefault("0")
+    @Column(name = "gallery_generation", nullable = false)
+    private int galleryGeneration;
+
+    @OneToMany(mappedBy = "rental", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("position ASC")
+    private List<RentalPicture> pictures = new ArrayList<>();
+
     @Column(nullable = false)
     private String description;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "owner_id", nullable = false)
     private User owner;
 
@@ -57,9 +102,10 @@ public class Rental {
     private Date updatedAt;
     
     /**
-     * Private constructor to prevent direct instantiation. Use Builder pattern instead.
+     * Protected constructor to prevent direct instantiation. Use Builder pattern instead.
+     * Not private so that Hibernate can create lazy-loading proxies.
      */
-    private Rental() {}
+    protected Rental() {}
 
     /**
      * Retrieves the ID of the rental property.
@@ -106,6 +152,52 @@ public class Rental {
         return picture;
     }
 
+    /**
+     * Retrieves the state of the picture upload of the rental property.
+     * 
+     * @return The picture upload state, or null if the rental has no picture
+     */
+    public PictureStatus getPictureStatus() {
+        return pictureStatus;
+    }
+
+    /**
+     * Retrieves the resized copies of the picture of the rental property.
+     * 
+     * @return The picture variants, or null until they are generated
+     */
+    public PictureVariants getPictureVariants() {
+        return pictureVariants;
+    }
+
+    /**
+     * Retrieves the generation of the last gallery sent for the rental property.
+     *
+     * @return The gallery generation, 0 for the gallery sent on creation
+     */
+    @JsonIgnore
+    public int getGalleryGeneration() {
+        return galleryGeneration;
+    }
+
+    /**
+     * Retrieves the URLs of the gallery of the rental property.
+     * <p>
+     * The gallery is never loaded by this method: it is only returned when it was fetched with
+     * the rental, so that serializing a list of rentals does not read every gallery.
+     * </p>
+     * 
+     * @return The URLs of the pictures ordered by position, cover first, or null if the gallery is not loaded
+     */
+    @JsonProperty("gallery")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public List<String> getGallery() {
+        if (!Hibernate.isInitialized(pictures)) {
+            return null;
+        }
+        return pictures.stream().map(RentalPicture::getUrl).toList();
+    }
+
     /**
      * Retrieves the description of the rental property.
      * 
@@ -135,6 +227,10 @@ public class Rental {
 
     /**
      * Retrieves the ID of the owner associated with the rental property.
+     * <p>
+     * The owner is lazily loaded: reading its ID only uses the {@code owner_id} column
+     * and never initializes the owner.
+     * </p>
      * 
      * @return The ID of the owner associated with the rental property, or null if no owner is set
      */
@@ -143,6 +239,88 @@ public class Rental {
         return owner != null ? owner.getId() : null;
     }
 
+    /**
+     * Updates the details of the rental property.
+     * <p>
+     * Meant to be called on a managed rental, so that creation data is kept and the
+     * second-level cache entry is updated when the transaction commits.
+     * </p>
+     *
+     * @param name The new name of the rental property
+     * @param surface The new surface area of the rental property
+     * @param price The new price of the rental property
+     * @param description The new description of the rental property
+     * @param owner The new owner of the rental property
+     */
+    public void update(String name, int surface, double price, String description, User owner) {
+        this.name = name;
+        this.surface = surface;
+        this.price = price;
+        this.description = description;
+        this.owner = owner;
+    }
+
+    /**
+     * Replaces the gallery of the rental property with uploaded pictures, the first one becoming the cover.
+     *
+     * @param generation The generation of the uploaded gallery
+     * @param urls The URLs of the uploaded pictures, in gallery order
+     * @return false if a newer gallery was sent, in which case the pictures are ignored
+     */
+    public boolean picturesUploaded(int generation, List<String> urls) {
+        if (generation != this.galleryGeneration) {
+            return false;
+        }
+        this.picture = urls.isEmpty() ? null : urls.get(0);
+        this.pictureStatus = urls.isEmpty() ? null : PictureStatus.READY;
+        this.pictureVariants = null;
+        // Pictures are replaced in place, as new rows would be inserted before the old ones are deleted
+        for (int position = 0; position < urls.size(); position++) {
+            if (position < this.pictures.size()) {
+                this.pictures.get(position).replace(urls.get(position));
+            } else {
+                this.pictures.add(new RentalPicture(this, position, urls.get(position)));
+            }
+        }
+        while (this.pictures.size() > urls.size()) {
+            this.pictures.remove(this.pictures.size() - 1);
+        }
+        return true;
+    }
+
+    /**
+     * Marks new pictures of the rental property as being uploaded, the current gallery is kept until then.
+     *
+     * @return The generation of the new gallery, superseding the uploads in progress
+     */
+    public int picturesPending() {
+        this.pictureStatus = PictureStatus.PENDING;
+        return ++this.galleryGeneration;
+    }
+
+    /**
+     * Sets the resized copies of the picture of the rental property, unless a newer gallery was sent.
+     *
+     * @param generation The generation of the gallery whose cover was resized
+     * @param pictureVariants The uploaded picture variants
+     */
+    public void pictureVariantsGenerated(int generation, PictureVariants pictureVariants) {
+        if (generation == this.galleryGeneration) {
+            this.pictureVariants = pictureVariants;
+        }
+    }
+
+    /**
+     * Marks the picture upload of the rental property as failed, unless a newer gallery was sent.
+     *
+     * @param generation The generation of the gallery whose upload failed
+     */
+    public void pictureFailed(int generation) {
+        if (generation == this.galleryGeneration) {
+            this.pictureStatus = PictureStatus.FAILED;
+        }
+    }
+
     /**
      * Sets the ID of the rental property.
      *
@@ -159,7 +337,8 @@ public class Rental {
         private String name;
         private int surface;
         private double price;
-        private String picture;
+        private List<String> gallery = List.of();
+        private PictureStatus pictureStatus;
         private String description;
         private User owner;
 
@@ -199,11 +378,33 @@ public class Rental {
         /**
          * Sets the picture URL or path of the rental property.
          * 
-         * @param picture The picture URL or path of the rental property
+         * @param picture The picture URL or path of the rental property, or null if it has no picture
          * @return The Builder instance
          */
         public Builder setPicture(String picture) {
-            this.picture = picture;
+            this.gallery = picture != null ? List.of(picture) : List.of();
+            return this;
+        }
+
+        /**
+         * Sets the gallery of the rental property, its first picture being the cover.
+         * 
+         * @param gallery The picture URLs of the rental property, in gallery order
+         * @return The Builder instance
+         */
+        public Builder setGallery(List<String> gallery) {
+            this.gallery = List.copyOf(gallery);
+            return this;
+        }
+    
+        /**
+         * Sets the state of the picture upload of the rental property.
+         * 
+         * @param pictureStatus The picture upload state of the rental property
+         * @return The Builder instance
+         */
+        public Builder setPictureStatus(PictureStatus pictureStatus) {
+            this.pictureStatus = pictureStatus;
             return this;
         }
     
@@ -239,7 +440,11 @@ public class Rental {
             rental.name = this.name;
             rental.surface = this.surface;
             rental.price = this.price;
-            rental.picture = this.picture;
+            rental.pictureStatus = this.pictureStatus;
+            for (int position = 0; position < gallery.size(); position++) {
+                rental.pictures.add(new RentalPicture(rental, position, gallery.get(position)));
+            }
+            rental.picture = gallery.isEmpty() ? null : gallery.get(0);
             rental.description = this.description;
             rental.owner = this.owner;
             return rental;
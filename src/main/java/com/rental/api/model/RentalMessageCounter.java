@@ -0,0 +1,61 @@
+package com.rental.api.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Represents the message counters of a rental.
+ * <p>
+ * The counters are maintained with JDBC by the {@code MessageCounters} service, created with the
+ * first messages of the rental and incremented as messages are written. Messages are
+ * unread past {@code read_count}. There is no foreign key to the rental, so that increments of a
+ * rental deleted meanwhile never fail; the counters of deleted rentals are never read.
+ * </p>
+ */
+@Entity
+@Table(name = "rental_message_counters")
+public class RentalMessageCounter {
+    @Id
+    @Column(name = "rental_id")
+    private Integer rentalId;
+
+    @Column(name = "message_count", nullable = false)
+    private long messageCount;
+
+    @Column(name = "read_count", nullable = false)
+    private long readCount;
+
+    /**
+     * Protected constructor for Hibernate.
+     */
+    protected RentalMessageCounter() {}
+
+    /**
+     * Retrieves the ID of the rental.
+     *
+     * @return The ID of the rental
+     */
+    public Integer getRentalId() {
+        return rentalId;
+    }
+
+    /**
+     * Retrieves the number of messages received about the rental.
+     *
+     * @return The number of messages
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Retrieves the number of messages read by the owner of the rental.
+     *
+     * @return The number of read messages
+     */
+    public long getReadCount() {
+        return readCount;
+    }
+}
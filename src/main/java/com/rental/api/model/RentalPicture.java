@@ -0,0 +1,94 @@
+package com.rental.api.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+/**
+ * Represents a picture of the gallery of a rental.
+ * <p>
+ * Pictures are ordered by position, the picture at position 0 is the cover of the rental and is
+ * also stored on the rental itself, so that listings never read the gallery.
+ * </p>
+ */
+@Entity
+@Table(
+    name = "rental_pictures",
+    uniqueConstraints = @UniqueConstraint(name = "uk_rental_pictures_rental_id_position", columnNames = { "rental_id", "position" })
+)
+public class RentalPicture {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "rental_id", nullable = false)
+    private Rental rental;
+
+    @Column(nullable = false)
+    private int position;
+
+    @Column(nullable = false)
+    private String url;
+
+    /**
+     * Protected constructor for Hibernate.
+     */
+    protected RentalPicture() {}
+
+    /**
+     * Constructs a picture of the gallery of a rental.
+     *
+     * @param rental The rental the picture belongs to
+     * @param position The position of the picture in the gallery, 0 for the cover
+     * @param url The URL of the uploaded picture
+     */
+    public RentalPicture(Rental rental, int position, String url) {
+        this.rental = rental;
+        this.position = position;
+        this.url = url;
+    }
+
+    /**
+     * Retrieves the ID of the picture.
+     *
+     * @return The ID of the picture
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the position of the picture in the gallery.
+     *
+     * @return The position of the picture, 0 for the cover
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Retrieves the URL of the picture.
+     *
+     * @return The URL of the uploaded picture
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Replaces the picture at this position of the gallery.
+     *
+     * @param url The URL of the new uploaded picture
+     */
+    public void replace(String url) {
+        this.url = url;
+    }
+}
@@ -6,7 +6,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 import org.hibernate.annotations.UpdateTimestamp;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -30,9 +34,15 @@ import jakarta.persistence.Table;
  * This class encapsulates user details such as name, email, password, and associated rentals.
  * It implements Spring Security's UserDetails interface to integrate with authentication mechanisms.
  * </p>
+ * <p>
+ * Users are kept in the second-level cache, along with the resolution of their email (natural ID)
+ * to their ID.
+ * </p>
  */
 @Table(name="users")
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
+@NaturalIdCache(region = "users-by-email")
 public class User implements UserDetails{
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -41,6 +51,7 @@ public class User implements UserDetails{
     @Column(nullable = false)
     private String name;
 
+    @NaturalId
     @Column(unique = true, length = 100, nullable = false)
     private String email;
 
@@ -61,9 +72,10 @@ public class User implements UserDetails{
     private Date updatedAt;
 
     /**
-     * Private constructor to prevent direct instantiation. Use Builder pattern instead.
+     * Protected constructor to prevent direct instantiation. Use Builder pattern instead.
+     * Not private so that Hibernate can create lazy-loading proxies.
      */
-    private User() {}
+    protected User() {}
 
     /**
      * Retrieves the unique identifier of the user.
@@ -101,6 +113,15 @@ public class User implements UserDetails{
         return password;
     }
 
+    /**
+     * Replaces the password hash of the user, e.g. when it is rehashed with a new work factor.
+     *
+     * @param password The new encoded password
+     */
+    public void updatePassword(String password) {
+        this.password = password;
+    }
+
     /**
      * Retrieves the creation timestamp of the user.
      *
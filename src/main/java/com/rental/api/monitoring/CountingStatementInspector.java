@@ -0,0 +1,19 @@
+package com.rental.api.monitoring;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate statement inspector counting the SQL statements of the current request.
+ * <p>
+ * Statements are recorded as-is: Hibernate always binds parameters, so the SQL
+ * is already the shape of the query.
+ * </p>
+ */
+public class CountingStatementInspector implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        QueryStatsRecorder.recordStatement(sql);
+        return sql;
+    }
+}
@@ -0,0 +1,34 @@
+package com.rental.api.monitoring;
+
+import org.hibernate.SessionEventListener;
+
+/**
+ * Session listener measuring the time spent executing JDBC statements.
+ * <p>
+ * Hibernate creates one instance per session, so the start timestamps need no synchronization.
+ * </p>
+ */
+public class JdbcTimingSessionListener implements SessionEventListener {
+    private long executeStart;
+    private long batchStart;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        executeStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        QueryStatsRecorder.recordJdbcTime(System.nanoTime() - executeStart);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        batchStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        QueryStatsRecorder.recordJdbcTime(System.nanoTime() - batchStart);
+    }
+}
@@ -0,0 +1,124 @@
+package com.rental.api.monitoring;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Records the SQL activity of every HTTP request and reports requests over budget.
+ * <p>
+ * A request is reported when it runs more statements than {@code monitoring.query-budget.max-statements}
+ * or repeats the same statement shape at least {@code monitoring.query-budget.repeated-shape-threshold}
+ * times (N+1 pattern). Reported requests are logged with their repeated shapes and counted in the
+ * {@code http.server.requests.sql.over.budget} metric.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class QueryBudgetFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(QueryBudgetFilter.class);
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${monitoring.query-budget.enabled:true}")
+    private boolean enabled;
+
+    @Value("${monitoring.query-budget.max-statements:10}")
+    private int maxStatements;
+
+    @Value("${monitoring.query-budget.repeated-shape-threshold:3}")
+    private int repeatedShapeThreshold;
+
+    public QueryBudgetFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Records the SQL activity of the request and reports it once the request is handled.
+     *
+     * @param request     The HTTP servlet request.
+     * @param response    The HTTP servlet response.
+     * @param filterChain The filter chain to proceed with.
+     * @throws ServletException If a servlet exception occurs.
+     * @throws IOException      If an I/O exception occurs.
+     */
+    @Override
+    protected void doFilterInternal(
+        @NonNull HttpServletRequest request,
+        @NonNull HttpServletResponse response,
+        @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        // Nothing to do if disabled or if a test already captures this thread
+        if (!enabled || QueryStatsRecorder.current() != null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        QueryStats stats = QueryStatsRecorder.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            QueryStatsRecorder.stop();
+            report(request, stats);
+        }
+    }
+
+    /**
+     * Publishes the SQL activity of a request and logs it if it is over budget.
+     *
+     * @param request The handled request.
+     * @param stats   The SQL activity of the request.
+     */
+    private void report(HttpServletRequest request, QueryStats stats) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+
+        DistributionSummary.builder("http.server.requests.sql.statements")
+            .description("SQL statements executed per HTTP request")
+            .tag("method", request.getMethod())
+            .tag("uri", uri)
+            .register(meterRegistry)
+            .record(stats.getStatementCount());
+
+        DistributionSummary.builder("http.server.requests.sql.rows")
+            .description("Rows fetched per HTTP request")
+            .tag("method", request.getMethod())
+            .tag("uri", uri)
+            .register(meterRegistry)
+            .record(stats.getRowsFetched());
+
+        Map<String, Integer> repeated = stats.getRepeatedShapes(repeatedShapeThreshold);
+        boolean overStatements = stats.getStatementCount() > maxStatements;
+        if (!overStatements && repeated.isEmpty()) {
+            return;
+        }
+
+        Counter.builder("http.server.requests.sql.over.budget")
+            .description("HTTP requests over their SQL statement budget")
+            .tag("method", request.getMethod())
+            .tag("uri", uri)
+            .tag("reason", overStatements ? "statements" : "repeated")
+            .register(meterRegistry)
+            .increment();
+
+        log.warn("{} {} over SQL budget: {} (max {} statements), repeated shapes: {}",
+            request.getMethod(), uri, stats, maxStatements, repeated);
+    }
+}
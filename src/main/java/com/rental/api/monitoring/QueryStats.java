@@ -0,0 +1,124 @@
+package com.rental.api.monitoring;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SQL activity recorded while serving a single HTTP request (or a test capture).
+ * <p>
+ * Instances are confined to the thread that handles the request, see {@link QueryStatsRecorder}.
+ * </p>
+ */
+public class QueryStats {
+    private int statementCount;
+    private long rowsFetched;
+    private long entitiesLoaded;
+    private long jdbcTimeNanos;
+    private final Map<String, Integer> statementShapes = new LinkedHashMap<>();
+
+    /**
+     * Records a statement prepared by Hibernate.
+     *
+     * @param sql The SQL of the statement, with {@code ?} placeholders
+     */
+    void recordStatement(String sql) {
+        statementCount++;
+        statementShapes.merge(sql, 1, Integer::sum);
+    }
+
+    /**
+     * Records rows read from the database.
+     *
+     * @param rows The number of rows fetched
+     */
+    void recordRows(long rows) {
+        rowsFetched += rows;
+    }
+
+    /**
+     * Records an entity hydrated from a result row.
+     */
+    void recordEntityLoad() {
+        entitiesLoaded++;
+    }
+
+    /**
+     * Records time spent executing a JDBC statement.
+     *
+     * @param nanos The execution time in nanoseconds
+     */
+    void recordJdbcTime(long nanos) {
+        jdbcTimeNanos += nanos;
+    }
+
+    /**
+     * Retrieves the number of SQL statements prepared.
+     *
+     * @return The number of statements
+     */
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    /**
+     * Retrieves the number of rows returned by queries, plus the entities fetched
+     * through associations or lazy initialization.
+     *
+     * @return The number of rows fetched
+     */
+    public long getRowsFetched() {
+        return rowsFetched;
+    }
+
+    /**
+     * Retrieves the number of entities hydrated, whether by queries, lookups by ID or lazy loading.
+     *
+     * @return The number of entities loaded
+     */
+    public long getEntitiesLoaded() {
+        return entitiesLoaded;
+    }
+
+    /**
+     * Retrieves the time spent executing JDBC statements.
+     *
+     * @return The JDBC execution time
+     */
+    public Duration getJdbcTime() {
+        return Duration.ofNanos(jdbcTimeNanos);
+    }
+
+    /**
+     * Retrieves how many times each statement shape was executed.
+     *
+     * @return The execution count per SQL statement, in execution order
+     */
+    public Map<String, Integer> getStatementShapes() {
+        return Collections.unmodifiableMap(statementShapes);
+    }
+
+    /**
+     * Retrieves the statement shapes executed at least {@code threshold} times,
+     * which is the signature of an N+1 query pattern.
+     *
+     * @param threshold The minimum number of executions of a shape
+     * @return The repeated shapes with their execution count
+     */
+    public Map<String, Integer> getRepeatedShapes(int threshold) {
+        Map<String, Integer> repeated = new LinkedHashMap<>();
+        statementShapes.forEach((sql, count) -> {
+            if (count >= threshold) {
+                repeated.put(sql, count);
+            }
+        });
+        return repeated;
+    }
+
+    @Override
+    public String toString() {
+        return statementCount + " statements, " + rowsFetched + " rows, "
+            + entitiesLoaded + " entities, " + getJdbcTime().toMillis() + " ms JDBC";
+    }
+}
@@ -0,0 +1,93 @@
+package com.rental.api.monitoring;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Binds a {@link QueryStats} to the current thread so that Hibernate hooks can record into it.
+ * <p>
+ * {@link QueryBudgetFilter} opens a capture per HTTP request; tests can open their own with
+ * {@link #capture(Callable)}. Statements executed on threads without a capture are ignored.
+ * </p>
+ */
+public final class QueryStatsRecorder {
+    private static final ThreadLocal<QueryStats> CURRENT = new ThreadLocal<>();
+
+    private QueryStatsRecorder() {}
+
+    /**
+     * Starts recording on the current thread.
+     *
+     * @return The stats that will be filled until {@link #stop()} is called
+     */
+    public static QueryStats start() {
+        QueryStats stats = new QueryStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /**
+     * Stops recording on the current thread.
+     */
+    public static void stop() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Retrieves the stats being recorded on the current thread.
+     *
+     * @return The current stats, or null if nothing is being recorded
+     */
+    public static QueryStats current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs an action while recording the SQL activity it triggers on the current thread.
+     *
+     * @param action The action to run
+     * @return The SQL activity of the action
+     * @throws Exception if the action fails
+     */
+    public static QueryStats capture(Callable<?> action) throws Exception {
+        QueryStats previous = CURRENT.get();
+        QueryStats stats = start();
+        try {
+            action.call();
+            return stats;
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                stop();
+            }
+        }
+    }
+
+    static void recordStatement(String sql) {
+        QueryStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.recordStatement(sql);
+        }
+    }
+
+    static void recordRows(long rows) {
+        QueryStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.recordRows(rows);
+        }
+    }
+
+    static void recordEntityLoad() {
+        QueryStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.recordEntityLoad();
+        }
+    }
+
+    static void recordJdbcTime(long nanos) {
+        QueryStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.recordJdbcTime(nanos);
+        }
+    }
+}
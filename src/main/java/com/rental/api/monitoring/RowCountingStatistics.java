@@ -0,0 +1,41 @@
+package com.rental.api.monitoring;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.internal.StatisticsImpl;
+
+/**
+ * Hibernate statistics that also attribute fetched rows and loaded entities to the current request.
+ * <p>
+ * Rows are counted from query results and from entities fetched through associations
+ * or lazy initialization. Requires {@code hibernate.generate_statistics=true}.
+ * </p>
+ */
+public class RowCountingStatistics extends StatisticsImpl {
+
+    /**
+     * Constructs statistics for the given session factory.
+     *
+     * @param sessionFactory The session factory the statistics belong to
+     */
+    public RowCountingStatistics(SessionFactoryImplementor sessionFactory) {
+        super(sessionFactory);
+    }
+
+    @Override
+    public void queryExecuted(String hql, int rows, long time) {
+        super.queryExecuted(hql, rows, time);
+        QueryStatsRecorder.recordRows(rows);
+    }
+
+    @Override
+    public void loadEntity(String entityName) {
+        super.loadEntity(entityName);
+        QueryStatsRecorder.recordEntityLoad();
+    }
+
+    @Override
+    public void fetchEntity(String entityName) {
+        super.fetchEntity(entityName);
+        QueryStatsRecorder.recordRows(1);
+    }
+}
@@ -1,16 +1,60 @@
 package com.rental.api.repository;
 
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.rental.api.model.Message;
+import com.rental.api.response.InboxMessage;
 
 /**
  * Repository interface for accessing Message entities in the database.
+ * <p>
+ * Inbox queries only read the columns of the listed messages, joined to the {@code rentals}
+ * table on its owner: senders and rentals are referenced by their foreign key columns and never
+ * loaded.
+ * </p>
  */
 @Repository
 public interface MessageRepository extends CrudRepository<Message, Integer>{
+
+    /**
+     * Retrieves the newest messages received by an owner, ordered by creation date then ID, descending.
+     *
+     * @param ownerId The ID of the owner of the rentals.
+     * @param pageable The page holding the maximum number of messages to return.
+     * @return The first messages of the inbox.
+     */
+    @Query("SELECT new com.rental.api.response.InboxMessage(m.id, m.message, m.rental.id, m.user.id, m.createdAt) "
+        + "FROM Message m JOIN m.rental r "
+        + "WHERE r.owner.id = :ownerId "
+        + "ORDER BY m.createdAt DESC, m.id DESC")
+    List<InboxMessage> findInboxFirstPage(@Param("ownerId") Integer ownerId, Pageable pageable);
+
     /**
-     * This interface inherits CRUD operations for Message entities.
+     * Retrieves the messages received by an owner located after the given {@code (createdAt, id)}
+     * position, ordered by creation date then ID, descending.
+     *
+     * @param ownerId The ID of the owner of the rentals.
+     * @param createdAt The creation date of the last message already returned.
+     * @param id The ID of the last message already returned.
+     * @param pageable The page holding the maximum number of messages to return.
+     * @return The older messages following the given position.
      */
+    @Query("SELECT new com.rental.api.response.InboxMessage(m.id, m.message, m.rental.id, m.user.id, m.createdAt) "
+        + "FROM Message m JOIN m.rental r "
+        + "WHERE r.owner.id = :ownerId "
+        + "AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id)) "
+        + "ORDER BY m.createdAt DESC, m.id DESC")
+    List<InboxMessage> findInboxPageAfter(
+        @Param("ownerId") Integer ownerId,
+        @Param("createdAt") Date createdAt,
+        @Param("id") Integer id,
+        Pageable pageable
+    );
 }
@@ -1,16 +1,150 @@
 package com.rental.api.repository;
 
-import org.springframework.data.repository.CrudRepository;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.rental.api.model.Rental;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
 /**
  * Repository interface for accessing Rental entities in the database.
+ * <p>
+ * Listing and detail queries only read the {@code rentals} table: the owner is lazily
+ * mapped and its ID is read from the {@code owner_id} column.
+ * </p>
  */
 @Repository
-public interface RentalRepository extends CrudRepository<Rental, Integer>{
+public interface RentalRepository extends JpaRepository<Rental, Integer>{
+
+    /**
+     * Retrieves the first rentals ordered by creation date then ID.
+     *
+     * @param pageable The page holding the maximum number of rentals to return.
+     * @return The first rentals of the listing.
+     */
+    @Query("SELECT r FROM Rental r ORDER BY r.createdAt ASC, r.id ASC")
+    List<Rental> findFirstPage(Pageable pageable);
+
+    /**
+     * Retrieves the rentals located after the given {@code (createdAt, id)} position,
+     * ordered by creation date then ID.
+     *
+     * @param createdAt The creation date of the last rental already returned.
+     * @param id The ID of the last rental already returned.
+     * @param pageable The page holding the maximum number of rentals to return.
+     * @return The rentals following the given position.
+     */
+    @Query("SELECT r FROM Rental r "
+        + "WHERE r.createdAt > :createdAt OR (r.createdAt = :createdAt AND r.id > :id) "
+        + "ORDER BY r.createdAt ASC, r.id ASC")
+    List<Rental> findPageAfter(@Param("createdAt") Date createdAt, @Param("id") Integer id, Pageable pageable);
+
+    /**
+     * Retrieves a rental along with its gallery, in a single query.
+     *
+     * @param id The ID of the rental.
+     * @return The rental with its pictures initialized, or empty if the rental does not exist.
+     */
+    @Query("SELECT r FROM Rental r LEFT JOIN FETCH r.pictures WHERE r.id = :id")
+    Optional<Rental> findWithGalleryById(@Param("id") Integer id);
+
+    /**
+     * Retrieves a rental and locks its row until the end of the transaction.
+     * <p>
+     * Serializes the changes of the gallery of a rental, which read its generation before writing it.
+     * </p>
+     *
+     * @param id The ID of the rental.
+     * @return The locked rental, or empty if the rental does not exist.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Rental r WHERE r.id = :id")
+    Optional<Rental> findForUpdateById(@Param("id") Integer id);
+
     /**
-     * This interface inherits CRUD operations for Rental entities.
+     * Retrieves the last update timestamp of a rental without loading it.
+     *
+     * @param id The ID of the rental.
+     * @return The last update timestamp, or empty if the rental does not exist.
      */
+    @Query("SELECT r.updatedAt FROM Rental r WHERE r.id = :id")
+    Optional<Date> findUpdatedAtById(@Param("id") Integer id);
+
+    /**
+     * Retrieves the ID of the owner of a rental without loading it.
+     *
+     * @param id The ID of the rental.
+     * @return The ID of the owner, or empty if the rental does not exist.
+     */
+    @Query("SELECT r.owner.id FROM Rental r WHERE r.id = :id")
+    Optional<Integer> findOwnerIdById(@Param("id") Integer id);
+
+    /**
+     * Retrieves the versions of the first rentals of the listing.
+     * <p>
+     * Reads the listing index only, see {@link #findFirstPage(Pageable)}.
+     * </p>
+     *
+     * @param pageable The page holding the maximum number of rentals to return.
+     * @return The versions of the first rentals of the listing.
+     */
+    @Query("SELECT r.id AS id, r.updatedAt AS updatedAt FROM Rental r ORDER BY r.createdAt ASC, r.id ASC")
+    List<RentalVersion> findFirstPageVersions(Pageable pageable);
+
+    /**
+     * Retrieves the versions of the rentals located after the given {@code (createdAt, id)} position.
+     * <p>
+     * Reads the listing index only, see {@link #findPageAfter(Date, Integer, Pageable)}.
+     * </p>
+     *
+     * @param createdAt The creation date of the last rental already returned.
+     * @param id The ID of the last rental already returned.
+     * @param pageable The page holding the maximum number of rentals to return.
+     * @return The versions of the rentals following the given position.
+     */
+    @Query("SELECT r.id AS id, r.updatedAt AS updatedAt FROM Rental r "
+        + "WHERE r.createdAt > :createdAt OR (r.createdAt = :createdAt AND r.id > :id) "
+        + "ORDER BY r.createdAt ASC, r.id ASC")
+    List<RentalVersion> findPageVersionsAfter(@Param("createdAt") Date createdAt, @Param("id") Integer id, Pageable pageable);
+
+    /**
+     * Streams every rental ordered by ID.
+     * <p>
+     * Rows are fetched from the JDBC driver in batches instead of being materialized at once.
+     * With MySQL this requires {@code useCursorFetch=true} on the datasource URL. The stream
+     * must be consumed inside a transaction and closed afterwards.
+     * </p>
+     *
+     * @return A stream over all rentals.
+     */
+    @QueryHints({
+        @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT r FROM Rental r ORDER BY r.id ASC")
+    Stream<Rental> streamAll();
+
+    /**
+     * Projection of the versioning columns of a rental.
+     */
+    interface RentalVersion {
+        Integer getId();
+
+        Date getUpdatedAt();
+    }
 }
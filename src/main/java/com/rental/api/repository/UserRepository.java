@@ -1,22 +1,29 @@
 package com.rental.api.repository;
 
+import java.util.Date;
 import java.util.Optional;
 
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.rental.api.model.User;
 
 /**
  * Repository interface for accessing User entities in the database.
+ * <p>
+ * Lookups by email are implemented in {@link UserRepositoryCustomImpl}.
+ * </p>
  */
 @Repository
-public interface UserRepository extends CrudRepository<User, Integer>{
+public interface UserRepository extends JpaRepository<User, Integer>, UserRepositoryCustom {
     /**
-     * Finds a user by their email address.
-     * 
-     * @param email The email address of the user to find.
-     * @return An Optional containing the user if found, otherwise empty.
+     * Retrieves the last update timestamp of a user without loading them.
+     *
+     * @param id The ID of the user.
+     * @return The last update timestamp, or empty if the user does not exist.
      */
-    Optional<User> findByEmail(String email);
+    @Query("SELECT u.updatedAt FROM User u WHERE u.id = :id")
+    Optional<Date> findUpdatedAtById(@Param("id") Integer id);
 }
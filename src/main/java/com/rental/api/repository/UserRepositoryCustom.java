@@ -0,0 +1,22 @@
+package com.rental.api.repository;
+
+import java.util.Optional;
+
+import com.rental.api.model.User;
+
+/**
+ * Custom queries of {@link UserRepository} going through the Hibernate natural-id API.
+ */
+public interface UserRepositoryCustom {
+    /**
+     * Finds a user by their email address.
+     * <p>
+     * The email is the natural ID of users: once resolved, the lookup is served by the
+     * second-level cache without querying the database.
+     * </p>
+     *
+     * @param email The email address of the user to find.
+     * @return An Optional containing the user if found, otherwise empty.
+     */
+    Optional<User> findByEmail(String email);
+}
@@ -0,0 +1,30 @@
+package com.rental.api.repository;
+
+import java.util.Optional;
+
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.rental.api.model.User;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Implementation of {@link UserRepositoryCustom}, picked up by Spring Data through its name.
+ */
+class UserRepositoryCustomImpl implements UserRepositoryCustom {
+    private final EntityManager entityManager;
+
+    UserRepositoryCustomImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<User> findByEmail(String email) {
+        // Unwrapping needs the transactional session, a detached one would be closed right away
+        return entityManager.unwrap(Session.class)
+            .bySimpleNaturalId(User.class)
+            .loadOptional(email);
+    }
+}
@@ -0,0 +1,89 @@
+package com.rental.api.response;
+
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents a message received by the owner of a rental, as listed in their inbox.
+ * <p>
+ * Only holds the columns of the {@code messages} table, the sender and the rental are
+ * referenced by ID.
+ * </p>
+ */
+public class InboxMessage {
+    private Integer id;
+
+    private String message;
+
+    @JsonProperty("rental_id")
+    private Integer rentalId;
+
+    @JsonProperty("user_id")
+    private Integer userId;
+
+    @JsonProperty("created_at")
+    private Date createdAt;
+
+    /**
+     * Constructs a message of the inbox, used as a query projection.
+     *
+     * @param id        The ID of the message
+     * @param message   The content of the message
+     * @param rentalId  The ID of the rental the message is about
+     * @param userId    The ID of the sender of the message
+     * @param createdAt The creation timestamp of the message
+     */
+    public InboxMessage(Integer id, String message, Integer rentalId, Integer userId, Date createdAt) {
+        this.id = id;
+        this.message = message;
+        this.rentalId = rentalId;
+        this.userId = userId;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Retrieves the ID of the message.
+     *
+     * @return The ID of the message
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the content of the message.
+     *
+     * @return The content of the message
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Retrieves the ID of the rental the message is about.
+     *
+     * @return The ID of the rental
+     */
+    public Integer getRentalId() {
+        return rentalId;
+    }
+
+    /**
+     * Retrieves the ID of the sender of the message.
+     *
+     * @return The ID of the sender
+     */
+    public Integer getUserId() {
+        return userId;
+    }
+
+    /**
+     * Retrieves the creation timestamp of the message.
+     *
+     * @return The creation timestamp
+     */
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+}
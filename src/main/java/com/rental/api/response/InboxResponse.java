@@ -0,0 +1,44 @@
+package com.rental.api.response;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents a response object containing a page of the inbox of a rental owner.
+ */
+public class InboxResponse {
+    private List<InboxMessage> messages;
+
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+
+    /**
+     * Constructs a new InboxResponse object with the specified page of messages.
+     *
+     * @param messages   The page of messages, newest first
+     * @param nextCursor The cursor to request the next page, or null if this is the last page
+     */
+    public InboxResponse(List<InboxMessage> messages, String nextCursor) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Retrieves the page of messages, newest first.
+     *
+     * @return The page of messages
+     */
+    public List<InboxMessage> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Retrieves the cursor to pass as {@code after} to fetch the next page.
+     *
+     * @return The next page cursor, or null if there is no next page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
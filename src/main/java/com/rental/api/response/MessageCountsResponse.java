@@ -0,0 +1,52 @@
+package com.rental.api.response;
+
+import java.util.List;
+
+/**
+ * Represents a response object containing the message counts of all the rentals of an owner.
+ */
+public class MessageCountsResponse {
+    private List<RentalMessageCount> rentals;
+
+    private long messages;
+
+    private long unread;
+
+    /**
+     * Constructs a new MessageCountsResponse object, totalling the counts of the rentals.
+     *
+     * @param rentals The message counts of each rental of the owner
+     */
+    public MessageCountsResponse(List<RentalMessageCount> rentals) {
+        this.rentals = rentals;
+        this.messages = rentals.stream().mapToLong(RentalMessageCount::getMessages).sum();
+        this.unread = rentals.stream().mapToLong(RentalMessageCount::getUnread).sum();
+    }
+
+    /**
+     * Retrieves the message counts of each rental of the owner.
+     *
+     * @return The message counts per rental
+     */
+    public List<RentalMessageCount> getRentals() {
+        return rentals;
+    }
+
+    /**
+     * Retrieves the number of messages received about all the rentals of the owner.
+     *
+     * @return The total number of messages
+     */
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * Retrieves the number of messages not yet read about all the rentals of the owner.
+     *
+     * @return The total number of unread messages
+     */
+    public long getUnread() {
+        return unread;
+    }
+}
@@ -0,0 +1,55 @@
+package com.rental.api.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents the message counts of a rental, as shown on the dashboard of its owner.
+ */
+public class RentalMessageCount {
+    @JsonProperty("rental_id")
+    private Integer rentalId;
+
+    private long messages;
+
+    private long unread;
+
+    /**
+     * Constructs the message counts of a rental.
+     *
+     * @param rentalId The ID of the rental
+     * @param messages The number of messages received about the rental
+     * @param unread   The number of these messages not yet read by the owner
+     */
+    public RentalMessageCount(Integer rentalId, long messages, long unread) {
+        this.rentalId = rentalId;
+        this.messages = messages;
+        this.unread = unread;
+    }
+
+    /**
+     * Retrieves the ID of the rental.
+     *
+     * @return The ID of the rental
+     */
+    public Integer getRentalId() {
+        return rentalId;
+    }
+
+    /**
+     * Retrieves the number of messages received about the rental.
+     *
+     * @return The number of messages
+     */
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * Retrieves the number of messages not yet read by the owner.
+     *
+     * @return The number of unread messages
+     */
+    public long getUnread() {
+        return unread;
+    }
+}
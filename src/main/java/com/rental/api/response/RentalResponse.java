@@ -2,14 +2,18 @@ package com.rental.api.response;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.rental.api.model.Rental;
 
 /**
- * Represents a response object containing a list of rental properties.
+ * Represents a response object containing a page of rental properties.
  */
 public class RentalResponse {
     private List<Rental> rentals;
 
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+
     /**
      * Constructs a new RentalResponse object with the specified list of rentals.
      *
@@ -19,6 +23,17 @@ public class RentalResponse {
         this.rentals = rentals;
     }
 
+    /**
+     * Constructs a new RentalResponse object with the specified page of rentals.
+     *
+     * @param rentals    The page of rental properties to encapsulate in the response
+     * @param nextCursor The cursor to request the next page, or null if this is the last page
+     */
+    public RentalResponse(List<Rental> rentals, String nextCursor) {
+        this.rentals = rentals;
+        this.nextCursor = nextCursor;
+    }
+
     /**
      * Retrieves the list of rental properties encapsulated in this response.
      *
@@ -36,4 +51,22 @@ public class RentalResponse {
     public void setRentals(List<Rental> rentals) {
         this.rentals = rentals;
     }
+
+    /**
+     * Retrieves the cursor to pass as {@code after} to fetch the next page.
+     *
+     * @return The next page cursor, or null if there is no next page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Sets the cursor to pass as {@code after} to fetch the next page.
+     *
+     * @param nextCursor The next page cursor to set
+     */
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
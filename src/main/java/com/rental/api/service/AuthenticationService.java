@@ -1,5 +1,10 @@
 package com.rental.api.service;
 
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -10,9 +15,17 @@ import com.rental.api.dto.RegisterUserDto;
 import com.rental.api.model.User;
 import com.rental.api.repository.UserRepository;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
 
 /**
  * Service class that handles user authentication and registration.
+ * <p>
+ * Password hashing costs tens of milliseconds of CPU, so the asynchronous variants run it on a
+ * dedicated bounded executor instead of the request threads. Once its queue is full, new
+ * requests are rejected with a {@link TaskRejectedException} rather than queued.
+ * </p>
  */
 @Service
 public class AuthenticationService {
@@ -20,7 +33,7 @@ public class AuthenticationService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authenticationManager;
-
+    private final ThreadPoolTaskExecutor passwordHashingExecutor;
 
     /**
      * Constructs an AuthenticationService instance with the necessary dependencies.
@@ -28,15 +41,63 @@ public class AuthenticationService {
      * @param userRepository The repository for accessing user data.
      * @param authenticationManager The authentication manager for authenticating users.
      * @param passwordEncoder The password encoder for encoding user passwords.
+     * @param meterRegistry The registry exposing the password hashing executor metrics.
+     * @param hashingThreads The number of threads hashing passwords.
+     * @param hashingQueueCapacity The number of hashing tasks waiting for a thread before rejecting new ones.
      */
     public AuthenticationService(
         UserRepository userRepository,
         AuthenticationManager authenticationManager,
-        PasswordEncoder passwordEncoder
+        PasswordEncoder passwordEncoder,
+        MeterRegistry meterRegistry,
+        @Value("${security.password.hashing.threads:0}") int hashingThreads,
+        @Value("${security.password.hashing.queue-capacity:64}") int hashingQueueCapacity
     ){
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.authenticationManager = authenticationManager;
+
+        // Hashing is CPU bound, one thread per core unless configured
+        int threads = hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
+        this.passwordHashingExecutor = new ThreadPoolTaskExecutor();
+        passwordHashingExecutor.setCorePoolSize(threads);
+        passwordHashingExecutor.setMaxPoolSize(threads);
+        passwordHashingExecutor.setQueueCapacity(hashingQueueCapacity);
+        passwordHashingExecutor.setThreadNamePrefix("password-hashing-");
+        passwordHashingExecutor.setWaitForTasksToCompleteOnShutdown(true);
+        passwordHashingExecutor.initialize();
+
+        ExecutorServiceMetrics.monitor(meterRegistry, passwordHashingExecutor.getThreadPoolExecutor(), "passwordHashing");
+    }
+
+    /**
+     * Registers a new user on the password hashing executor.
+     *
+     * @param input The details of the user to be registered.
+     * @return A future completed with the newly registered user.
+     * @throws TaskRejectedException if the password hashing executor is saturated.
+     */
+    public CompletableFuture<User> signupAsync(RegisterUserDto input) {
+        return CompletableFuture.supplyAsync(() -> signup(input), passwordHashingExecutor);
+    }
+
+    /**
+     * Authenticates a user on the password hashing executor.
+     *
+     * @param input The login credentials of the user.
+     * @return A future completed with the authenticated user, or failed if authentication fails.
+     * @throws TaskRejectedException if the password hashing executor is saturated.
+     */
+    public CompletableFuture<User> authenticateAsync(LoginUserDto input) {
+        return CompletableFuture.supplyAsync(() -> authenticate(input), passwordHashingExecutor);
+    }
+
+    /**
+     * Stops the password hashing executor, letting queued tasks complete.
+     */
+    @PreDestroy
+    public void shutdown() {
+        passwordHashingExecutor.shutdown();
     }
 
     /**
@@ -0,0 +1,444 @@
+package com.rental.api.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Store of the responses of the requests made with an {@code Idempotency-Key} header.
+ * <p>
+ * The first request made with a key claims it and is executed, its response is then stored for
+ * {@code idempotency.ttl} and replayed to the retries made with the same key, which cost a map
+ * lookup on the node that executed it and a primary key lookup on the others. A retry made while
+ * the original request is in progress waits for its response, for at most
+ * {@code idempotency.max-wait}: on the same node it waits on the in-memory entry of the request,
+ * on other nodes it polls the {@code idempotency_keys} table.
+ * </p>
+ * <p>
+ * Server errors and throttled requests are not stored, their key is released so that retries are
+ * executed again. A key reused with a different request is refused.
+ * </p>
+ */
+@Service
+public class IdempotencyService {
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+
+    private static final String INSERT_CLAIM =
+        "INSERT INTO idempotency_keys (idempotency_key, fingerprint, created_at, expires_at) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_RECORD =
+        "SELECT fingerprint, status, content_type, location, body, created_at, expires_at FROM idempotency_keys WHERE idempotency_key = ?";
+    private static final String COMPLETE_CLAIM =
+        "UPDATE idempotency_keys SET status = ?, content_type = ?, location = ?, body = ? WHERE idempotency_key = ?";
+    private static final String DELETE_CLAIM =
+        "DELETE FROM idempotency_keys WHERE idempotency_key = ? AND status IS NULL";
+    private static final String DELETE_EXPIRED =
+        "DELETE FROM idempotency_keys WHERE idempotency_key = ? AND expires_at < ?";
+    private static final String DELETE_ABANDONED =
+        "DELETE FROM idempotency_keys WHERE idempotency_key = ? AND status IS NULL AND created_at < ?";
+    private static final String PURGE_EXPIRED =
+        "DELETE FROM idempotency_keys WHERE expires_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration ttl;
+    private final Duration maxWait;
+    private final Duration claimTimeout;
+    private final Cache<String, Entry> entries;
+
+    private final Counter executed;
+    private final Counter replayed;
+    private final Counter mismatched;
+    private final Counter inProgress;
+
+    /**
+     * Constructs the store and registers its metrics.
+     *
+     * @param jdbcTemplate The template reading and writing the idempotency keys table.
+     * @param meterRegistry The registry exposing the outcome of the requests and the in-memory entries.
+     * @param ttl The time a response is replayed for.
+     * @param maxWait The maximum time a retry waits for the original request to complete.
+     * @param claimTimeout The time after which a request still in progress on another node is considered abandoned.
+     * @param maxEntries The maximum number of responses kept in memory.
+     */
+    public IdempotencyService(
+        JdbcTemplate jdbcTemplate,
+        MeterRegistry meterRegistry,
+        @Value("${idempotency.ttl:24h}") Duration ttl,
+        @Value("${idempotency.max-wait:5s}") Duration maxWait,
+        @Value("${idempotency.claim-timeout:5m}") Duration claimTimeout,
+        @Value("${idempotency.memory.max-entries:10000}") long maxEntries
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttl = ttl;
+        this.maxWait = maxWait;
+        this.claimTimeout = claimTimeout;
+        this.entries = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "idempotency");
+        this.executed = outcome(meterRegistry, "executed");
+        this.replayed = outcome(meterRegistry, "replayed");
+        this.mismatched = outcome(meterRegistry, "mismatched");
+        this.inProgress = outcome(meterRegistry, "in-progress");
+    }
+
+    /**
+     * Claims a key for a request, or retrieves the response of the request that claimed it.
+     *
+     * @param key The idempotency key, scoped to the caller.
+     * @param fingerprint A description of the request, which retries must match.
+     * @return The claim, to execute the request with if its state is {@link ClaimState#EXECUTE}.
+     * @throws InterruptedException if interrupted while waiting for the original request.
+     */
+    public Claim claim(String key, String fingerprint) throws InterruptedException {
+        String digest = digest(fingerprint);
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        while (true) {
+            Entry entry = new Entry(digest);
+            Entry existing = entries.asMap().putIfAbsent(key, entry);
+            if (existing == null) {
+                return claimStored(key, entry, deadline);
+            }
+            if (!existing.fingerprint.equals(digest)) {
+                mismatched.increment();
+                return new Claim(ClaimState.MISMATCH, null, null, null);
+            }
+
+            try {
+                long remaining = deadline - System.nanoTime();
+                StoredResponse response = existing.response.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                replayed.increment();
+                return new Claim(ClaimState.REPLAY, response, null, null);
+            } catch (TimeoutException e) {
+                inProgress.increment();
+                return new Claim(ClaimState.IN_PROGRESS, null, null, null);
+            } catch (ExecutionException | CancellationException e) {
+                // The original request released the key, claim it again
+            }
+        }
+    }
+
+    /**
+     * Retrieves the time a retry waits for the original request to complete.
+     *
+     * @return The maximum wait.
+     */
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Deletes the expired responses.
+     */
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval:PT10M}")
+    public void purgeExpired() {
+        int purged = jdbcTemplate.update(PURGE_EXPIRED, Timestamp.from(Instant.now()));
+        log.debug("Purged {} expired idempotency keys", purged);
+    }
+
+    /**
+     * Claims a key in the table once it is claimed on this node, or retrieves the response stored
+     * by another node.
+     */
+    private Claim claimStored(String key, Entry entry, long deadline) throws InterruptedException {
+        try {
+            while (true) {
+                Instant now = Instant.now();
+                try {
+                    jdbcTemplate.update(INSERT_CLAIM, key, entry.fingerprint, Timestamp.from(now), Timestamp.from(now.plus(ttl)));
+                    executed.increment();
+                    return new Claim(ClaimState.EXECUTE, null, key, entry);
+                } catch (DuplicateKeyException e) {
+                    // Claimed by another node, or by this one before a restart
+                }
+
+                List<StoredRecord> records = jdbcTemplate.query(SELECT_RECORD, (row, i) -> new StoredRecord(
+                    row.getString(1),
+                    (Integer) row.getObject(2),
+                    row.getString(3),
+                    row.getString(4),
+                    row.getBytes(5),
+                    row.getTimestamp(6).toInstant(),
+                    row.getTimestamp(7).toInstant()
+                ), key);
+                if (records.isEmpty()) {
+                    continue;
+                }
+                StoredRecord stored = records.get(0);
+                if (stored.expiresAt.isBefore(now)) {
+                    jdbcTemplate.update(DELETE_EXPIRED, key, Timestamp.from(now));
+                    continue;
+                }
+                if (!stored.fingerprint.equals(entry.fingerprint)) {
+                    mismatched.increment();
+                    return abandon(key, entry, ClaimState.MISMATCH);
+                }
+                if (stored.status != null) {
+                    StoredResponse response = new StoredResponse(stored.status, stored.contentType, stored.location, stored.body);
+                    entry.response.complete(response);
+                    replayed.increment();
+                    return new Claim(ClaimState.REPLAY, response, null, null);
+                }
+                if (stored.createdAt.isBefore(now.minus(claimTimeout))) {
+                    log.warn("Reclaiming idempotency key {} abandoned since {}", key, stored.createdAt);
+                    jdbcTemplate.update(DELETE_ABANDONED, key, Timestamp.from(now.minus(claimTimeout)));
+                    continue;
+                }
+                if (System.nanoTime() + POLL_INTERVAL.toNanos() > deadline) {
+                    inProgress.increment();
+                    return abandon(key, entry, ClaimState.IN_PROGRESS);
+                }
+                Thread.sleep(POLL_INTERVAL);
+            }
+        } catch (RuntimeException | InterruptedException e) {
+            abandon(key, entry, null);
+            throw e;
+        }
+    }
+
+    /**
+     * Removes an in-memory entry that will never hold a response, so that waiting retries claim the key again.
+     */
+    private Claim abandon(String key, Entry entry, ClaimState state) {
+        entries.asMap().remove(key, entry);
+        entry.response.completeExceptionally(new CancellationException("Idempotency key released"));
+        return new Claim(state, null, null, null);
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("idempotency.requests")
+            .description("Requests made with an idempotency key")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    private static String digest(String fingerprint) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(fingerprint.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * The outcome of claiming an idempotency key.
+     */
+    public enum ClaimState {
+        /** The key is claimed, the request must be executed then completed or released. */
+        EXECUTE,
+        /** The key was used by the same request, its response must be replayed. */
+        REPLAY,
+        /** The key was used by a different request. */
+        MISMATCH,
+        /** The original request did not complete within the maximum wait. */
+        IN_PROGRESS
+    }
+
+    /**
+     * A claim of an idempotency key, completed with the response of the request or released.
+     */
+    public final class Claim {
+        private final ClaimState state;
+        private final StoredResponse response;
+        private final String key;
+        private final Entry entry;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Claim(ClaimState state, StoredResponse response, String key, Entry entry) {
+            this.state = state;
+            this.response = response;
+            this.key = key;
+            this.entry = entry;
+        }
+
+        /**
+         * Retrieves the outcome of the claim.
+         *
+         * @return The state of the claim.
+         */
+        public ClaimState getState() {
+            return state;
+        }
+
+        /**
+         * Retrieves the response to replay.
+         *
+         * @return The stored response, or null unless the state is {@link ClaimState#REPLAY}.
+         */
+        public StoredResponse getResponse() {
+            return response;
+        }
+
+        /**
+         * Stores the response of the executed request, or releases the key if the response may
+         * not be replayed. Has no effect once the claim is completed or released.
+         *
+         * @param executed The response of the request.
+         */
+        public void complete(StoredResponse executed) {
+            if (state != ClaimState.EXECUTE || !settled.compareAndSet(false, true)) {
+                return;
+            }
+            int status = executed.getStatus();
+            if (status >= 500 || status == 429) {
+                releaseClaim();
+                return;
+            }
+            try {
+                jdbcTemplate.update(COMPLETE_CLAIM, status, executed.getContentType(), executed.getLocation(), executed.getBody(), key);
+            } catch (DataAccessException e) {
+                // Still replayed by this node
+                log.error("Failed to store the response of idempotency key {}", key, e);
+            }
+            entry.response.complete(executed);
+        }
+
+        /**
+         * Releases the key without a response, so that retries execute the request again. Has no
+         * effect once the claim is completed or released.
+         */
+        public void release() {
+            if (state == ClaimState.EXECUTE && settled.compareAndSet(false, true)) {
+                releaseClaim();
+            }
+        }
+
+        private void releaseClaim() {
+            try {
+                jdbcTemplate.update(DELETE_CLAIM, key);
+            } catch (DataAccessException e) {
+                log.error("Failed to release idempotency key {}, it will be reclaimed once abandoned", key, e);
+            }
+            abandon(key, entry, null);
+        }
+    }
+
+    /**
+     * A response stored to be replayed.
+     */
+    public static final class StoredResponse {
+        private final int status;
+        private final String contentType;
+        private final String location;
+        private final byte[] body;
+
+        /**
+         * Constructs a stored response.
+         *
+         * @param status The status of the response.
+         * @param contentType The content type of the body, or null.
+         * @param location The Location header of the response, or null.
+         * @param body The body of the response.
+         */
+        public StoredResponse(int status, String contentType, String location, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.location = location;
+            this.body = body != null ? body : new byte[0];
+        }
+
+        /**
+         * Retrieves the status of the response.
+         *
+         * @return The status of the response.
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Retrieves the content type of the body.
+         *
+         * @return The content type of the body, or null.
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Retrieves the Location header of the response.
+         *
+         * @return The Location header of the response, or null.
+         */
+        public String getLocation() {
+            return location;
+        }
+
+        /**
+         * Retrieves the body of the response.
+         *
+         * @return The body of the response.
+         */
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * A request claimed on this node, and its response once completed.
+     */
+    private static final class Entry {
+        private final String fingerprint;
+        private final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+
+        private Entry(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * A row of the idempotency keys table.
+     */
+    private static final class StoredRecord {
+        private final String fingerprint;
+        private final Integer status;
+        private final String contentType;
+        private final String location;
+        private final byte[] body;
+        private final Instant createdAt;
+        private final Instant expiresAt;
+
+        private StoredRecord(String fingerprint, Integer status, String contentType, String location, byte[] body,
+            Instant createdAt, Instant expiresAt) {
+            this.fingerprint = fingerprint;
+            this.status = status;
+            this.contentType = contentType;
+            this.location = location;
+            this.body = body;
+            this.createdAt = createdAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,64 +1,126 @@
 package com.rental.api.service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.rental.api.model.User;
+
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 
 /**
  * Service class for handling JWT (JSON Web Token) operations.
+ * <p>
+ * The signing key and the parser are built once. Tokens are verified once per request by
+ * {@link #verify(String)}, and successfully verified tokens are cached by digest until they
+ * expire, so a client reusing its token skips the signature check.
+ * </p>
  */
 @Service
 public class JwtService {
+    /** Claim holding the ID of the user. */
+    public static final String USER_ID_CLAIM = "uid";
+    /** Claim holding the name of the user. */
+    public static final String NAME_CLAIM = "name";
 
-    @Value("${security.jwt.secret-key}")
-    private String secretKey;
-
-    @Value("${security.jwt.expiration-time}")
-    private long jwtExpiration;
+    private final long jwtExpiration;
+    private final Key signingKey;
+    private final JwtParser parser;
+    private final Cache<String, VerifiedToken> verifiedTokens;
 
     /**
-     * Extracts the username (subject) from a JWT token.
+     * Constructs the service, decoding the signing key and building the parser.
      *
-     * @param token The JWT token from which to extract the username.
-     * @return The username (subject) extracted from the JWT token.
+     * @param secretKey The Base64 encoded HMAC secret.
+     * @param jwtExpiration The lifetime of generated tokens in milliseconds.
+     * @param cacheMaxSize The maximum number of verified tokens kept in cache.
+     * @param meterRegistry The registry exposing the cache metrics.
      */
-    public String extractUsername(String token){
-        return extractClaim(token, Claims::getSubject);
+    public JwtService(
+        @Value("${security.jwt.secret-key}") String secretKey,
+        @Value("${security.jwt.expiration-time}") long jwtExpiration,
+        @Value("${security.jwt.verified-cache.max-size:10000}") long cacheMaxSize,
+        MeterRegistry meterRegistry
+    ) {
+        this.jwtExpiration = jwtExpiration;
+        this.signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        this.parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        this.verifiedTokens = Caffeine.newBuilder()
+            .maximumSize(cacheMaxSize)
+            .expireAfter(new TokenExpiry())
+            .recordStats()
+            .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "verifiedTokens");
     }
 
     /**
-     * Extracts a specific claim from a JWT token using a provided resolver function.
+     * Verifies the signature and expiration of a JWT token.
      *
-     * @param token The JWT token from which to extract the claim.
-     * @param claimResolver The function to resolve the desired claim from the token's claims.
-     * @param <T> The type of the claim to extract.
-     * @return The resolved claim extracted from the JWT token.
+     * @param token The JWT token to verify.
+     * @return The verified token.
+     * @throws JwtException if the token is malformed, badly signed, expired or has no expiration.
      */
-    public <T> T extractClaim(String token, Function<Claims, T> claimResolver){
-        final Claims claims = extractAllClaims(token);
-        return claimResolver.apply(claims);
+    public VerifiedToken verify(String token) {
+        String digest = digest(token);
+        VerifiedToken cached = verifiedTokens.getIfPresent(digest);
+        // Expiration is checked again as the cache evicts lazily
+        if (cached != null && !cached.isExpired(System.currentTimeMillis())) {
+            return cached;
+        }
+
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        if (claims.getExpiration() == null) {
+            throw new MalformedJwtException("JWT token has no expiration");
+        }
+        VerifiedToken verified = new VerifiedToken(
+            claims.getSubject(),
+            claims.get(USER_ID_CLAIM, Integer.class),
+            claims.get(NAME_CLAIM, String.class),
+            claims.getIssuedAt(),
+            claims.getExpiration()
+        );
+        verifiedTokens.put(digest, verified);
+        return verified;
     }
-    
+
     /**
      * Generates a JWT token for a user.
+     * <p>
+     * The token carries the ID and name of the user, so that requests can be authenticated
+     * without loading the user.
+     * </p>
      *
-     * @param userDetails The details of the user for whom the token is generated.
+     * @param user The user for whom the token is generated.
      * @return The generated JWT token as a string.
      */
-    public String generateToken(UserDetails userDetails) {
-        return generateToken(new HashMap<>(), userDetails);
+    public String generateToken(User user) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(USER_ID_CLAIM, user.getId());
+        claims.put(NAME_CLAIM, user.getName());
+        return generateToken(claims, user);
     }
 
     /**
@@ -72,18 +134,6 @@ public class JwtService {
         return buildToken(extraClaims, userDetails, jwtExpiration);
     }
 
-    /**
-     * Validates whether a JWT token is valid for the specified user.
-     *
-     * @param token The JWT token to validate.
-     * @param userDetails The details of the user against which to validate the token.
-     * @return true if the token is valid for the user, false otherwise.
-     */
-    public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
-    }
-
     /**
      * Retrieves the expiration time of JWT tokens.
      *
@@ -93,7 +143,6 @@ public class JwtService {
         return jwtExpiration;
     }
 
-    
     /**
      * Builds a JWT token with specified claims and expiration time.
      *
@@ -113,52 +162,46 @@ public class JwtService {
                 .setSubject(userDetails.getUsername())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSignInKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     /**
-     * Checks if a JWT token has expired.
-     *
-     * @param token The JWT token to check for expiration.
-     * @return true if the token has expired, false otherwise.
-     */
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
-
-    /**
-     * Extracts the expiration date from a JWT token.
+     * Computes the cache key of a token.
+     * <p>
+     * Only the digest is kept in memory, not the bearer token itself.
+     * </p>
      *
-     * @param token The JWT token from which to extract the expiration date.
-     * @return The expiration date extracted from the JWT token.
+     * @param token The JWT token.
+     * @return The hex encoded SHA-256 digest of the token.
      */
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    private String digest(String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
     }
 
     /**
-     * Extracts all claims from a JWT token.
-     *
-     * @param token The JWT token from which to extract all claims.
-     * @return All claims extracted from the JWT token.
-     */
-    private Claims extractAllClaims(String token) {
-        return Jwts
-                .parserBuilder()
-                .setSigningKey(getSignInKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-    }
-
-    /**
-     * Decodes the secret key and generates the signing key used to sign JWT tokens.
-     *
-     * @return The generated signing key for JWT tokens.
+     * Expires cached tokens when the tokens themselves expire.
      */
-    private Key getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private static final class TokenExpiry implements Expiry<String, VerifiedToken> {
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+            long millis = Math.max(0, value.millisUntilExpiration(System.currentTimeMillis()));
+            return TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
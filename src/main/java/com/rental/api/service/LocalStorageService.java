@@ -0,0 +1,173 @@
+package com.rental.api.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Stores rental pictures in a directory of the local disk.
+ * <p>
+ * Files are written through {@link FileChannel#transferFrom} into a temporary file of the
+ * directory, then atomically renamed to their key, so a picture is never served half written.
+ * Pictures are served straight from this directory by {@code GET /api/pictures/{key}}, which
+ * sends them with {@code sendfile}.
+ * Enabled with {@code storage.backend=local}, to run edge nodes and benchmarks without S3.
+ * </p>
+ */
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local")
+public class LocalStorageService implements StorageBackend {
+    /** The largest chunk handed to a single {@code transferFrom} call. */
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
+    private final Path directory;
+    private final String baseUrl;
+
+    /**
+     * Constructs the service, creating the storage directory if needed.
+     *
+     * @param directory The directory pictures are stored in.
+     * @param baseUrl The URL pictures are served from, followed by their key.
+     * @throws UncheckedIOException if the directory cannot be created.
+     */
+    public LocalStorageService(
+        @Value("${storage.local.directory:pictures}") Path directory,
+        @Value("${storage.local.base-url:http://localhost:3001/api/pictures/}") String baseUrl
+    ) {
+        try {
+            this.directory = Files.createDirectories(directory).toRealPath();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create the storage directory " + directory, e);
+        }
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+    }
+
+    @Override
+    public String uploadFile(String keyName, Path file, String contentType) {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            write(keyName, source, source.size());
+            return keyName;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store file " + keyName, e);
+        }
+    }
+
+    @Override
+    public String uploadStream(String keyName, InputStream in, String contentType) throws IOException {
+        write(keyName, Channels.newChannel(in), -1);
+        return keyName;
+    }
+
+    @Override
+    public boolean exists(String keyName) {
+        return Files.exists(resolve(keyName));
+    }
+
+    @Override
+    public void moveFile(String sourceKeyName, String targetKeyName) {
+        try {
+            Files.move(resolve(sourceKeyName), resolve(targetKeyName),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to move file " + sourceKeyName + " to " + targetKeyName, e);
+        }
+    }
+
+    @Override
+    public boolean download(String keyName, Path target) {
+        try {
+            Files.copy(resolve(keyName), target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to copy file " + keyName, e);
+        }
+    }
+
+    /**
+     * Retrieves the stored file itself, which is served without going through the picture cache.
+     *
+     * @param keyName The key name (object key) of the file.
+     * @return The path of the file, or empty if it does not exist.
+     */
+    @Override
+    public Optional<Path> getLocalFile(String keyName) {
+        Path file = resolve(keyName);
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    @Override
+    public void deleteFile(String keyName) {
+        try {
+            Files.deleteIfExists(resolve(keyName));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete file " + keyName, e);
+        }
+    }
+
+    @Override
+    public URL getFileUrl(String keyName) {
+        try {
+            return URI.create(baseUrl + resolve(keyName).getFileName()).toURL();
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Invalid storage.local.base-url " + baseUrl, e);
+        }
+    }
+
+    /**
+     * Resolves the path of a stored file.
+     *
+     * @param keyName The key name (object key) of the file.
+     * @return The path the file is stored at, which may not exist.
+     * @throws IllegalArgumentException if the key is not a valid file name.
+     */
+    public Path resolve(String keyName) {
+        if (!PictureKeys.isValidKey(keyName)) {
+            throw new IllegalArgumentException("Invalid key " + keyName);
+        }
+        return directory.resolve(keyName);
+    }
+
+    /**
+     * Copies a channel into a temporary file, then renames it to the key.
+     *
+     * @param length The number of bytes to copy, or -1 to copy until the end of the channel.
+     */
+    private void write(String keyName, ReadableByteChannel source, long length) throws IOException {
+        Path target = resolve(keyName);
+        Path temporary = Files.createTempFile(directory, ".upload-", ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                long position = 0;
+                while (length < 0 || position < length) {
+                    long chunk = length < 0 ? TRANSFER_CHUNK : Math.min(TRANSFER_CHUNK, length - position);
+                    long transferred = out.transferFrom(source, position, chunk);
+                    if (transferred == 0) {
+                        break; // end of the source
+                    }
+                    position += transferred;
+                }
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.rental.api.service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Limits login attempts per email and per client address before any password is hashed.
+ * <p>
+ * Each key holds a token bucket implemented with the generic cell rate algorithm: the bucket
+ * is a single {@link AtomicLong} storing the theoretical arrival time of the next attempt, updated
+ * with a compare-and-set. An attempt costs a map lookup and a CAS, whatever the number of keys.
+ * </p>
+ * <p>
+ * Buckets back to full capacity are swept periodically, so idle keys do not accumulate.
+ * </p>
+ */
+@Service
+public class LoginThrottle {
+    private final Limit emailLimit;
+    private final Limit addressLimit;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final Counter emailRejections;
+    private final Counter addressRejections;
+
+    /**
+     * Constructs the throttle and registers its metrics.
+     *
+     * @param emailPerMinute The sustained number of attempts allowed per email and minute.
+     * @param emailBurst The number of attempts allowed at once per email.
+     * @param addressPerMinute The sustained number of attempts allowed per client address and minute.
+     * @param addressBurst The number of attempts allowed at once per client address.
+     * @param meterRegistry The registry exposing the number of buckets and rejections.
+     */
+    public LoginThrottle(
+        @Value("${security.login-throttle.email.per-minute:5}") int emailPerMinute,
+        @Value("${security.login-throttle.email.burst:5}") int emailBurst,
+        @Value("${security.login-throttle.address.per-minute:60}") int addressPerMinute,
+        @Value("${security.login-throttle.address.burst:30}") int addressBurst,
+        MeterRegistry meterRegistry
+    ) {
+        this.emailLimit = new Limit(emailPerMinute, emailBurst);
+        this.addressLimit = new Limit(addressPerMinute, addressBurst);
+
+        Gauge.builder("login.throttle.buckets", buckets, ConcurrentHashMap::size)
+            .description("Emails and client addresses with a login bucket not yet refilled")
+            .register(meterRegistry);
+        this.emailRejections = Counter.builder("login.throttle.rejections")
+            .description("Login attempts rejected before hashing the password")
+            .tag("key", "email")
+            .register(meterRegistry);
+        this.addressRejections = Counter.builder("login.throttle.rejections")
+            .description("Login attempts rejected before hashing the password")
+            .tag("key", "address")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Takes a login attempt from the buckets of the client address and of the email.
+     *
+     * @param address The address of the client.
+     * @param email The email the client tries to log in with.
+     * @return Zero if the attempt is allowed, otherwise the delay after which the client may retry.
+     */
+    public Duration tryAcquire(String address, String email) {
+        long now = System.nanoTime();
+
+        long addressWait = tryAcquire("ip:" + address, addressLimit, now);
+        if (addressWait > 0) {
+            addressRejections.increment();
+            return Duration.ofNanos(addressWait);
+        }
+
+        long emailWait = tryAcquire("email:" + (email == null ? "" : email.toLowerCase(Locale.ROOT)), emailLimit, now);
+        if (emailWait > 0) {
+            emailRejections.increment();
+            return Duration.ofNanos(emailWait);
+        }
+        return Duration.ZERO;
+    }
+
+    /**
+     * Removes the buckets that have refilled, they behave as missing ones.
+     * <p>
+     * An attempt racing with the removal of its bucket may be lost, allowing at most one extra attempt.
+     * </p>
+     */
+    @Scheduled(fixedDelayString = "${security.login-throttle.sweep-interval:PT1M}")
+    public void sweep() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(arrival -> arrival.get() - now <= 0);
+    }
+
+    /**
+     * Applies the generic cell rate algorithm to a bucket.
+     *
+     * @return Zero if the attempt is allowed, otherwise the nanoseconds to wait.
+     */
+    private long tryAcquire(String key, Limit limit, long now) {
+        AtomicLong arrival = buckets.get(key);
+        if (arrival == null) {
+            arrival = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            long current = arrival.get();
+            long base = current - now > 0 ? current : now;
+            long next = base + limit.interval;
+            long wait = next - now - limit.tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * A rate expressed as an emission interval and a burst tolerance, in nanoseconds.
+     */
+    private static final class Limit {
+        private final long interval;
+        private final long tolerance;
+
+        private Limit(int perMinute, int burst) {
+            this.interval = TimeUnit.MINUTES.toNanos(1) / Math.max(1, perMinute);
+            this.tolerance = interval * Math.max(1, burst);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.rental.api.service;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.rental.api.response.RentalMessageCount;
+
+/**
+ * Message counters of the rentals, maintained incrementally instead of counted per request.
+ * <p>
+ * Written messages are added to the {@code rental_message_counters} table in the transaction
+ * inserting them, with one upsert per rental of a batch, see {@link #add}. Counters are therefore
+ * exact on every node and survive crashes: a batch and its counts are committed together.
+ * </p>
+ * <p>
+ * On startup, only the rentals without a counter row are counted from the {@code messages} table:
+ * their messages were written before the counters existed, and counters already maintained by
+ * running nodes are never counted twice.
+ * </p>
+ */
+@Service
+public class MessageCounters implements SmartLifecycle {
+    // The count is bound twice, VALUES() is deprecated by MySQL and row aliases are not supported by H2
+    private static final String ADD_MESSAGES =
+        "INSERT INTO rental_message_counters (rental_id, message_count, read_count) VALUES (?, ?, 0) "
+        + "ON DUPLICATE KEY UPDATE message_count = message_count + ?";
+
+    private static final String SELECT_OWNER_COUNTS =
+        "SELECT r.id, COALESCE(c.message_count, 0), COALESCE(c.read_count, 0) "
+        + "FROM rentals r LEFT JOIN rental_message_counters c ON c.rental_id = r.id "
+        + "WHERE r.owner_id = ? ORDER BY r.id";
+
+    private static final String MARK_OWNER_READ =
+        "UPDATE rental_message_counters SET read_count = message_count "
+        + "WHERE rental_id IN (SELECT id FROM rentals WHERE owner_id = ?)";
+
+    private static final String MARK_RENTAL_READ =
+        "UPDATE rental_message_counters SET read_count = message_count "
+        + "WHERE rental_id IN (SELECT id FROM rentals WHERE owner_id = ? AND id = ?)";
+
+    // A row created meanwhile is kept, its messages are counted by the transaction that created it
+    private static final String COUNT_UNTRACKED =
+        "INSERT INTO rental_message_counters (rental_id, message_count, read_count) "
+        + "SELECT m.rental_id, COUNT(*), 0 FROM messages m "
+        + "WHERE NOT EXISTS (SELECT 1 FROM rental_message_counters c WHERE c.rental_id = m.rental_id) "
+        + "GROUP BY m.rental_id "
+        + "ON DUPLICATE KEY UPDATE rental_id = rental_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile boolean running;
+
+    /**
+     * Constructs the counters.
+     *
+     * @param jdbcTemplate The template reading and updating the counters table.
+     */
+    public MessageCounters(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Adds written messages to the counters of their rentals, creating the rows of rentals that
+     * have none yet. Called in the transaction inserting the messages, so that they are counted
+     * if and only if they are committed.
+     *
+     * @param messagesPerRental The number of messages written about each rental, iterated in the
+     *                          order the rows are locked in, such as the order of the rental IDs.
+     */
+    public void add(Map<Integer, Long> messagesPerRental) {
+        jdbcTemplate.batchUpdate(ADD_MESSAGES, messagesPerRental.entrySet().stream()
+            .map(count -> new Object[] { count.getKey(), count.getValue(), count.getValue() })
+            .toList());
+    }
+
+    /**
+     * Retrieves the message counts of all the rentals of an owner, in a single query.
+     *
+     * @param ownerId The ID of the owner.
+     * @return The message counts of each rental of the owner, ordered by rental ID.
+     */
+    public List<RentalMessageCount> getCounts(Integer ownerId) {
+        return jdbcTemplate.query(SELECT_OWNER_COUNTS, (row, i) -> {
+            long messages = row.getLong(2);
+            return new RentalMessageCount(row.getInt(1), messages, Math.max(0, messages - row.getLong(3)));
+        }, ownerId);
+    }
+
+    /**
+     * Marks the messages received so far about the rentals of an owner as read.
+     *
+     * @param ownerId The ID of the owner.
+     * @param rentalId The ID of a rental of the owner, or null for all their rentals.
+     */
+    public void markAsRead(Integer ownerId, Integer rentalId) {
+        if (rentalId == null) {
+            jdbcTemplate.update(MARK_OWNER_READ, ownerId);
+        } else {
+            jdbcTemplate.update(MARK_RENTAL_READ, ownerId, rentalId);
+        }
+    }
+
+    /**
+     * Counts the messages of the rentals without a counter row from the {@code messages} table.
+     * Counters of the other rentals are maintained as their messages are written.
+     */
+    public void countUntracked() {
+        jdbcTemplate.update(COUNT_UNTRACKED);
+    }
+
+    /**
+     * Counts the messages written before the counters existed, before messages are written.
+     */
+    @Override
+    public void start() {
+        countUntracked();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts before the {@link MessageWriteBehind}, see {@link MessageWriteBehind#getPhase()}.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 8192;
+    }
+}
@@ -0,0 +1,209 @@
+package com.rental.api.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rental.api.response.InboxMessage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Pushes the messages received by rental owners to their open inbox streams, as server-sent events.
+ * <p>
+ * A message is serialized once into an event shared by all the streams of its owner. Each stream
+ * has a buffer of {@code message.push.buffer-capacity} events drained by its own virtual thread,
+ * so a slow client only blocks its own thread; once its buffer is full the stream is closed, and
+ * the client catches up through the inbox when it reconnects. Idle streams receive a heartbeat
+ * comment every {@code message.push.heartbeat-interval}, which detects dead connections, and are
+ * closed after {@code message.push.timeout}.
+ * </p>
+ */
+@Service
+public class MessagePushService {
+    private static final Logger log = LoggerFactory.getLogger(MessagePushService.class);
+
+    private static final Set<DataWithMediaType> HEARTBEAT = SseEmitter.event().comment("heartbeat").build();
+
+    private final ObjectMapper objectMapper;
+    private final Duration timeout;
+    private final Duration heartbeatInterval;
+    private final int bufferCapacity;
+
+    private final ThreadFactory senders = Thread.ofVirtual().name("message-push-", 0).factory();
+    private final ConcurrentMap<Integer, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final Counter dropped;
+
+    /**
+     * Constructs the push service and registers its metrics.
+     *
+     * @param objectMapper The mapper serializing the pushed messages.
+     * @param meterRegistry The registry exposing the open streams and the dropped ones.
+     * @param timeout The maximum lifetime of a stream, after which clients reconnect.
+     * @param heartbeatInterval The maximum time a stream stays silent.
+     * @param bufferCapacity The maximum number of events waiting to be sent on a stream.
+     */
+    public MessagePushService(
+        ObjectMapper objectMapper,
+        MeterRegistry meterRegistry,
+        @Value("${message.push.timeout:30m}") Duration timeout,
+        @Value("${message.push.heartbeat-interval:20s}") Duration heartbeatInterval,
+        @Value("${message.push.buffer-capacity:64}") int bufferCapacity
+    ) {
+        this.objectMapper = objectMapper;
+        this.timeout = timeout;
+        this.heartbeatInterval = heartbeatInterval;
+        this.bufferCapacity = Math.max(1, bufferCapacity);
+
+        Gauge.builder("message.push.streams", open, AtomicInteger::get)
+            .description("Open inbox streams")
+            .register(meterRegistry);
+        this.dropped = Counter.builder("message.push.dropped")
+            .description("Inbox streams closed as their client did not keep up")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Opens a stream of the messages received by an owner.
+     *
+     * @param ownerId The ID of the owner.
+     * @return The emitter of the stream, to return from the request handler.
+     */
+    public SseEmitter subscribe(Integer ownerId) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscription subscription = new Subscription(ownerId, emitter);
+        // Added within compute, so that a concurrent close never removes the set being added to
+        subscriptions.compute(ownerId, (id, owned) -> {
+            Set<Subscription> set = owned != null ? owned : ConcurrentHashMap.newKeySet();
+            set.add(subscription);
+            return set;
+        });
+        open.incrementAndGet();
+
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(e -> subscription.close());
+        subscription.start();
+        return emitter;
+    }
+
+    /**
+     * Pushes a message to the open streams of its owner.
+     *
+     * @param ownerId The ID of the owner of the rental the message is about.
+     * @param message The message, as listed in the inbox.
+     */
+    public void publish(Integer ownerId, InboxMessage message) {
+        Set<Subscription> owned = subscriptions.get(ownerId);
+        if (owned == null || owned.isEmpty()) {
+            return;
+        }
+
+        Set<DataWithMediaType> event;
+        try {
+            // Serialized once, streams write the JSON string as is
+            SseEventBuilder builder = SseEmitter.event().name("message").data(objectMapper.writeValueAsString(message));
+            if (message.getId() != null) {
+                builder.id(String.valueOf(message.getId()));
+            }
+            event = builder.build();
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize message {}", message.getId(), e);
+            return;
+        }
+        for (Subscription subscription : owned) {
+            subscription.offer(event);
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        subscriptions.values().forEach(owned -> owned.forEach(subscription -> {
+            subscription.close();
+            subscription.emitter.complete();
+        }));
+    }
+
+    /**
+     * An open stream, with its buffer and its sending thread.
+     */
+    private final class Subscription {
+        private final Integer ownerId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Set<DataWithMediaType>> buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private Thread sender;
+
+        private Subscription(Integer ownerId, SseEmitter emitter) {
+            this.ownerId = ownerId;
+            this.emitter = emitter;
+        }
+
+        private void start() {
+            sender = senders.newThread(this::send);
+            sender.start();
+        }
+
+        private void offer(Set<DataWithMediaType> event) {
+            if (!buffer.offer(event)) {
+                dropped.increment();
+                log.debug("Closing a stream of owner {} as its buffer is full", ownerId);
+                close();
+                emitter.complete();
+            }
+        }
+
+        /**
+         * Sends the buffered events, or a heartbeat once the stream has been idle for the interval.
+         */
+        private void send() {
+            try {
+                while (!closed.get()) {
+                    Set<DataWithMediaType> event = buffer.poll(heartbeatInterval.toNanos(), TimeUnit.NANOSECONDS);
+                    emitter.send(event != null ? event : HEARTBEAT);
+                }
+            } catch (InterruptedException e) {
+                // Closed while waiting for an event
+            } catch (IOException | IllegalStateException e) {
+                // The client went away, or the stream completed meanwhile
+                close();
+            }
+        }
+
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            subscriptions.computeIfPresent(ownerId, (id, owned) -> {
+                owned.remove(this);
+                return owned.isEmpty() ? null : owned;
+            });
+            open.decrementAndGet();
+            if (sender != null && sender != Thread.currentThread()) {
+                sender.interrupt();
+            }
+        }
+    }
+}
@@ -1,16 +1,19 @@
 package com.rental.api.service;
 
-import java.util.Optional;
+import java.util.List;
 
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.rental.api.dto.KeysetCursor;
 import com.rental.api.dto.MessageDto;
-import com.rental.api.model.Message;
-import com.rental.api.model.Rental;
-import com.rental.api.model.User;
+import com.rental.api.model.AuthenticatedUser;
 import com.rental.api.repository.MessageRepository;
+import com.rental.api.response.InboxMessage;
+import com.rental.api.response.InboxResponse;
+import com.rental.api.response.MessageCountsResponse;
 
 import jakarta.persistence.EntityNotFoundException;
 
@@ -19,45 +22,134 @@ import jakarta.persistence.EntityNotFoundException;
  */
 @Service
 public class MessageService {
+    private MessageWriteBehind messageWriteBehind;
     private MessageRepository messageRepository;
+    private MessagePushService messagePushService;
+    private MessageCounters messageCounters;
     private RentalService rentalService;
 
+    @Value("${message.max-length:255}")
+    private int maxLength;
+
+    @Value("${message.inbox.default-limit:50}")
+    private int defaultPageLimit;
+
+    @Value("${message.inbox.max-limit:200}")
+    private int maxPageLimit;
+
     /**
      * Constructs a MessageService instance with necessary dependencies.
      *
+     * @param messageWriteBehind The queue writing the messages in batches.
      * @param messageRepository The repository for Message entities.
+     * @param messagePushService The service pushing messages to the inbox streams.
+     * @param messageCounters The message counters of the rentals.
      * @param rentalService The service for Rental operations.
      */
-    public MessageService(MessageRepository messageRepository, RentalService rentalService){
+    public MessageService(
+        MessageWriteBehind messageWriteBehind,
+        MessageRepository messageRepository,
+        MessagePushService messagePushService,
+        MessageCounters messageCounters,
+        RentalService rentalService
+    ){
+        this.messageWriteBehind = messageWriteBehind;
         this.messageRepository = messageRepository;
+        this.messagePushService = messagePushService;
+        this.messageCounters = messageCounters;
         this.rentalService = rentalService;
     }
 
     /**
-     * Creates a new message and saves it in the database.
+     * Validates a new message and queues it to be saved in the database.
+     * <p>
+     * The message is written shortly after, in a batch with the other messages sent meanwhile.
+     * </p>
      *
      * @param input The DTO containing details of the message to be created.
-     * @return The created Message entity.
+     * @return true if the message is queued, false if too many messages are waiting to be written.
      * @throws EntityNotFoundException if the specified rental ID does not exist.
+     * @throws IllegalArgumentException if the message is empty or too long.
      */
-    public Message addNewMessage(MessageDto input){
+    public boolean addNewMessage(MessageDto input){
+        String message = input.getMessage();
+        if (message == null || message.isBlank()) {
+            throw new IllegalArgumentException("Message must not be empty");
+        }
+        if (message.length() > maxLength) {
+            throw new IllegalArgumentException("Message must not exceed " + maxLength + " characters");
+        }
+
+        // Only read the owner of the rental, the message is pushed to them once written
+        Integer ownerId = rentalService.getRentalOwnerId(input.getRentalId());
+
+        return messageWriteBehind.enqueue(message, AuthenticatedUser.current().getId(), input.getRentalId(), ownerId);
+    }
+
+    /**
+     * Opens a stream of the messages received by the current user about their rentals.
+     * <p>
+     * Only messages written after the stream is opened are sent, older ones are listed by
+     * {@link #getInbox(String, Integer)}.
+     * </p>
+     *
+     * @return The emitter of the stream.
+     */
+    public SseEmitter subscribeToInbox() {
+        return messagePushService.subscribe(AuthenticatedUser.current().getId());
+    }
 
-        // Get rental
-        Optional<Rental> rentalOptional = rentalService.getRentalById(input.getRentalId());
-        Rental currentRental = rentalOptional.orElseThrow(() -> new EntityNotFoundException("Rental not found with id " + input.getRentalId()));
+    /**
+     * Retrieves the number of messages, and of unread messages, received about each rental of the current user.
+     *
+     * @return A MessageCountsResponse holding the counts per rental and their totals.
+     */
+    public MessageCountsResponse getMessageCounts() {
+        return new MessageCountsResponse(messageCounters.getCounts(AuthenticatedUser.current().getId()));
+    }
 
+    /**
+     * Marks the messages received so far about the rentals of the current user as read.
+     *
+     * @param rentalId The ID of one of their rentals, or null for all of them.
+     */
+    public void markAsRead(Integer rentalId) {
+        messageCounters.markAsRead(AuthenticatedUser.current().getId(), rentalId);
+    }
 
-        // Get current user
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        User currentUser = (User) authentication.getPrincipal();
+    /**
+     * Retrieves a page of the messages received by the current user about their rentals, newest first.
+     * <p>
+     * The page size is capped by {@code message.inbox.max-limit}. Messages still queued by the
+     * write-behind are not listed yet.
+     * </p>
+     *
+     * @param after The opaque cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of messages to return, or null for the default page size.
+     * @return An InboxResponse holding the page and the cursor of the next page, if any.
+     * @throws IllegalArgumentException if the cursor is invalid.
+     */
+    public InboxResponse getInbox(String after, Integer limit) {
+        int pageLimit = limit == null ? defaultPageLimit : Math.max(1, Math.min(limit, maxPageLimit));
+        Integer ownerId = AuthenticatedUser.current().getId();
 
-        Message message = new Message.Builder()
-            .setMessage(input.getMessage())
-            .setUser(currentUser)
-            .setRental(currentRental)
-            .build();
+        // Fetch one extra row to know whether a next page exists
+        PageRequest page = PageRequest.of(0, pageLimit + 1);
+        List<InboxMessage> messages;
+        if (after == null || after.isEmpty()) {
+            messages = messageRepository.findInboxFirstPage(ownerId, page);
+        } else {
+            KeysetCursor cursor = KeysetCursor.decode(after);
+            messages = messageRepository.findInboxPageAfter(ownerId, cursor.getCreatedAt(), cursor.getId(), page);
+        }
 
-        return messageRepository.save(message);
+        if (messages.size() <= pageLimit) {
+            return new InboxResponse(messages, null);
+        }
+        List<InboxMessage> pageContent = messages.subList(0, pageLimit);
+        InboxMessage last = pageContent.get(pageLimit - 1);
+        String nextCursor = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        return new InboxResponse(pageContent, nextCursor);
     }
 
 }
@@ -0,0 +1,417 @@
+package com.rental.api.service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.rental.api.response.InboxMessage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Write-behind queue of the messages sent to rental owners.
+ * <p>
+ * Validated messages are acknowledged as soon as they are queued, then a single writer thread
+ * inserts them with JDBC batches of up to {@code message.ingestion.batch-size} rows, or whatever
+ * arrived within {@code message.ingestion.flush-interval} of the first message of the batch.
+ * With MySQL, batches are sent as multi-row inserts only with {@code rewriteBatchedStatements=true}
+ * on the datasource URL.
+ * </p>
+ * <p>
+ * The queue is bounded, new messages are refused once it is full. It is stopped after the web
+ * server, so that every message acknowledged before the shutdown is written.
+ * </p>
+ * <p>
+ * Messages are counted as they are written, then pushed to the inbox streams of the owner of their rental.
+ * </p>
+ */
+@Service
+public class MessageWriteBehind implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(MessageWriteBehind.class);
+
+    private static final String INSERT_MESSAGE =
+        "INSERT INTO messages (message, user_id, rental_id, created_at, updated_at) VALUES (?, ?, ?, ?, ?)";
+
+    private static final PreparedStatementCreator INSERT_RETURNING_KEYS =
+        connection -> connection.prepareStatement(INSERT_MESSAGE, Statement.RETURN_GENERATED_KEYS);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MessagePushService messagePushService;
+    private final MessageCounters messageCounters;
+    private final BlockingQueue<PendingMessage> queue;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration shutdownTimeout;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final Object writtenMonitor = new Object();
+    private volatile boolean running;
+    private Thread writer;
+    private boolean polling;
+
+    private final Timer flushLatency;
+    private final DistributionSummary batchSizes;
+    private final Counter rejected;
+    private final Counter failed;
+
+    /**
+     * Constructs the queue and registers its metrics.
+     *
+     * @param jdbcTemplate The template inserting the batches.
+     * @param transactionTemplate The template inserting each batch in a single transaction.
+     * @param messagePushService The service pushing the written messages to their owner.
+     * @param messageCounters The counters of the written messages.
+     * @param meterRegistry The registry exposing the queue depth and the flush latency.
+     * @param capacity The maximum number of messages waiting to be written.
+     * @param batchSize The maximum number of messages inserted per batch.
+     * @param flushInterval The maximum time a message waits for its batch to fill up.
+     * @param shutdownTimeout The maximum time to wait for the queue to drain on shutdown.
+     */
+    public MessageWriteBehind(
+        JdbcTemplate jdbcTemplate,
+        TransactionTemplate transactionTemplate,
+        MessagePushService messagePushService,
+        MessageCounters messageCounters,
+        MeterRegistry meterRegistry,
+        @Value("${message.ingestion.capacity:10000}") int capacity,
+        @Value("${message.ingestion.batch-size:500}") int batchSize,
+        @Value("${message.ingestion.flush-interval:200ms}") Duration flushInterval,
+        @Value("${message.ingestion.shutdown-timeout:30s}") Duration shutdownTimeout
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.messagePushService = messagePushService;
+        this.messageCounters = messageCounters;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = flushInterval;
+        this.shutdownTimeout = shutdownTimeout;
+
+        Gauge.builder("message.ingestion.queue.depth", queue, BlockingQueue::size)
+            .description("Messages acknowledged and waiting to be written")
+            .register(meterRegistry);
+        this.flushLatency = Timer.builder("message.ingestion.flush")
+            .description("Time to write a batch of messages")
+            .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("message.ingestion.batch.size")
+            .description("Messages written per batch")
+            .register(meterRegistry);
+        this.rejected = Counter.builder("message.ingestion.rejected")
+            .description("Messages refused as the queue was full or stopped")
+            .register(meterRegistry);
+        this.failed = Counter.builder("message.ingestion.failed")
+            .description("Acknowledged messages that could not be written")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Queues a validated message to be written.
+     *
+     * @param message The content of the message.
+     * @param userId The ID of the sender.
+     * @param rentalId The ID of the rental the message is about.
+     * @param ownerId The ID of the owner of the rental, to whom the message is pushed once written.
+     * @return true if the message is queued, false if the queue is full or stopped.
+     */
+    public boolean enqueue(String message, Integer userId, Integer rentalId, Integer ownerId) {
+        // Millisecond precision, as the inbox cursors
+        Instant createdAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        if (!running || !queue.offer(new PendingMessage(message, userId, rentalId, ownerId, createdAt))) {
+            rejected.increment();
+            return false;
+        }
+        enqueued.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Waits for the messages queued so far to be written.
+     *
+     * @param timeout The maximum time to wait.
+     * @return true if they are written, false if the timeout elapsed first.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean flush(Duration timeout) throws InterruptedException {
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (writtenMonitor) {
+            while (written.get() < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(writtenMonitor, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    @Override
+    public void start() {
+        running = true;
+        // Daemon, so that a writer still blocked on the database after the shutdown timeout does not keep the JVM alive
+        writer = Thread.ofPlatform().name("message-writer").daemon().start(this::writeLoop);
+    }
+
+    /**
+     * Refuses new messages and waits for the queued ones to be written.
+     */
+    @Override
+    public void stop() {
+        synchronized (this) {
+            running = false;
+            // Only while waiting for a message, an interrupted write could fail its batch
+            if (polling) {
+                writer.interrupt();
+            }
+        }
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.join(shutdownTimeout);
+            if (writer.isAlive()) {
+                log.error("{} acknowledged messages were not written before the shutdown timeout",
+                    enqueued.get() - written.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops after the web server, which stops accepting requests at a higher phase.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    /**
+     * Writes batches until the queue is stopped and drained.
+     */
+    private void writeLoop() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            PendingMessage first = poll(flushInterval.toNanos());
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            fill(batch);
+            try {
+                write(batch);
+                written(batch);
+            } catch (RuntimeException e) {
+                failed.increment(batch.size());
+                log.error("Failed to write {} messages", batch.size(), e);
+            } finally {
+                completed(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Adds the messages arriving within the flush interval to a batch, until it is full.
+     */
+    private void fill(List<PendingMessage> batch) {
+        long deadline = System.nanoTime() + flushInterval.toNanos();
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            PendingMessage next = poll(remaining);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Waits for a message, unless stopped meanwhile. Once interrupted by {@link #stop()}, the
+     * writer keeps draining until the queue is empty.
+     */
+    private PendingMessage poll(long nanos) {
+        synchronized (this) {
+            if (!running) {
+                return queue.poll();
+            }
+            polling = true;
+        }
+        try {
+            return queue.poll(nanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            log.debug("Message writer stopped, draining the queue");
+            return null;
+        } finally {
+            synchronized (this) {
+                polling = false;
+                // An interrupt sent while polling must not reach the next write
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Inserts a batch in a single round trip, or row by row if the batch fails, so that a single
+     * invalid message, such as one about a rental deleted meanwhile, does not lose the others.
+     * <p>
+     * The batch runs in a transaction: drivers may keep executing a batch after a failed row, and
+     * the rows inserted before the failure would otherwise be inserted a second time row by row.
+     * The messages are counted in the same transaction, see {@link MessageCounters#add}.
+     * </p>
+     */
+    private void write(List<PendingMessage> batch) {
+        batchSizes.record(batch.size());
+        KeyHolder keys = new GeneratedKeyHolder();
+        try {
+            flushLatency.record(() -> transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_RETURNING_KEYS, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement statement, int i) throws SQLException {
+                        batch.get(i).bind(statement);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return batch.size();
+                    }
+                }, keys);
+                messageCounters.add(batch.stream().collect(
+                    Collectors.groupingBy(message -> message.rentalId, TreeMap::new, Collectors.counting())));
+            }));
+            List<Map<String, Object>> generated = keys.getKeyList();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).written(i < generated.size() ? generated.get(i) : Map.of());
+            }
+        } catch (DataAccessException e) {
+            log.warn("Batch of {} messages failed, inserting them one by one", batch.size(), e);
+            for (PendingMessage message : batch) {
+                try {
+                    KeyHolder key = new GeneratedKeyHolder();
+                    transactionTemplate.executeWithoutResult(status -> {
+                        jdbcTemplate.update(connection -> {
+                            PreparedStatement statement = INSERT_RETURNING_KEYS.createPreparedStatement(connection);
+                            message.bind(statement);
+                            return statement;
+                        }, key);
+                        messageCounters.add(Map.of(message.rentalId, 1L));
+                    });
+                    message.written(key.getKeyList().isEmpty() ? Map.of() : key.getKeyList().get(0));
+                } catch (DataAccessException rowError) {
+                    failed.increment();
+                    log.error("Dropped message of user {} about rental {}", message.userId, message.rentalId, rowError);
+                }
+            }
+        }
+    }
+
+    private void written(List<PendingMessage> batch) {
+        for (PendingMessage message : batch) {
+            if (message.written) {
+                messagePushService.publish(message.ownerId, message.toInboxMessage());
+            }
+        }
+    }
+
+    private void completed(int count) {
+        if (count == 0) {
+            return;
+        }
+        synchronized (writtenMonitor) {
+            written.addAndGet(count);
+            writtenMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * A message acknowledged and waiting to be written.
+     */
+    private static final class PendingMessage {
+        private final String message;
+        private final Integer userId;
+        private final Integer rentalId;
+        private final Integer ownerId;
+        private final Instant createdAt;
+        private boolean written;
+        private Integer id;
+
+        private PendingMessage(String message, Integer userId, Integer rentalId, Integer ownerId, Instant createdAt) {
+            this.message = message;
+            this.userId = userId;
+            this.rentalId = rentalId;
+            this.ownerId = ownerId;
+            this.createdAt = createdAt;
+        }
+
+        /**
+         * Marks the message as written, with the ID generated by the database if the driver returned it.
+         */
+        private void written(Map<String, Object> generatedKey) {
+            this.written = true;
+            this.id = generatedKey.values().stream()
+                .filter(Number.class::isInstance)
+                .map(key -> ((Number) key).intValue())
+                .findFirst()
+                .orElse(null);
+        }
+
+        private InboxMessage toInboxMessage() {
+            return new InboxMessage(id, message, rentalId, userId, Date.from(createdAt));
+        }
+
+        private void bind(PreparedStatement statement) throws SQLException {
+            Timestamp timestamp = Timestamp.from(createdAt);
+            statement.setString(1, message);
+            statement.setInt(2, userId);
+            statement.setInt(3, rentalId);
+            statement.setTimestamp(4, timestamp);
+            statement.setTimestamp(5, timestamp);
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.rental.api.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Two-tier cache of the pictures served by {@code GET /api/pictures/{key}}.
+ * <p>
+ * Pictures are downloaded once from the storage backend into a size-bounded disk tier, and the
+ * small ones are promoted to a memory tier holding their bytes in direct (off-heap) buffers.
+ * Both tiers are Caffeine caches weighted by picture size, evicting with W-TinyLFU. Concurrent
+ * misses on a key share a single download.
+ * </p>
+ * <p>
+ * Files of the disk tier are reference counted: a picture returned by {@link #get} must be
+ * {@link CachedPicture#close closed} once sent, and an evicted file is only deleted once every
+ * request serving it is done.
+ * </p>
+ * <p>
+ * Pictures of a local storage backend are already on disk and served without being cached.
+ * Hits, misses and evictions are exposed as {@code cache.*} meters of the {@code pictureMemory}
+ * and {@code pictureDisk} caches, bytes served per tier as {@code picture.cache.served.bytes}.
+ * </p>
+ */
+@Service
+public class PictureCache {
+    private static final Logger log = LoggerFactory.getLogger(PictureCache.class);
+
+    /** Lookups of a picture evicted before it could be retained, which only repeat under heavy eviction. */
+    private static final int MAX_LOOKUPS = 3;
+    private static final String CACHE_FILE_PREFIX = "picture-";
+    private static final String CACHE_FILE_SUFFIX = ".cache";
+
+    private final StorageBackend storage;
+    private final Path directory;
+    private final long memoryMaxEntrySize;
+    private final Cache<String, CachedPicture> memory;
+    private final AsyncCache<String, CachedPicture> disk;
+    private final ExecutorService downloadExecutor;
+    private final Map<Tier, Counter> servedBytes = new EnumMap<>(Tier.class);
+
+    /**
+     * Constructs the cache, deleting the files it left in its directory, and registers its metrics.
+     *
+     * @param storage The backend pictures are downloaded from.
+     * @param meterRegistry The registry exposing hit ratio, evictions, size and bytes served.
+     * @param directory The directory of the disk tier, whose cache files are deleted on startup.
+     * @param localStorageDirectory The directory of the local storage backend, which the cache must stay out of.
+     * @param memoryCapacity The maximum total size of the pictures held in memory.
+     * @param memoryMaxEntrySize The size above which pictures are only cached on disk.
+     * @param diskCapacity The maximum total size of the pictures cached on disk.
+     * @throws IllegalStateException if the directory is the local storage directory or inside it.
+     * @throws UncheckedIOException if the directory cannot be created or emptied.
+     */
+    public PictureCache(
+        StorageBackend storage,
+        MeterRegistry meterRegistry,
+        @Value("${storage.cache.directory:${java.io.tmpdir}/rental-api-picture-cache}") Path directory,
+        @Value("${storage.local.directory:pictures}") Path localStorageDirectory,
+        @Value("${storage.cache.memory.capacity:64MB}") DataSize memoryCapacity,
+        @Value("${storage.cache.memory.max-entry-size:1MB}") DataSize memoryMaxEntrySize,
+        @Value("${storage.cache.disk.capacity:1GB}") DataSize diskCapacity
+    ) {
+        this.storage = storage;
+        this.directory = prepareDirectory(directory, localStorageDirectory);
+        this.memoryMaxEntrySize = memoryMaxEntrySize.toBytes();
+        this.downloadExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("picture-download-", 0).factory());
+
+        this.memory = Caffeine.newBuilder()
+            .maximumWeight(memoryCapacity.toBytes())
+            .weigher((String key, CachedPicture picture) -> weight(picture))
+            .recordStats()
+            .build();
+        this.disk = Caffeine.newBuilder()
+            .maximumWeight(diskCapacity.toBytes())
+            .weigher((String key, CachedPicture picture) -> weight(picture))
+            .removalListener((String key, CachedPicture picture, RemovalCause cause) -> {
+                if (picture != null) {
+                    // Deleted once the requests serving it are done
+                    picture.close();
+                }
+            })
+            .recordStats()
+            .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, memory, "pictureMemory");
+        CaffeineCacheMetrics.monitor(meterRegistry, disk.synchronous(), "pictureDisk");
+        weightedSizeGauge(meterRegistry, memory, "pictureMemory");
+        weightedSizeGauge(meterRegistry, disk.synchronous(), "pictureDisk");
+        for (Tier tier : Tier.values()) {
+            servedBytes.put(tier, Counter.builder("picture.cache.served.bytes")
+                .description("Picture bytes served, per cache tier")
+                .baseUnit("bytes")
+                .tag("tier", tier.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Retrieves a picture from the fastest tier holding it, downloading it on a miss.
+     *
+     * @param keyName The key name (object key) of the picture.
+     * @return The picture, to close once sent, or empty if no picture is stored under the key.
+     * @throws IllegalArgumentException if the key is invalid.
+     * @throws IllegalStateException if the picture cannot be downloaded.
+     */
+    public Optional<CachedPicture> get(String keyName) {
+        if (!PictureKeys.isValidKey(keyName)) {
+            throw new IllegalArgumentException("Invalid key " + keyName);
+        }
+
+        Optional<Path> localFile = storage.getLocalFile(keyName);
+        if (localFile.isPresent()) {
+            return Optional.ofNullable(onDisk(localFile.get(), Tier.LOCAL));
+        }
+
+        CachedPicture inMemory = memory.getIfPresent(keyName);
+        if (inMemory != null) {
+            return Optional.of(inMemory);
+        }
+
+        CachedPicture onDisk;
+        int attempts = 0;
+        do {
+            if (++attempts > MAX_LOOKUPS) {
+                throw new IllegalStateException("Picture " + keyName + " was evicted from the disk tier on every lookup");
+            }
+            try {
+                onDisk = disk.get(keyName, (key, executor) -> CompletableFuture.supplyAsync(() -> download(key), downloadExecutor)).join();
+            } catch (CompletionException e) {
+                throw new IllegalStateException("Failed to download picture " + keyName, e.getCause());
+            }
+            if (onDisk == null) {
+                return Optional.empty();
+            }
+            // An entry released by its eviction is no longer in the cache, the next lookup downloads it again
+        } while (!onDisk.retain());
+
+        if (onDisk.length > memoryMaxEntrySize) {
+            return Optional.of(onDisk);
+        }
+        CachedPicture file = onDisk;
+        CachedPicture promoted = memory.get(keyName, key -> load(file));
+        if (promoted == null) {
+            return Optional.of(onDisk);
+        }
+        onDisk.close();
+        return Optional.of(promoted);
+    }
+
+    /**
+     * Records the bytes of a picture written to a response.
+     *
+     * @param picture The picture served.
+     * @param bytes The number of bytes written.
+     */
+    public void served(CachedPicture picture, long bytes) {
+        servedBytes.get(picture.tier).increment(bytes);
+    }
+
+    /**
+     * Stops the downloads in progress.
+     */
+    @PreDestroy
+    public void shutdown() {
+        downloadExecutor.shutdownNow();
+    }
+
+    /**
+     * Downloads a picture into the disk tier.
+     * <p>
+     * Each download gets a file of its own, so the deletion of an evicted copy never races with
+     * a new download of the same picture. The entry only becomes visible once the file is written.
+     * </p>
+     *
+     * @return The downloaded picture, or null if no picture is stored under the key.
+     */
+    private CachedPicture download(String keyName) {
+        Path file = null;
+        try {
+            file = Files.createTempFile(directory, CACHE_FILE_PREFIX, CACHE_FILE_SUFFIX);
+            if (!storage.download(keyName, file)) {
+                deleteFile(file);
+                return null;
+            }
+            return onDisk(file, Tier.DISK);
+        } catch (IOException e) {
+            if (file != null) {
+                deleteFile(file);
+            }
+            throw new UncheckedIOException("Failed to cache picture " + keyName, e);
+        } catch (RuntimeException e) {
+            deleteFile(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a picture of the disk tier into a direct buffer.
+     *
+     * @return The picture held in memory, or null if its file cannot be read.
+     */
+    private CachedPicture load(CachedPicture onDisk) {
+        try (FileChannel channel = FileChannel.open(onDisk.file, StandardOpenOption.READ)) {
+            ByteBuffer content = ByteBuffer.allocateDirect((int) onDisk.length);
+            while (content.hasRemaining() && channel.read(content) >= 0) {
+                // read until the buffer is full
+            }
+            content.flip();
+            return new CachedPicture(Tier.MEMORY, null, content.asReadOnlyBuffer(), content.limit(), onDisk.lastModified);
+        } catch (IOException e) {
+            log.warn("Failed to read cached picture {}", onDisk.file, e);
+            return null;
+        }
+    }
+
+    private CachedPicture onDisk(Path file, Tier tier) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new CachedPicture(tier, file, null, attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static int weight(CachedPicture picture) {
+        return (int) Math.min(Integer.MAX_VALUE, picture.length);
+    }
+
+    private static void weightedSizeGauge(MeterRegistry meterRegistry, Cache<?, ?> cache, String name) {
+        Gauge.builder("cache.weighted.size", cache, c -> c.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L))
+            .tag("cache", name)
+            .description("Total size in bytes of the cached pictures")
+            .register(meterRegistry);
+    }
+
+    private static Path prepareDirectory(Path directory, Path localStorageDirectory) {
+        try {
+            Path cacheDirectory = Files.createDirectories(directory).toRealPath();
+            Path storageDirectory = Files.exists(localStorageDirectory)
+                ? localStorageDirectory.toRealPath() : localStorageDirectory.toAbsolutePath().normalize();
+            if (cacheDirectory.startsWith(storageDirectory)) {
+                throw new IllegalStateException("The picture cache directory " + cacheDirectory
+                    + " must not be in the local storage directory " + storageDirectory);
+            }
+            // The index of the disk tier is not persisted, files left by a previous run are unknown
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory, CACHE_FILE_PREFIX + "*" + CACHE_FILE_SUFFIX)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            return cacheDirectory;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to prepare the picture cache directory " + directory, e);
+        }
+    }
+
+    private static void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached picture {}", file, e);
+        }
+    }
+
+    /**
+     * The tier a picture is served from.
+     */
+    public enum Tier {
+        /** Held in a direct buffer. */
+        MEMORY,
+        /** Downloaded into the disk tier. */
+        DISK,
+        /** Stored on the local disk by the storage backend. */
+        LOCAL
+    }
+
+    /**
+     * A picture held in memory or stored in a local file.
+     * <p>
+     * Instances are shared between the requests serving the picture. Those of the disk tier count
+     * the references to their file, held by the cache and by each request serving it, and delete
+     * the file once the last one is released.
+     * </p>
+     */
+    public static final class CachedPicture implements AutoCloseable {
+        private final Tier tier;
+        private final Path file;
+        private final ByteBuffer content;
+        private final long length;
+        private final long lastModified;
+        private final AtomicInteger references;
+
+        private CachedPicture(Tier tier, Path file, ByteBuffer content, long length, long lastModified) {
+            this.tier = tier;
+            this.file = file;
+            this.content = content;
+            this.length = length;
+            this.lastModified = lastModified;
+            // The reference of the cache, released on eviction
+            this.references = tier == Tier.DISK ? new AtomicInteger(1) : null;
+        }
+
+        /**
+         * Takes a reference to the file of the picture, unless it is already deleted.
+         *
+         * @return false if the file was released by every holder.
+         */
+        private boolean retain() {
+            if (references == null) {
+                return true;
+            }
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        /**
+         * Releases a reference to the file of the picture, deleting it if it was the last one.
+         * Does nothing for the pictures not cached on disk.
+         */
+        @Override
+        public void close() {
+            if (references != null && references.decrementAndGet() == 0) {
+                deleteFile(file);
+            }
+        }
+
+        /**
+         * Retrieves the tier the picture is served from.
+         *
+         * @return The tier of the picture.
+         */
+        public Tier getTier() {
+            return tier;
+        }
+
+        /**
+         * Retrieves the file holding the picture.
+         *
+         * @return The path of the file, or null if the picture is held in memory.
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * Retrieves the bytes of the picture.
+         *
+         * @return A new read-only view of the bytes, or null if the picture is stored in a file.
+         */
+        public ByteBuffer getContent() {
+            return content != null ? content.duplicate() : null;
+        }
+
+        /**
+         * Retrieves the size of the picture.
+         *
+         * @return The size in bytes.
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Retrieves the last modification time of the picture in the storage backend.
+         *
+         * @return The epoch milliseconds of the last modification.
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.rental.api.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Computes the storage keys of rental pictures.
+ * <p>
+ * Pictures are stored under the SHA-256 digest of their content followed by the extension of
+ * their original filename, so the same picture uploaded for several rentals is stored once, and
+ * the object behind a key never changes: it can be cached forever with
+ * {@link #IMMUTABLE_CACHE_CONTROL}.
+ * </p>
+ * <p>
+ * Only image extensions are kept, since the content type pictures are served with derives from
+ * their key: a picture uploaded as {@code page.html} must not be served back as a page.
+ * </p>
+ */
+public final class PictureKeys {
+    /** The {@code Cache-Control} directives of content-addressed pictures. */
+    public static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    /** Keys are single file names, so they cannot resolve outside of a storage directory. */
+    private static final Pattern KEY = Pattern.compile("[a-zA-Z0-9_\\-][a-zA-Z0-9._\\-]*");
+    private static final Pattern CONTENT_KEY = Pattern.compile("[0-9a-f]{64}(\\.[a-z0-9]{1,10})?");
+    /** The content types of the extensions pictures are served as images with. */
+    private static final Map<String, String> IMAGE_TYPES = Map.of(
+        "jpg", "image/jpeg",
+        "jpeg", "image/jpeg",
+        "png", "image/png",
+        "gif", "image/gif",
+        "webp", "image/webp",
+        "avif", "image/avif"
+    );
+
+    private PictureKeys() {}
+
+    /**
+     * Creates the digest computing the content key of a picture.
+     *
+     * @return A new SHA-256 digest
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Computes the content key of a picture.
+     *
+     * @param digest The SHA-256 digest of the picture content
+     * @param filename The original filename of the picture, or null if unknown
+     * @return The hexadecimal digest, followed by the extension of the filename if it is an image one
+     */
+    public static String contentKey(byte[] digest, String filename) {
+        String key = HexFormat.of().formatHex(digest);
+        int dot = filename != null ? filename.lastIndexOf('.') : -1;
+        if (dot >= 0) {
+            String extension = filename.substring(dot + 1).toLowerCase(Locale.ROOT);
+            if (IMAGE_TYPES.containsKey(extension)) {
+                key += "." + extension;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Creates a unique key to store a picture under until its content key is known.
+     *
+     * @return The provisional key
+     */
+    public static String provisionalKey() {
+        return "upload-" + UUID.randomUUID();
+    }
+
+    /**
+     * Checks whether a key can designate a stored picture.
+     *
+     * @param key The storage key
+     * @return true if the key is a file name not starting with a dot
+     */
+    public static boolean isValidKey(String key) {
+        return key != null && KEY.matcher(key).matches();
+    }
+
+    /**
+     * Checks whether a key is the content key of a picture.
+     *
+     * @param key The storage key
+     * @return true if the object stored under the key never changes
+     */
+    public static boolean isContentAddressed(String key) {
+        return key != null && CONTENT_KEY.matcher(key).matches();
+    }
+
+    /**
+     * Retrieves the content type of a picture from the extension of its key.
+     *
+     * @param key The storage key
+     * @return The image content type, or empty if the key does not have an image extension
+     */
+    public static Optional<String> imageContentType(String key) {
+        int dot = key != null ? key.lastIndexOf('.') : -1;
+        if (dot < 0) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(IMAGE_TYPES.get(key.substring(dot + 1).toLowerCase(Locale.ROOT)));
+    }
+}
@@ -0,0 +1,341 @@
+package com.rental.api.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Uploads rental pictures to the storage backend outside of the request threads.
+ * <p>
+ * A picture is first staged to a local temporary file, as the multipart upload is discarded
+ * once the request completes, and hashed while it is copied to compute its content key. It is
+ * then uploaded on a virtual thread, at most {@code rental.picture-upload.concurrency} at a time,
+ * with exponential backoff between attempts, unless the same picture is already stored.
+ * </p>
+ * <p>
+ * At most {@code rental.picture-upload.max-pending} pictures are staged at a time, from their
+ * staging until they are discarded, which bounds both the temporary files and the uploads
+ * waiting for a slot. Pictures staged beyond it are rejected rather than queued.
+ * </p>
+ * <p>
+ * The pictures of a gallery are uploaded in parallel within a scope: the upload of the gallery
+ * completes once every picture is uploaded, and the first failure cancels the other uploads.
+ * </p>
+ */
+@Service
+public class PictureUploadService {
+    private static final Logger log = LoggerFactory.getLogger(PictureUploadService.class);
+
+    private final StorageBackend storage;
+    private final ThreadFactory uploadThreads;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final Semaphore pendingSlots;
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Counter deduplicated;
+
+    /**
+     * Constructs the service and registers its metrics.
+     *
+     * @param storage The backend the pictures are stored in.
+     * @param meterRegistry The registry exposing the number of uploads in progress.
+     * @param concurrency The maximum number of concurrent uploads.
+     * @param maxPending The maximum number of staged pictures, uploaded or waiting to be.
+     * @param maxAttempts The maximum number of attempts per upload.
+     * @param initialBackoff The delay before the first retry, doubled on each retry.
+     */
+    public PictureUploadService(
+        StorageBackend storage,
+        MeterRegistry meterRegistry,
+        @Value("${rental.picture-upload.concurrency:16}") int concurrency,
+        @Value("${rental.picture-upload.max-pending:256}") int maxPending,
+        @Value("${rental.picture-upload.max-attempts:3}") int maxAttempts,
+        @Value("${rental.picture-upload.initial-backoff:500ms}") Duration initialBackoff
+    ) {
+        this.storage = storage;
+        this.uploadThreads = Thread.ofVirtual().name("picture-upload-", 0).factory();
+        this.executor = Executors.newThreadPerTaskExecutor(uploadThreads);
+        this.permits = new Semaphore(concurrency);
+        this.pendingSlots = new Semaphore(maxPending);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoff = initialBackoff;
+
+        Gauge.builder("rental.picture.uploads.waiting", permits, Semaphore::getQueueLength)
+            .description("Picture uploads waiting for an upload slot")
+            .register(meterRegistry);
+        Gauge.builder("rental.picture.uploads.active", permits, p -> concurrency - p.availablePermits())
+            .description("Picture uploads in progress")
+            .register(meterRegistry);
+        Gauge.builder("rental.picture.uploads.pending", pending, Set::size)
+            .description("Staged pictures not discarded yet")
+            .register(meterRegistry);
+        this.deduplicated = Counter.builder("rental.picture.uploads.deduplicated")
+            .description("Picture uploads skipped as the same picture was already stored")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Copies an uploaded picture to a temporary file, so that it outlives the request, computing
+     * its content key on the way.
+     *
+     * @param file The uploaded picture.
+     * @return The temporary copy and the key to store it under.
+     * @throws TaskRejectedException if {@code rental.picture-upload.max-pending} pictures are already staged.
+     * @throws UncheckedIOException if the picture cannot be copied.
+     */
+    public StagedPicture stage(MultipartFile file) {
+        if (!pendingSlots.tryAcquire()) {
+            throw new TaskRejectedException("Too many picture uploads pending");
+        }
+        Path staged = null;
+        try {
+            staged = Files.createTempFile("rental-picture-", ".upload");
+            // Tracked from now on, so that discarding it releases its slot
+            pending.add(staged);
+            MessageDigest digest = PictureKeys.newDigest();
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(in, staged, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return new StagedPicture(staged, PictureKeys.contentKey(digest.digest(), file.getOriginalFilename()), file.getContentType());
+        } catch (IOException e) {
+            if (staged != null) {
+                discard(staged);
+            } else {
+                pendingSlots.release();
+            }
+            throw new UncheckedIOException("Failed to stage picture", e);
+        }
+    }
+
+    /**
+     * Copies a stored picture to a temporary file, to be {@link #discard discarded} once read.
+     *
+     * @param keyName The key name (object key) of the picture.
+     * @return The path of the temporary copy.
+     * @throws IllegalArgumentException if no picture is stored under the key.
+     * @throws UncheckedIOException if the temporary file cannot be created.
+     */
+    public Path download(String keyName) {
+        Path downloaded;
+        try {
+            downloaded = Files.createTempFile("rental-picture-", ".download");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create a temporary picture", e);
+        }
+        try {
+            if (!storage.download(keyName, downloaded)) {
+                throw new IllegalArgumentException("No picture stored under " + keyName);
+            }
+            return downloaded;
+        } catch (RuntimeException e) {
+            discard(downloaded);
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads a staged picture in the background.
+     * <p>
+     * The upload is skipped if an object is already stored under the key, which is the content
+     * key of the picture. The staged file is kept, to be {@link #discard discarded} once every
+     * reader of it is done.
+     * </p>
+     *
+     * @param keyName The key name (object key) under which to store the picture.
+     * @param staged The path of the staged picture.
+     * @param contentType The media type of the picture, or null if unknown.
+     * @return A future completed with the URL of the picture, or failed once every attempt failed.
+     */
+    public CompletableFuture<URL> upload(String keyName, Path staged, String contentType) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return uploadWithPermit(keyName, staged, contentType);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Picture upload interrupted", e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Uploads the staged pictures of a gallery in parallel in the background.
+     * <p>
+     * Each picture is uploaded as by {@link #upload}, on a virtual thread of its own. If one of
+     * them fails, the uploads still in progress are cancelled and the gallery upload fails once
+     * they are all stopped. Pictures already uploaded are kept, as they are stored under their
+     * content key. The staged files are kept.
+     * </p>
+     *
+     * @param pictures The staged pictures, in gallery order.
+     * @return A future completed with the URLs of the pictures in the same order, or failed with
+     *         the cause of the first failure.
+     */
+    public CompletableFuture<List<URL>> uploadAll(List<StagedPicture> pictures) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return uploadInScope(pictures);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Gallery upload interrupted", e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Deletes a staged picture, releasing its slot if it was staged by {@link #stage}.
+     *
+     * @param staged The path of the staged picture.
+     */
+    public void discard(Path staged) {
+        try {
+            Files.deleteIfExists(staged);
+        } catch (IOException e) {
+            log.warn("Failed to delete staged picture {}", staged, e);
+        }
+        if (pending.remove(staged)) {
+            pendingSlots.release();
+        }
+    }
+
+    /**
+     * Stops accepting uploads and waits for the pending ones to complete.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.close();
+    }
+
+    /**
+     * Uploads pictures on threads owned by the calling one, which returns only once all of them are done.
+     */
+    private List<URL> uploadInScope(List<StagedPicture> pictures) throws InterruptedException {
+        List<Future<URL>> uploads = new ArrayList<>(pictures.size());
+        try (ExecutorService scope = Executors.newThreadPerTaskExecutor(uploadThreads)) {
+            CompletionService<URL> completed = new ExecutorCompletionService<>(scope);
+            for (StagedPicture picture : pictures) {
+                uploads.add(completed.submit(() -> uploadWithPermit(picture.getKeyName(), picture.getPath(), picture.getContentType())));
+            }
+            try {
+                // Wait in completion order, so that the first failure is seen as soon as it happens
+                for (int i = 0; i < pictures.size(); i++) {
+                    completed.take().get();
+                }
+            } catch (ExecutionException | InterruptedException e) {
+                uploads.forEach(upload -> upload.cancel(true));
+                if (e instanceof ExecutionException failure) {
+                    throw failure.getCause() instanceof RuntimeException cause
+                        ? cause
+                        : new IllegalStateException("Gallery upload failed", failure.getCause());
+                }
+                throw (InterruptedException) e;
+            }
+        }
+        return uploads.stream().map(Future::resultNow).toList();
+    }
+
+    private URL uploadWithPermit(String keyName, Path staged, String contentType) throws InterruptedException {
+        permits.acquire();
+        try {
+            return uploadWithRetries(keyName, staged, contentType);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private URL uploadWithRetries(String keyName, Path staged, String contentType) throws InterruptedException {
+        Duration backoff = initialBackoff;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (storage.exists(keyName)) {
+                    deduplicated.increment();
+                } else {
+                    storage.uploadFile(keyName, staged, contentType);
+                }
+                return storage.getFileUrl(keyName);
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.warn("Upload of picture {} failed (attempt {}/{}), retrying in {}", keyName, attempt, maxAttempts, backoff, e);
+                Thread.sleep(backoff);
+                backoff = backoff.multipliedBy(2);
+            }
+        }
+    }
+
+    /**
+     * A picture copied to a temporary file, with the key it is stored under.
+     */
+    public static final class StagedPicture {
+        private final Path path;
+        private final String keyName;
+        private final String contentType;
+
+        StagedPicture(Path path, String keyName, String contentType) {
+            this.path = path;
+            this.keyName = keyName;
+            this.contentType = contentType;
+        }
+
+        /**
+         * Retrieves the temporary copy of the picture.
+         *
+         * @return The path of the temporary file.
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Retrieves the content key of the picture.
+         *
+         * @return The key name (object key) to store the picture under.
+         */
+        public String getKeyName() {
+            return keyName;
+        }
+
+        /**
+         * Retrieves the media type of the picture.
+         *
+         * @return The media type, or null if unknown.
+         */
+        public String getContentType() {
+            return contentType;
+        }
+    }
+}
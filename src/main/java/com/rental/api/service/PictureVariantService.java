@@ -0,0 +1,294 @@
+package com.rental.api.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import com.rental.api.model.PictureVariants;
+import com.rental.api.service.PictureUploadService.StagedPicture;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Generates the resized copies of rental pictures.
+ * <p>
+ * A picture is decoded once, on a dedicated bounded executor as decoding and resizing are CPU
+ * bound, then the full, card and thumbnail variants are resized each from the previous one and
+ * encoded as JPEG. Variants are stored under their content key through {@link PictureUploadService}.
+ * </p>
+ * <p>
+ * Decoding is memory-bounded: pictures over {@code rental.picture-variants.max-pixels} are
+ * rejected from their header, and larger pictures are subsampled while they are decoded, so the
+ * decoded image is at most about twice the full variant size in each dimension.
+ * </p>
+ */
+@Service
+public class PictureVariantService {
+    private static final String VARIANT_CONTENT_TYPE = "image/jpeg";
+
+    private final PictureUploadService pictureUploadService;
+    private final ThreadPoolTaskExecutor variantExecutor;
+    private final long maxPixels;
+    private final int thumbnailSize;
+    private final int cardSize;
+    private final int fullSize;
+    private final float quality;
+
+    /**
+     * Constructs the service and registers its executor metrics.
+     *
+     * @param pictureUploadService The service uploading the variants.
+     * @param meterRegistry The registry exposing the variant executor metrics.
+     * @param threads The number of threads generating variants, 0 for one per core.
+     * @param queueCapacity The number of pictures waiting for a thread before rejecting new ones.
+     * @param maxPixels The largest number of pixels of a picture to generate variants of.
+     * @param thumbnailSize The largest dimension of the thumbnail variant, in pixels.
+     * @param cardSize The largest dimension of the card variant, in pixels.
+     * @param fullSize The largest dimension of the full-screen variant, in pixels.
+     * @param quality The JPEG quality of the variants, between 0 and 1.
+     */
+    public PictureVariantService(
+        PictureUploadService pictureUploadService,
+        MeterRegistry meterRegistry,
+        @Value("${rental.picture-variants.threads:0}") int threads,
+        @Value("${rental.picture-variants.queue-capacity:32}") int queueCapacity,
+        @Value("${rental.picture-variants.max-pixels:100000000}") long maxPixels,
+        @Value("${rental.picture-variants.thumbnail-size:240}") int thumbnailSize,
+        @Value("${rental.picture-variants.card-size:640}") int cardSize,
+        @Value("${rental.picture-variants.full-size:1600}") int fullSize,
+        @Value("${rental.picture-variants.quality:0.85}") float quality
+    ) {
+        this.pictureUploadService = pictureUploadService;
+        this.maxPixels = maxPixels;
+        this.thumbnailSize = thumbnailSize;
+        this.cardSize = cardSize;
+        this.fullSize = fullSize;
+        this.quality = quality;
+
+        // Resizing is CPU bound, one thread per core unless configured
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.variantExecutor = new ThreadPoolTaskExecutor();
+        variantExecutor.setCorePoolSize(poolSize);
+        variantExecutor.setMaxPoolSize(poolSize);
+        variantExecutor.setQueueCapacity(queueCapacity);
+        variantExecutor.setThreadNamePrefix("picture-variants-");
+        variantExecutor.initialize();
+
+        ExecutorServiceMetrics.monitor(meterRegistry, variantExecutor.getThreadPoolExecutor(), "pictureVariants");
+    }
+
+    /**
+     * Generates and uploads the variants of a staged picture in the background.
+     * <p>
+     * The staged picture is only read while the variants are generated, before they are uploaded.
+     * </p>
+     *
+     * @param staged The path of the staged picture.
+     * @return A future completed with the URLs of the variants, or failed if the picture cannot be
+     *         decoded, is too large, or if the executor is saturated.
+     */
+    public CompletableFuture<PictureVariants> generate(Path staged) {
+        return generate(() -> encodeVariants(staged));
+    }
+
+    /**
+     * Generates and uploads the variants of a stored picture in the background.
+     * <p>
+     * The picture is downloaded to a temporary file on the variant executor, and deleted once the
+     * variants are generated.
+     * </p>
+     *
+     * @param keyName The key name (object key) of the picture.
+     * @return A future completed with the URLs of the variants, or failed if the picture cannot be
+     *         downloaded or decoded, is too large, or if the executor is saturated.
+     */
+    public CompletableFuture<PictureVariants> generateStored(String keyName) {
+        return generate(() -> {
+            Path downloaded = pictureUploadService.download(keyName);
+            try {
+                return encodeVariants(downloaded);
+            } finally {
+                pictureUploadService.discard(downloaded);
+            }
+        });
+    }
+
+    /**
+     * Stops the variant executor, letting queued pictures complete.
+     */
+    @PreDestroy
+    public void shutdown() {
+        variantExecutor.shutdown();
+    }
+
+    /**
+     * Encodes the variants of a picture on the variant executor, then uploads them.
+     */
+    private CompletableFuture<PictureVariants> generate(Supplier<List<StagedPicture>> encoder) {
+        CompletableFuture<List<StagedPicture>> encoded;
+        try {
+            encoded = CompletableFuture.supplyAsync(encoder, variantExecutor);
+        } catch (TaskRejectedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return encoded.thenCompose(this::uploadVariants);
+    }
+
+    /**
+     * Decodes a picture and encodes its full, card and thumbnail variants to temporary files.
+     */
+    private List<StagedPicture> encodeVariants(Path staged) {
+        List<StagedPicture> variants = new ArrayList<>();
+        try {
+            BufferedImage image = decode(staged);
+            for (int size : new int[] { fullSize, cardSize, thumbnailSize }) {
+                image = resize(image, size);
+                variants.add(encode(image));
+            }
+            return variants;
+        } catch (IOException e) {
+            variants.forEach(variant -> pictureUploadService.discard(variant.getPath()));
+            throw new UncheckedIOException("Failed to generate picture variants", e);
+        } catch (RuntimeException e) {
+            variants.forEach(variant -> pictureUploadService.discard(variant.getPath()));
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads the encoded variants, ordered from the largest to the smallest, then discards them.
+     */
+    private CompletableFuture<PictureVariants> uploadVariants(List<StagedPicture> variants) {
+        List<CompletableFuture<URL>> uploads = variants.stream()
+            .map(variant -> pictureUploadService.upload(variant.getKeyName(), variant.getPath(), variant.getContentType())
+                .whenComplete((url, error) -> pictureUploadService.discard(variant.getPath())))
+            .toList();
+        return CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new))
+            .thenApply(done -> new PictureVariants(
+                uploads.get(2).join().toString(),
+                uploads.get(1).join().toString(),
+                uploads.get(0).join().toString()
+            ));
+    }
+
+    /**
+     * Decodes a picture, subsampled so that it is not much larger than the full variant.
+     *
+     * @throws IllegalArgumentException if the picture format is not supported or the picture is too large.
+     */
+    private BufferedImage decode(Path staged) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(staged.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IllegalArgumentException("Unsupported picture format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IllegalArgumentException("Picture of " + width + "x" + height + " pixels is too large");
+                }
+
+                // Only read every n-th pixel, the decoded image stays under twice the full variant size
+                int subsampling = Math.max(1, Math.max(width, height) / fullSize);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales an image down so that it fits in a square of the given size, halving it in several
+     * steps for a smooth result. Smaller images are not enlarged.
+     */
+    private BufferedImage resize(BufferedImage image, int size) {
+        double scale = Math.min(1, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        BufferedImage current = image;
+        do {
+            int width = Math.max(targetWidth, current.getWidth() / 2);
+            int height = Math.max(targetHeight, current.getHeight() / 2);
+            current = draw(current, width, height);
+        } while (current.getWidth() > targetWidth || current.getHeight() > targetHeight);
+        return current;
+    }
+
+    /**
+     * Draws an image on an opaque RGB image of the given size, as JPEG has no alpha channel.
+     */
+    private BufferedImage draw(BufferedImage image, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Encodes an image as JPEG to a temporary file, computing its content key on the way.
+     */
+    private StagedPicture encode(BufferedImage image) throws IOException {
+        Path file = Files.createTempFile("rental-picture-variant-", ".jpg");
+        MessageDigest digest = PictureKeys.newDigest();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (
+            OutputStream out = new DigestOutputStream(Files.newOutputStream(file), digest);
+            ImageOutputStream imageOut = new MemoryCacheImageOutputStream(out)
+        ) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(imageOut);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (IOException | RuntimeException e) {
+            pictureUploadService.discard(file);
+            throw e;
+        } finally {
+            writer.dispose();
+        }
+        return new StagedPicture(file, PictureKeys.contentKey(digest.digest(), "variant.jpg"), VARIANT_CONTENT_TYPE);
+    }
+}
@@ -0,0 +1,257 @@
+package com.rental.api.service;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rental.api.model.Rental;
+import com.rental.api.response.RentalResponse;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * In-process cache of serialized rental payloads.
+ * <p>
+ * Entries hold the UTF-8 JSON bytes written to the response, so a hit costs neither a
+ * database query nor a Jackson serialization. The cache is bounded by the total size of
+ * the payloads and invalidated by {@link RentalService} whenever a rental is written.
+ * </p>
+ */
+@Service
+public class RentalResponseCache {
+    private static final String RENTAL_PREFIX = "rental:";
+    private static final String PAGE_PREFIX = "page:";
+
+    private final ObjectMapper objectMapper;
+    private final Cache<String, CachedJson> cache;
+
+    // Bumped on every invalidation so that loads racing with a write are not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Constructs the cache and registers its metrics.
+     *
+     * @param objectMapper The JSON mapper used to serialize payloads.
+     * @param meterRegistry The registry exposing hit ratio, evictions and size.
+     * @param maxBytes The maximum total size of the cached payloads.
+     * @param expireAfterWrite The maximum age of an entry, bounding staleness across nodes.
+     */
+    public RentalResponseCache(
+        ObjectMapper objectMapper,
+        MeterRegistry meterRegistry,
+        @Value("${rental.cache.max-bytes:67108864}") long maxBytes,
+        @Value("${rental.cache.expire-after-write:10m}") Duration expireAfterWrite
+    ) {
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String key, CachedJson entry) -> key.length() + entry.body.length)
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "rentalResponses");
+        Gauge.builder("cache.weighted.size", cache, c -> c.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L))
+            .tag("cache", "rentalResponses")
+            .description("Total size in bytes of the cached payloads")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Retrieves the serialized rental if it is cached.
+     *
+     * @param id The ID of the rental.
+     * @return The cached payload of the rental, or empty on a miss.
+     */
+    public Optional<CachedJson> peekRental(Integer id) {
+        return Optional.ofNullable(cache.getIfPresent(rentalKey(id)));
+    }
+
+    /**
+     * Retrieves the serialized rental, loading and caching it on a miss.
+     *
+     * @param id The ID of the rental.
+     * @param loader Loads the rental from the database on a miss.
+     * @return The payload of the rental, or empty if the rental does not exist.
+     */
+    public Optional<CachedJson> getRental(Integer id, Supplier<Optional<Rental>> loader) {
+        String key = rentalKey(id);
+        CachedJson cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        long loadGeneration = generation.get();
+        Optional<Rental> rental = loader.get();
+        if (rental.isEmpty()) {
+            return Optional.empty();
+        }
+        Date updatedAt = rental.get().getUpdatedAt();
+        CachedJson entry = new CachedJson(
+            serialize(rental.get()),
+            ResourceVersions.etag("rental", id, updatedAt),
+            ResourceVersions.millis(updatedAt),
+            Set.of(id),
+            false
+        );
+        put(key, entry, loadGeneration);
+        return Optional.of(entry);
+    }
+
+    /**
+     * Retrieves the serialized listing page if it is cached.
+     *
+     * @param after The cursor of the page, or null for the first page.
+     * @param limit The effective page size, see {@link RentalService#getPageLimit(Integer)}.
+     * @return The cached payload of the page, or empty on a miss.
+     */
+    public Optional<CachedJson> peekPage(String after, int limit) {
+        return Optional.ofNullable(cache.getIfPresent(pageKey(after, limit)));
+    }
+
+    /**
+     * Retrieves the serialized listing page, loading and caching it on a miss.
+     *
+     * @param after The cursor of the page, or null for the first page.
+     * @param limit The effective page size, see {@link RentalService#getPageLimit(Integer)}.
+     * @param loader Loads the page from the database on a miss.
+     * @return The payload of the page.
+     */
+    public CachedJson getPage(String after, int limit, Supplier<RentalResponse> loader) {
+        String key = pageKey(after, limit);
+        CachedJson cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long loadGeneration = generation.get();
+        RentalResponse page = loader.get();
+        List<Rental> rentals = page.getRentals();
+        boolean lastPage = page.getNextCursor() == null;
+        CachedJson entry = new CachedJson(
+            serialize(page),
+            ResourceVersions.pageEtag(
+                after,
+                limit,
+                rentals.stream().map(Rental::getId).toList(),
+                rentals.stream().map(Rental::getUpdatedAt).toList(),
+                !lastPage
+            ),
+            -1,
+            rentals.stream().map(Rental::getId).collect(Collectors.toSet()),
+            lastPage
+        );
+        put(key, entry, loadGeneration);
+        return entry;
+    }
+
+    /**
+     * Evicts a rental and every listing page containing it.
+     *
+     * @param id The ID of the modified rental.
+     */
+    public void invalidateRental(Integer id) {
+        generation.incrementAndGet();
+        cache.invalidate(rentalKey(id));
+        cache.asMap().entrySet().removeIf(e -> e.getKey().startsWith(PAGE_PREFIX) && e.getValue().rentalIds.contains(id));
+    }
+
+    /**
+     * Evicts the last pages of the listing, where newly created rentals appear.
+     */
+    public void invalidateLastPages() {
+        generation.incrementAndGet();
+        cache.asMap().entrySet().removeIf(e -> e.getKey().startsWith(PAGE_PREFIX) && e.getValue().lastPage);
+    }
+
+    private String rentalKey(Integer id) {
+        return RENTAL_PREFIX + id;
+    }
+
+    private String pageKey(String after, int limit) {
+        return PAGE_PREFIX + (after == null ? "" : after) + ":" + limit;
+    }
+
+    /**
+     * Caches an entry unless an invalidation happened while it was loaded.
+     */
+    private void put(String key, CachedJson entry, long loadGeneration) {
+        if (generation.get() != loadGeneration) {
+            return;
+        }
+        cache.put(key, entry);
+        // An invalidation may have scanned the cache between the check and the put
+        if (generation.get() != loadGeneration) {
+            cache.invalidate(key);
+        }
+    }
+
+    private byte[] serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize rental payload", e);
+        }
+    }
+
+    /**
+     * A cached payload, its version and the rentals it contains.
+     */
+    public static final class CachedJson {
+        private final byte[] body;
+        private final String etag;
+        private final long lastModified;
+        private final Set<Integer> rentalIds;
+        private final boolean lastPage;
+
+        private CachedJson(byte[] body, String etag, long lastModified, Set<Integer> rentalIds, boolean lastPage) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.rentalIds = rentalIds;
+            this.lastPage = lastPage;
+        }
+
+        /**
+         * Retrieves the serialized JSON payload.
+         *
+         * @return The UTF-8 JSON bytes
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Retrieves the entity tag of the payload.
+         *
+         * @return The unquoted entity tag
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Retrieves the last modification time of the payload.
+         *
+         * @return The epoch milliseconds, or -1 if unknown
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
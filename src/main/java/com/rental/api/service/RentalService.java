@@ -1,20 +1,45 @@
 package com.rental.api.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rental.api.dto.KeysetCursor;
 import com.rental.api.dto.RentalCreateDto;
 import com.rental.api.dto.RentalUpdateDto;
+import com.rental.api.model.AuthenticatedUser;
+import com.rental.api.model.PictureStatus;
+import com.rental.api.model.PictureVariants;
 import com.rental.api.model.Rental;
 import com.rental.api.model.User;
 import com.rental.api.repository.RentalRepository;
+import com.rental.api.repository.RentalRepository.RentalVersion;
+import com.rental.api.response.RentalResponse;
+import com.rental.api.service.PictureUploadService.StagedPicture;
 
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
 
 import java.net.URL;
@@ -24,29 +49,174 @@ import java.net.URL;
  */
 @Service
 public class RentalService {
+    private static final Logger log = LoggerFactory.getLogger(RentalService.class);
+
     private final RentalRepository rentalRepository;
-    private S3Service s3Service;
+    private final PictureUploadService pictureUploadService;
+    private final PictureVariantService pictureVariantService;
+    private final RentalResponseCache rentalResponseCache;
+    private final UserService userService;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectWriter exportWriter;
+
+    @Value("${rental.pagination.default-limit:50}")
+    private int defaultPageLimit;
+
+    @Value("${rental.pagination.max-limit:200}")
+    private int maxPageLimit;
+
+    @Value("${rental.export.clear-interval:500}")
+    private int exportClearInterval;
 
-    private String picturePath;
+    @Value("${rental.gallery.max-pictures:30}")
+    private int maxGalleryPictures;
     
     /**
      * Constructs a RentalService instance with necessary dependencies.
      *
      * @param rentalRepository The repository for Rental entities.
-     * @param s3Service The service for interacting with AWS S3.
+     * @param pictureUploadService The service uploading rental pictures in the background.
+     * @param pictureVariantService The service generating the resized copies of rental pictures.
+     * @param rentalResponseCache The cache of serialized rentals to invalidate on writes.
+     * @param userService The service resolving the authenticated user.
+     * @param entityManager The entity manager used to detach exported rentals.
+     * @param transactionManager The transaction manager used to update rentals and record completed picture uploads.
+     * @param objectMapper The JSON mapper used to serialize exported rentals.
      */
-    public RentalService(RentalRepository rentalRepository, S3Service s3Service){
+    public RentalService(
+        RentalRepository rentalRepository,
+        PictureUploadService pictureUploadService,
+        PictureVariantService pictureVariantService,
+        RentalResponseCache rentalResponseCache,
+        UserService userService,
+        EntityManager entityManager,
+        PlatformTransactionManager transactionManager,
+        ObjectMapper objectMapper
+    ){
         this.rentalRepository = rentalRepository;
-        this.s3Service = s3Service;
+        this.pictureUploadService = pictureUploadService;
+        this.pictureVariantService = pictureVariantService;
+        this.rentalResponseCache = rentalResponseCache;
+        this.userService = userService;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Uploads completing at once run their callback on the caller thread, maybe in afterCommit
+        // of its transaction, where a joined transaction would never commit
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.exportWriter = objectMapper.writerFor(Rental.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .withRootValueSeparator("");
+    }
+
+    /**
+     * Retrieves a page of rentals ordered by creation date then ID.
+     * <p>
+     * The page size is capped by {@code rental.pagination.max-limit} so that a single
+     * request never loads the whole table.
+     * </p>
+     *
+     * @param after The opaque cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of rentals to return, or null for the default page size.
+     * @return A RentalResponse holding the page and the cursor of the next page, if any.
+     * @throws IllegalArgumentException if the cursor is invalid.
+     */
+    public RentalResponse getRentalPage(String after, Integer limit) {
+        int pageLimit = getPageLimit(limit);
+
+        // Fetch one extra row to know whether a next page exists
+        PageRequest page = PageRequest.of(0, pageLimit + 1);
+        List<Rental> rentals;
+        if (after == null || after.isEmpty()) {
+            rentals = rentalRepository.findFirstPage(page);
+        } else {
+            KeysetCursor cursor = KeysetCursor.decode(after);
+            rentals = rentalRepository.findPageAfter(cursor.getCreatedAt(), cursor.getId(), page);
+        }
+
+        if (rentals.size() <= pageLimit) {
+            return new RentalResponse(rentals, null);
+        }
+        List<Rental> pageContent = rentals.subList(0, pageLimit);
+        Rental last = pageContent.get(pageLimit - 1);
+        String nextCursor = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        return new RentalResponse(pageContent, nextCursor);
+    }
+
+    /**
+     * Computes the entity tag of a page of rentals without loading the rentals.
+     *
+     * @param after The opaque cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of rentals to return, or null for the default page size.
+     * @return The entity tag of the page, as returned with {@link #getRentalPage(String, Integer)}.
+     * @throws IllegalArgumentException if the cursor is invalid.
+     */
+    public String getRentalPageVersion(String after, Integer limit) {
+        int pageLimit = getPageLimit(limit);
+
+        PageRequest page = PageRequest.of(0, pageLimit + 1);
+        List<RentalVersion> versions;
+        if (after == null || after.isEmpty()) {
+            versions = rentalRepository.findFirstPageVersions(page);
+        } else {
+            KeysetCursor cursor = KeysetCursor.decode(after);
+            versions = rentalRepository.findPageVersionsAfter(cursor.getCreatedAt(), cursor.getId(), page);
+        }
+
+        boolean hasNext = versions.size() > pageLimit;
+        List<RentalVersion> pageContent = hasNext ? versions.subList(0, pageLimit) : versions;
+        return ResourceVersions.pageEtag(
+            after,
+            pageLimit,
+            pageContent.stream().map(RentalVersion::getId).toList(),
+            pageContent.stream().map(RentalVersion::getUpdatedAt).toList(),
+            hasNext
+        );
     }
 
     /**
-     * Retrieves all rentals from the database.
+     * Retrieves the last update timestamp of a rental without loading it.
      *
-     * @return Iterable collection of Rental entities.
+     * @param id The ID of the rental.
+     * @return The last update timestamp, or empty if the rental does not exist.
      */
-    public Iterable<Rental> getAllRentals() {
-        return rentalRepository.findAll();
+    public Optional<Date> getRentalVersion(final Integer id) {
+        return rentalRepository.findUpdatedAtById(id);
+    }
+
+    /**
+     * Writes every rental to the given stream as newline-delimited JSON.
+     * <p>
+     * Rentals are read through a database cursor and detached once written, so heap usage
+     * stays flat whatever the size of the table.
+     * </p>
+     *
+     * @param out The stream to write the rentals to.
+     * @throws IOException if writing to the stream fails.
+     */
+    @Transactional(readOnly = true)
+    public void exportRentals(OutputStream out) throws IOException {
+        try (
+            Stream<Rental> rentals = rentalRepository.streamAll();
+            JsonGenerator generator = exportWriter.createGenerator(out)
+        ) {
+            int clearInterval = Math.max(1, exportClearInterval);
+            int written = 0;
+            Iterator<Rental> iterator = rentals.iterator();
+            while (iterator.hasNext()) {
+                Rental rental = iterator.next();
+                exportWriter.writeValue(generator, rental);
+                generator.writeRaw('\n');
+                entityManager.detach(rental);
+
+                // Drop whatever else got attached along the way (owners)
+                if (++written % clearInterval == 0) {
+                    entityManager.clear();
+                    generator.flush();
+                }
+            }
+        }
     }
 
     /**
@@ -59,26 +229,100 @@ public class RentalService {
         return rentalRepository.findById(id);
     }
 
+    /**
+     * Retrieves a rental with its gallery, in a single statement.
+     *
+     * @param id The ID of the rental to retrieve.
+     * @return Optional containing the found Rental entity with its gallery loaded, or empty if not found.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Rental> getRentalWithGallery(final Integer id) {
+        return rentalRepository.findWithGalleryById(id);
+    }
+
+    /**
+     * Retrieves the ID of the owner of a rental without loading the rental.
+     *
+     * @param id The ID of the rental.
+     * @return The ID of the owner of the rental.
+     * @throws EntityNotFoundException if the rental does not exist.
+     */
+    public Integer getRentalOwnerId(final Integer id) {
+        return Optional.ofNullable(id)
+            .flatMap(rentalRepository::findOwnerIdById)
+            .orElseThrow(() -> new EntityNotFoundException("Rental not found with id " + id));
+    }
+
     /**
      * Creates a new rental based on the provided DTO.
+     * <p>
+     * The rental is saved right away with a {@link PictureStatus#PENDING} gallery, whose pictures
+     * are uploaded in parallel in the background under their content key and set once they are
+     * all uploaded. The resized variants of the cover are generated and set alongside, the rental
+     * keeps the original cover only if they cannot be generated.
+     * </p>
      *
      * @param input The DTO containing details of the rental to be created.
      * @return The created Rental entity.
+     * @throws IllegalArgumentException if there are more pictures than {@code rental.gallery.max-pictures}.
      */
     public Rental addRental(RentalCreateDto input){
-        
-        MultipartFile file = input.getPicture();
-        
-        // Upload file to S3 bucket and get file path
-        if (file != null && !file.isEmpty()) {
-            String keyName =UUID.randomUUID().toString() + "_" + sanitizeFilename(file.getOriginalFilename()); // Create unique name
-            URL fileUrl = s3Service.uploadAndGetFileUrl(keyName, file); // upload and retrieve URL
-            picturePath = fileUrl.toString(); // set path
+        List<MultipartFile> files = galleryFiles(input.getPictures());
+
+        // Copy the pictures before the request completes, they are uploaded once the rental is saved
+        List<StagedPicture> stagedPictures = stage(files);
+
+        Rental savedRental;
+        try {
+            savedRental = saveRental(input, List.of(), stagedPictures.isEmpty() ? null : PictureStatus.PENDING);
+        } catch (RuntimeException e) {
+            stagedPictures.forEach(staged -> pictureUploadService.discard(staged.getPath()));
+            throw e;
         }
 
-        // Get current user
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        User currentUser = (User) authentication.getPrincipal();
+        if (!stagedPictures.isEmpty()) {
+            uploadGallery(savedRental.getId(), savedRental.getGalleryGeneration(), stagedPictures);
+        }
+        return savedRental;
+    }
+
+    /**
+     * Creates a new rental whose pictures are already uploaded.
+     * <p>
+     * The resized variants of the cover are generated from the stored cover in the background,
+     * the rental keeps the original cover until they are set, or if they cannot be generated.
+     * </p>
+     *
+     * @param input The DTO containing details of the rental to be created, its pictures are ignored.
+     * @param pictureUrls The URLs of the uploaded pictures in gallery order, empty if the rental has no picture.
+     * @param coverKey The key name (object key) of the first picture, or null if the rental has no picture.
+     * @return The created Rental entity.
+     */
+    public Rental addRental(RentalCreateDto input, List<String> pictureUrls, String coverKey) {
+        Rental savedRental = saveRental(input, pictureUrls, pictureUrls.isEmpty() ? null : PictureStatus.READY);
+
+        if (coverKey != null) {
+            Integer id = savedRental.getId();
+            int generation = savedRental.getGalleryGeneration();
+            pictureVariantService.generateStored(coverKey).handle((generated, error) -> {
+                completePictureVariants(id, generation, generated, error);
+                return null;
+            });
+        }
+        return savedRental;
+    }
+
+    /**
+     * Saves a new rental owned by the authenticated user.
+     *
+     * @param input The DTO containing details of the rental to be created.
+     * @param pictureUrls The URLs of the pictures, empty if not uploaded yet.
+     * @param pictureStatus The state of the picture upload, or null if the rental has no picture.
+     * @return The created Rental entity.
+     */
+    private Rental saveRental(RentalCreateDto input, List<String> pictureUrls, PictureStatus pictureStatus) {
+        // Get current user, only its id is needed
+        User currentUser = userService.getUserReference(AuthenticatedUser.current().getId());
 
         // Create a new Rental based on input
         Rental newRental = new Rental.Builder()
@@ -86,53 +330,221 @@ public class RentalService {
             .setSurface(input.getSurface())
             .setPrice(input.getPrice())
             .setDescription(input.getDescription())
-            .setPicture(picturePath)
+            .setGallery(pictureUrls)
+            .setPictureStatus(pictureStatus)
             .setOwner(currentUser)
             .build();
-        return rentalRepository.save(newRental);
+        Rental savedRental = rentalRepository.save(newRental);
+
+        // New rentals are listed last
+        rentalResponseCache.invalidateLastPages();
+        return savedRental;
+    }
+
+    /**
+     * Checks the number of pictures of a gallery and drops the empty parts.
+     *
+     * @param files The uploaded pictures, or null if none were sent.
+     * @return The non-empty pictures, in gallery order.
+     * @throws IllegalArgumentException if there are more pictures than {@code rental.gallery.max-pictures}.
+     */
+    private List<MultipartFile> galleryFiles(List<MultipartFile> files) {
+        if (files == null) {
+            return List.of();
+        }
+        List<MultipartFile> pictures = files.stream().filter(file -> file != null && !file.isEmpty()).toList();
+        if (pictures.size() > maxGalleryPictures) {
+            throw new IllegalArgumentException("A rental has at most " + maxGalleryPictures + " pictures");
+        }
+        return pictures;
+    }
+
+    /**
+     * Stages the pictures of a gallery, discarding the staged ones if one of them fails.
+     *
+     * @param files The uploaded pictures, in gallery order.
+     * @return The staged pictures, in gallery order.
+     */
+    private List<StagedPicture> stage(List<MultipartFile> files) {
+        List<StagedPicture> stagedPictures = new ArrayList<>(files.size());
+        try {
+            for (MultipartFile file : files) {
+                stagedPictures.add(pictureUploadService.stage(file));
+            }
+            return stagedPictures;
+        } catch (RuntimeException e) {
+            stagedPictures.forEach(staged -> pictureUploadService.discard(staged.getPath()));
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads the staged pictures of a gallery and the variants of its cover in the background,
+     * then discards the staged pictures.
+     *
+     * @param id The ID of the rental.
+     * @param generation The generation of the gallery, see {@link Rental#getGalleryGeneration()}.
+     * @param stagedPictures The staged pictures, cover first.
+     */
+    private void uploadGallery(Integer id, int generation, List<StagedPicture> stagedPictures) {
+        CompletableFuture<List<URL>> upload = pictureUploadService.uploadAll(stagedPictures)
+            .whenComplete((urls, error) -> completeGalleryUpload(id, generation, urls, error));
+        CompletableFuture<PictureVariants> variants = pictureVariantService.generate(stagedPictures.get(0).getPath());
+
+        // Both read the staged cover, and the variants are recorded after the gallery so that
+        // the two updates of the rental never race
+        CompletableFuture.allOf(upload, variants)
+            .<Void>handle((done, error) -> null)
+            .thenCompose(done -> {
+                stagedPictures.forEach(staged -> pictureUploadService.discard(staged.getPath()));
+                return variants.<Void>handle((generated, variantsError) -> {
+                    completePictureVariants(id, generation, generated, variantsError);
+                    return null;
+                });
+            });
+    }
+
+    /**
+     * Records the outcome of the gallery upload of a rental, unless a newer gallery was sent meanwhile.
+     * <p>
+     * The row of the rental is locked, so that the generation read is the one of the last update.
+     * </p>
+     *
+     * @param id The ID of the rental.
+     * @param generation The generation of the uploaded gallery.
+     * @param urls The URLs of the uploaded pictures in gallery order, or null if the upload failed.
+     * @param error The cause of the failure, or null if the upload succeeded.
+     */
+    private void completeGalleryUpload(Integer id, int generation, List<URL> urls, Throwable error) {
+        if (error != null) {
+            log.error("Upload of the pictures of rental {} failed", id, error);
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> rentalRepository.findForUpdateById(id).ifPresent(rental -> {
+                if (urls == null) {
+                    rental.pictureFailed(generation);
+                } else if (!rental.picturesUploaded(generation, urls.stream().map(URL::toString).toList())) {
+                    log.debug("Ignoring the pictures of rental {} uploaded for gallery {}, superseded by gallery {}",
+                        id, generation, rental.getGalleryGeneration());
+                }
+            }));
+        } catch (RuntimeException e) {
+            log.error("Failed to record the pictures of rental {} uploaded for gallery {}", id, generation, e);
+            pictureFailed(id, generation);
+        }
+        rentalResponseCache.invalidateRental(id);
+    }
+
+    /**
+     * Records the resized variants of the picture of a rental, unless a newer gallery was sent meanwhile.
+     *
+     * @param id The ID of the rental.
+     * @param generation The generation of the gallery whose cover was resized.
+     * @param variants The uploaded variants, or null if they could not be generated.
+     * @param error The cause of the failure, or null if the variants were generated.
+     */
+    private void completePictureVariants(Integer id, int generation, PictureVariants variants, Throwable error) {
+        if (error != null) {
+            log.warn("Generation of the picture variants of rental {} failed", id, error);
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> rentalRepository.findForUpdateById(id)
+                .ifPresent(rental -> rental.pictureVariantsGenerated(generation, variants)));
+        } catch (RuntimeException e) {
+            log.error("Failed to record the picture variants of rental {} generated for gallery {}", id, generation, e);
+            pictureFailed(id, generation);
+        }
+        rentalResponseCache.invalidateRental(id);
+    }
+
+    /**
+     * Marks the pictures of a rental as failed after their outcome could not be recorded, unless a
+     * newer gallery was sent meanwhile.
+     *
+     * @param id The ID of the rental.
+     * @param generation The generation of the gallery whose outcome was lost.
+     */
+    private void pictureFailed(Integer id, int generation) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> rentalRepository.findForUpdateById(id)
+                .ifPresent(rental -> rental.pictureFailed(generation)));
+        } catch (RuntimeException e) {
+            log.error("Failed to mark the pictures of rental {} as failed for gallery {}", id, generation, e);
+        }
     }
 
     /**
      * Updates an existing rental with new information.
+     * <p>
+     * The managed rental is modified in place, so its creation data is kept and the
+     * second-level cache entry is refreshed on commit.
+     * </p>
+     * <p>
+     * New pictures, if any, are staged before the transaction, so that no connection is held while
+     * they are copied, and replace the whole gallery once they are uploaded in the background after
+     * the commit. The current gallery is served meanwhile. The rental is locked for the update, and
+     * sending new pictures increments its gallery generation, so that only the gallery of the last
+     * update is recorded when concurrent updates complete out of order.
+     * </p>
      *
      * @param id The ID of the rental to update.
      * @param input The DTO containing updated details of the rental.
      * @return The updated Rental entity.
      * @throws EntityNotFoundException if the specified rental ID does not exist.
+     * @throws IllegalArgumentException if there are more pictures than {@code rental.gallery.max-pictures}.
      */
     public Rental updateRental(Integer id, RentalUpdateDto input) {
+        List<MultipartFile> files = galleryFiles(input.getPictures());
+        List<StagedPicture> stagedPictures = stage(files);
 
-        //Get rental based on id
-        Rental existingRental = getRentalById(id)
-            .orElseThrow(() -> new EntityNotFoundException("Rental not found with id " + id));
+        Rental updatedRental;
+        try {
+            updatedRental = transactionTemplate.execute(status -> {
+                // Locked and read from the database, as every column is written back, including
+                // the gallery columns recorded by the background uploads
+                Rental existingRental = rentalRepository.findForUpdateById(id)
+                    .orElseThrow(() -> new EntityNotFoundException("Rental not found with id " + id));
 
-        // get current user
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        User currentUser = (User) authentication.getPrincipal();
+                // get current user, only its id is needed
+                User currentUser = userService.getUserReference(AuthenticatedUser.current().getId());
 
-        // Create a new rental based on existing data and input
-        Rental updatedRental = new Rental.Builder()
-            .setName(input.getName())
-            .setSurface(input.getSurface())
-            .setPrice(input.getPrice())
-            .setPicture(existingRental.getPicture())
-            .setDescription(input.getDescription())
-            .setOwner(currentUser)
-            .build();
-
-        // Ensure the new object retains the original id
-        updatedRental.setId(existingRental.getId());
+                existingRental.update(
+                    input.getName(),
+                    input.getSurface(),
+                    input.getPrice(),
+                    input.getDescription(),
+                    currentUser
+                );
+                if (!stagedPictures.isEmpty()) {
+                    existingRental.picturesPending();
+                }
+                return existingRental;
+            });
+        } catch (RuntimeException e) {
+            stagedPictures.forEach(staged -> pictureUploadService.discard(staged.getPath()));
+            throw e;
+        }
 
-        return rentalRepository.save(updatedRental);
+        // Evict the serialized payloads now that the new state is visible to readers
+        rentalResponseCache.invalidateRental(id);
+        if (!stagedPictures.isEmpty()) {
+            uploadGallery(id, updatedRental.getGalleryGeneration(), stagedPictures);
+        }
+        return updatedRental;
     }
     
     /**
-     * Sanitizes the given filename by replacing illegal characters with underscores.
+     * Computes the effective page size from the requested one.
+     * <p>
+     * Requests whose limit is clamped to the same page size share their cached page.
+     * </p>
      *
-     * @param filename The filename to sanitize.
-     * @return The sanitized filename.
+     * @param limit The requested page size, or null for the default one.
+     * @return The page size, between 1 and the configured maximum.
      */
-    private String sanitizeFilename(String filename) {
-        return filename.replaceAll("[^a-zA-Z0-9.\\-_]", "_"); // Replace illegal characters
+    public int getPageLimit(Integer limit) {
+        return limit == null ? defaultPageLimit : Math.max(1, Math.min(limit, maxPageLimit));
     }
+
 }
@@ -0,0 +1,73 @@
+package com.rental.api.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * Computes the strong entity tags (ETags) of the API resources.
+ * <p>
+ * A tag only depends on versioning data ({@code id}, {@code updated_at}), so it can be computed
+ * from a lightweight version query without loading nor serializing the resource.
+ * </p>
+ */
+public final class ResourceVersions {
+
+    private ResourceVersions() {}
+
+    /**
+     * Computes the tag of a single resource.
+     *
+     * @param type The type of the resource, e.g. {@code rental}
+     * @param id The ID of the resource
+     * @param updatedAt The last update timestamp of the resource
+     * @return The entity tag, unquoted
+     */
+    public static String etag(String type, Integer id, Date updatedAt) {
+        return type + "-" + id + "-" + millis(updatedAt);
+    }
+
+    /**
+     * Computes the tag of a page of rentals.
+     *
+     * @param after The cursor of the page, or null for the first page
+     * @param limit The requested page size, or null for the default one
+     * @param ids The IDs of the rentals of the page, in order
+     * @param updatedAts The last update timestamps of the rentals of the page, in order
+     * @param hasNext Whether a next page exists
+     * @return The entity tag, unquoted
+     */
+    public static String pageEtag(String after, Integer limit, List<Integer> ids, List<Date> updatedAts, boolean hasNext) {
+        StringBuilder version = new StringBuilder()
+            .append(after).append('|').append(limit).append('|').append(hasNext);
+        for (int i = 0; i < ids.size(); i++) {
+            version.append('|').append(ids.get(i)).append(':').append(millis(updatedAts.get(i)));
+        }
+        return "rentals-" + DigestUtils.md5DigestAsHex(version.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Retrieves the epoch milliseconds of a timestamp, or -1 if it is not set.
+     *
+     * @param date The timestamp
+     * @return The epoch milliseconds, or -1
+     */
+    public static long millis(Date date) {
+        return date != null ? date.getTime() : -1;
+    }
+
+    /**
+     * Checks whether a request carries validators, so that its version is worth querying.
+     *
+     * @param request The current request
+     * @return true if the request has an {@code If-None-Match} or {@code If-Modified-Since} header
+     */
+    public static boolean isConditional(WebRequest request) {
+        return request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+            || request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null;
+    }
+}
@@ -1,34 +1,128 @@
 package com.rental.api.service;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
 
 import java.io.IOException;
 
 /**
- * Service class for interacting with Amazon S3.
+ * Service class for interacting with Amazon S3, the default {@link StorageBackend}.
+ * <p>
+ * Local files of at least {@code aws.s3.multipart.threshold} are uploaded as multipart uploads
+ * whose parts are sent concurrently on a dedicated bounded executor, each part being retried on
+ * its own. Smaller files are uploaded with a single request.
+ * </p>
+ * <p>
+ * At most {@code aws.s3.multipart.queue-capacity} parts wait for a thread of the executor; once
+ * the queue is full, the uploading thread sends its next part itself, which slows it down
+ * rather than failing the upload.
+ * </p>
  */
 @Service
-public class S3Service {
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
+public class S3Service implements StorageBackend {
+    private static final Logger log = LoggerFactory.getLogger(S3Service.class);
+
+    /** The smallest part size accepted by S3, except for the last part. */
+    private static final long MIN_PART_SIZE = DataSize.ofMegabytes(5).toBytes();
+
     private final AmazonS3 s3client;
+    private final ThreadPoolTaskExecutor partUploadExecutor;
+    private final int partMaxAttempts;
+    private final Duration partInitialBackoff;
 
     @Value("${aws.s3.bucket}")
     private String bucketName;
 
+    @Value("${aws.s3.part-size:5MB}")
+    private DataSize partSize;
+
+    @Value("${aws.s3.multipart.threshold:16MB}")
+    private DataSize multipartThreshold;
+
+    @Value("${aws.s3.public-url:}")
+    private String publicUrl;
+
     /**
      * Constructs an S3Service instance with the provided Amazon S3 client.
      *
      * @param s3client The Amazon S3 client used to communicate with S3.
+     * @param meterRegistry The registry exposing the part upload executor metrics.
+     * @param partConcurrency The number of parts uploaded at once, across all multipart uploads.
+     * @param partQueueCapacity The maximum number of parts waiting to be uploaded by the executor.
+     * @param partMaxAttempts The maximum number of attempts per part.
+     * @param partInitialBackoff The delay before the first retry of a part, doubled on each retry.
      */
-    public S3Service(AmazonS3 s3client) {
+    public S3Service(
+        AmazonS3 s3client,
+        MeterRegistry meterRegistry,
+        @Value("${aws.s3.multipart.concurrency:8}") int partConcurrency,
+        @Value("${aws.s3.multipart.queue-capacity:64}") int partQueueCapacity,
+        @Value("${aws.s3.multipart.max-attempts:3}") int partMaxAttempts,
+        @Value("${aws.s3.multipart.initial-backoff:200ms}") Duration partInitialBackoff
+    ) {
         this.s3client = s3client;
+        this.partMaxAttempts = Math.max(1, partMaxAttempts);
+        this.partInitialBackoff = partInitialBackoff;
+
+        // Part uploads are network bound, the thread count bounds the connections used at once
+        this.partUploadExecutor = new ThreadPoolTaskExecutor();
+        partUploadExecutor.setCorePoolSize(Math.max(1, partConcurrency));
+        partUploadExecutor.setMaxPoolSize(Math.max(1, partConcurrency));
+        partUploadExecutor.setQueueCapacity(Math.max(0, partQueueCapacity));
+        // Back pressure on the uploading thread, a rejected part would fail the whole upload
+        partUploadExecutor.setRejectedExecutionHandler((part, executor) -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Part upload executor is shut down");
+            }
+            part.run();
+        });
+        partUploadExecutor.setThreadNamePrefix("s3-part-upload-");
+        partUploadExecutor.initialize();
+
+        ExecutorServiceMetrics.monitor(meterRegistry, partUploadExecutor.getThreadPoolExecutor(), "s3PartUpload");
     }
 
     /**
@@ -54,14 +148,303 @@ public class S3Service {
         }
     }
 
+    /**
+     * Uploads a local file to the configured S3 bucket.
+     * <p>
+     * Files of at least {@code aws.s3.multipart.threshold} are uploaded with a parallel multipart
+     * upload, see {@link #uploadMultipart(String, File, ObjectMetadata)}.
+     * </p>
+     *
+     * @param keyName The key name (object key) under which to store the file in S3.
+     * @param file The path of the local file to upload.
+     * @param contentType The media type of the file, or null if unknown.
+     * @return The key name under which the file was uploaded.
+     * @throws RuntimeException if there's an error uploading to S3.
+     */
+    @Override
+    public String uploadFile(String keyName, Path file, String contentType) {
+        try {
+            ObjectMetadata metadata = metadata(keyName, contentType);
+
+            File source = file.toFile();
+            if (source.length() >= Math.max(multipartThreshold.toBytes(), partSize())) {
+                return uploadMultipart(keyName, source, metadata);
+            }
+            s3client.putObject(new PutObjectRequest(bucketName, keyName, source).withMetadata(metadata));
+            return keyName;
+        } catch (AmazonS3Exception e) {
+            throw new RuntimeException("Failed to upload file to S3", e);
+        }
+    }
+
+    /**
+     * Uploads a local file as a multipart upload whose parts are sent concurrently.
+     * <p>
+     * Each part is read straight from the file at its offset and retried on its own with
+     * exponential backoff. Once a part has failed every attempt, the parts not yet started are
+     * skipped and, when those in progress have settled, the upload is aborted so that S3 does not
+     * keep the uploaded parts.
+     * </p>
+     *
+     * @param keyName The key name (object key) under which to store the file in S3.
+     * @param file The local file to upload.
+     * @param metadata The metadata of the object.
+     * @return The key name under which the file was uploaded.
+     * @throws RuntimeException if a part or the completion of the upload fails.
+     */
+    private String uploadMultipart(String keyName, File file, ObjectMetadata metadata) {
+        String uploadId = s3client.initiateMultipartUpload(
+            new InitiateMultipartUploadRequest(bucketName, keyName, metadata)).getUploadId();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        try {
+            long length = file.length();
+            long size = partSize();
+            List<CompletableFuture<PartETag>> parts = new ArrayList<>();
+            for (int partNumber = 1; (partNumber - 1) * size < length; partNumber++) {
+                long offset = (partNumber - 1) * size;
+                UploadPartRequest part = new UploadPartRequest()
+                    .withBucketName(bucketName)
+                    .withKey(keyName)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partNumber)
+                    .withFile(file)
+                    .withFileOffset(offset)
+                    .withPartSize(Math.min(size, length - offset));
+                parts.add(CompletableFuture.supplyAsync(() -> uploadPart(part, failure), partUploadExecutor));
+            }
+
+            // Wait for every part to settle, so that none is stored after an abort
+            CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+
+            List<PartETag> etags = parts.stream().map(CompletableFuture::join).toList();
+            s3client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, keyName, uploadId, etags));
+            return keyName;
+        } catch (RuntimeException e) {
+            // Uploaded parts are billed until the upload is aborted
+            try {
+                s3client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, keyName, uploadId));
+            } catch (RuntimeException abortError) {
+                e.addSuppressed(abortError);
+            }
+            if (e instanceof AmazonClientException) {
+                throw new RuntimeException("Failed to upload file to S3", e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads a part, retrying with exponential backoff unless another part of the upload failed.
+     * The first part to fail every attempt records its error in {@code failure}.
+     */
+    private PartETag uploadPart(UploadPartRequest part, AtomicReference<RuntimeException> failure) {
+        Duration backoff = partInitialBackoff;
+        for (int attempt = 1; ; attempt++) {
+            if (failure.get() != null) {
+                throw new CancellationException("Upload " + part.getUploadId() + " failed");
+            }
+            try {
+                return s3client.uploadPart(part).getPartETag();
+            } catch (AmazonClientException e) {
+                if (attempt >= partMaxAttempts || !e.isRetryable()) {
+                    failure.compareAndSet(null, e);
+                    throw e;
+                }
+                log.warn("Upload of part {} of {} failed (attempt {}/{}), retrying in {}",
+                    part.getPartNumber(), part.getKey(), attempt, partMaxAttempts, backoff, e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    failure.compareAndSet(null, e);
+                    throw e;
+                }
+                backoff = backoff.multipliedBy(2);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stops the part upload executor, letting queued parts complete.
+     */
+    @PreDestroy
+    public void shutdown() {
+        partUploadExecutor.shutdown();
+    }
+
+    /**
+     * Uploads a stream of unknown length to the configured S3 bucket.
+     * <p>
+     * The stream is read in parts of {@code aws.s3.part-size} (5 MB minimum) through a single
+     * buffer: a stream fitting in one part is uploaded with a single request, a longer one with
+     * a multipart upload, aborted if any part fails. Memory use is bounded by the part size
+     * whatever the length of the stream.
+     * </p>
+     *
+     * @param keyName The key name (object key) under which to store the stream in S3.
+     * @param in The stream to upload, read until its end but not closed.
+     * @param contentType The media type of the stream, or null if unknown.
+     * @return The key name under which the stream was uploaded.
+     * @throws IOException if reading the stream fails.
+     * @throws RuntimeException if there's an error uploading to S3.
+     */
+    @Override
+    public String uploadStream(String keyName, InputStream in, String contentType) throws IOException {
+        byte[] buffer = new byte[(int) partSize()];
+        ObjectMetadata metadata = metadata(keyName, contentType);
+
+        int length = in.readNBytes(buffer, 0, buffer.length);
+        if (length < buffer.length) {
+            metadata.setContentLength(length);
+            try {
+                s3client.putObject(bucketName, keyName, new ByteArrayInputStream(buffer, 0, length), metadata);
+                return keyName;
+            } catch (AmazonS3Exception e) {
+                throw new RuntimeException("Failed to upload file to S3", e);
+            }
+        }
+
+        String uploadId = s3client.initiateMultipartUpload(
+            new InitiateMultipartUploadRequest(bucketName, keyName, metadata)).getUploadId();
+        try {
+            List<PartETag> parts = new ArrayList<>();
+            for (int partNumber = 1; length > 0; partNumber++) {
+                parts.add(s3client.uploadPart(new UploadPartRequest()
+                    .withBucketName(bucketName)
+                    .withKey(keyName)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partNumber)
+                    .withInputStream(new ByteArrayInputStream(buffer, 0, length))
+                    .withPartSize(length)).getPartETag());
+                length = in.readNBytes(buffer, 0, buffer.length);
+            }
+            s3client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, keyName, uploadId, parts));
+            return keyName;
+        } catch (IOException | RuntimeException e) {
+            // Uploaded parts are billed until the upload is aborted
+            try {
+                s3client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, keyName, uploadId));
+            } catch (RuntimeException abortError) {
+                e.addSuppressed(abortError);
+            }
+            if (e instanceof AmazonS3Exception) {
+                throw new RuntimeException("Failed to upload file to S3", e);
+            }
+            throw e;
+        }
+    }
+
+    private long partSize() {
+        return Math.max(partSize.toBytes(), MIN_PART_SIZE);
+    }
+
+    /**
+     * Builds the metadata of a new object, cached forever by clients and CDNs when its key is a
+     * content key.
+     */
+    private ObjectMetadata metadata(String keyName, String contentType) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        if (contentType != null) {
+            metadata.setContentType(contentType);
+        }
+        if (PictureKeys.isContentAddressed(keyName)) {
+            metadata.setCacheControl(PictureKeys.IMMUTABLE_CACHE_CONTROL);
+        }
+        return metadata;
+    }
+
+    /**
+     * Checks whether a file is stored in the configured S3 bucket.
+     *
+     * @param keyName The key name (object key) of the file in S3.
+     * @return true if the file exists.
+     */
+    @Override
+    public boolean exists(String keyName) {
+        return s3client.doesObjectExist(bucketName, keyName);
+    }
+
+    /**
+     * Moves a file within the configured S3 bucket, with a server-side copy.
+     *
+     * @param sourceKeyName The key name (object key) of the file in S3.
+     * @param targetKeyName The key name (object key) to move the file to.
+     * @throws RuntimeException if there's an error copying or deleting the file.
+     */
+    @Override
+    public void moveFile(String sourceKeyName, String targetKeyName) {
+        try {
+            ObjectMetadata source = s3client.getObjectMetadata(bucketName, sourceKeyName);
+            s3client.copyObject(new CopyObjectRequest(bucketName, sourceKeyName, bucketName, targetKeyName)
+                .withNewObjectMetadata(metadata(targetKeyName, source.getContentType())));
+            s3client.deleteObject(bucketName, sourceKeyName);
+        } catch (AmazonS3Exception e) {
+            throw new RuntimeException("Failed to move file in S3", e);
+        }
+    }
+
+    /**
+     * Downloads a file from the configured S3 bucket, keeping its last modification time.
+     *
+     * @param keyName The key name (object key) of the file in S3.
+     * @param target The local file to write, replaced if it exists.
+     * @return true if the file was downloaded, false if it does not exist.
+     * @throws RuntimeException if there's an error downloading the file.
+     */
+    @Override
+    public boolean download(String keyName, Path target) {
+        try {
+            ObjectMetadata metadata = s3client.getObject(new GetObjectRequest(bucketName, keyName), target.toFile());
+            if (metadata.getLastModified() != null) {
+                Files.setLastModifiedTime(target, FileTime.fromMillis(metadata.getLastModified().getTime()));
+            }
+            return true;
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+                return false;
+            }
+            throw new RuntimeException("Failed to download file from S3", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to download file from S3", e);
+        }
+    }
+
+    /**
+     * Deletes a file from the configured S3 bucket.
+     *
+     * @param keyName The key name (object key) of the file in S3.
+     */
+    @Override
+    public void deleteFile(String keyName) {
+        s3client.deleteObject(bucketName, keyName);
+    }
+
     /**
      * Retrieves the URL of a file stored in the configured S3 bucket.
+     * <p>
+     * When {@code aws.s3.public-url} is set, typically to the {@code /api/pictures/} proxy, the URL
+     * is the key appended to it, otherwise it is the URL of the object in S3.
+     * </p>
      *
      * @param keyName The key name (object key) of the file in S3.
-     * @return The URL of the file in S3.
+     * @return The URL clients download the file from.
      */
+    @Override
     public URL getFileUrl(String keyName) {
-        return s3client.getUrl(bucketName, keyName);
+        if (publicUrl.isEmpty()) {
+            return s3client.getUrl(bucketName, keyName);
+        }
+        try {
+            return URI.create((publicUrl.endsWith("/") ? publicUrl : publicUrl + "/") + keyName).toURL();
+        } catch (MalformedURLException | IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid aws.s3.public-url " + publicUrl, e);
+        }
     }
 
     /**
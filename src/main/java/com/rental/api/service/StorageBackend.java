@@ -0,0 +1,98 @@
+package com.rental.api.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Stores rental pictures under object keys.
+ * <p>
+ * Objects stored under a content key (see {@link PictureKeys}) are served with immutable cache
+ * headers.
+ * </p>
+ * <p>
+ * The implementation is selected with {@code storage.backend}: {@code s3} (the default) stores
+ * pictures in the configured S3 bucket through {@link S3Service}, {@code local} stores them on the
+ * local disk through {@link LocalStorageService}. Both are served by {@code GET /api/pictures/{key}},
+ * S3 objects through the {@link PictureCache}.
+ * </p>
+ */
+public interface StorageBackend {
+
+    /**
+     * Stores a local file.
+     *
+     * @param keyName The key name (object key) under which to store the file.
+     * @param file The path of the local file to store.
+     * @param contentType The media type of the file, or null if unknown.
+     * @return The key name under which the file was stored.
+     * @throws RuntimeException if the file cannot be stored.
+     */
+    String uploadFile(String keyName, Path file, String contentType);
+
+    /**
+     * Stores a stream of unknown length.
+     *
+     * @param keyName The key name (object key) under which to store the stream.
+     * @param in The stream to store, read until its end but not closed.
+     * @param contentType The media type of the stream, or null if unknown.
+     * @return The key name under which the stream was stored.
+     * @throws IOException if reading the stream fails.
+     * @throws RuntimeException if the stream cannot be stored.
+     */
+    String uploadStream(String keyName, InputStream in, String contentType) throws IOException;
+
+    /**
+     * Checks whether a file is stored under a key.
+     *
+     * @param keyName The key name (object key) of the file.
+     * @return true if the file exists.
+     */
+    boolean exists(String keyName);
+
+    /**
+     * Moves a stored file to another key, replacing any file stored under it.
+     *
+     * @param sourceKeyName The key name (object key) of the file.
+     * @param targetKeyName The key name (object key) to move the file to.
+     * @throws RuntimeException if the file cannot be moved.
+     */
+    void moveFile(String sourceKeyName, String targetKeyName);
+
+    /**
+     * Copies a stored file to a local file, keeping its last modification time.
+     *
+     * @param keyName The key name (object key) of the file.
+     * @param target The local file to write, replaced if it exists.
+     * @return true if the file was copied, false if no file is stored under the key.
+     * @throws RuntimeException if the file cannot be copied.
+     */
+    boolean download(String keyName, Path target);
+
+    /**
+     * Retrieves the stored file itself when it is stored on the local disk.
+     *
+     * @param keyName The key name (object key) of the file.
+     * @return The path of the file, or empty if the file is not stored locally or does not exist.
+     */
+    default Optional<Path> getLocalFile(String keyName) {
+        return Optional.empty();
+    }
+
+    /**
+     * Deletes a stored file, if it exists.
+     *
+     * @param keyName The key name (object key) of the file.
+     */
+    void deleteFile(String keyName);
+
+    /**
+     * Retrieves the URL clients download a stored file from.
+     *
+     * @param keyName The key name (object key) of the file.
+     * @return The URL of the file.
+     */
+    URL getFileUrl(String keyName);
+}
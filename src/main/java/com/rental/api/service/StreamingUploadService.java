@@ -0,0 +1,196 @@
+package com.rental.api.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.core.FileUploadException;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.rental.api.dto.RentalCreateDto;
+import com.rental.api.model.Rental;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Creates rentals from multipart requests parsed as they are received.
+ * <p>
+ * Unlike {@link RentalService#addRental(RentalCreateDto)}, the request body is never spooled:
+ * form fields are read into small bounded strings and the picture part is piped to the storage
+ * backend through {@link StorageBackend#uploadStream}. Size limits are enforced while reading,
+ * so an oversized upload fails as soon as it crosses the limit.
+ * </p>
+ * <p>
+ * Each picture is hashed while it is streamed under a provisional key, private to the request.
+ * Once the whole request is read and its fields are valid, pictures are moved to their content
+ * key, or dropped if the same picture is already stored, so an invalid request only deletes its
+ * provisional keys. Pictures under their content key are shared by every rental with the same
+ * picture, so they are kept even if the rental is not created: a concurrent request may already
+ * reference them.
+ * </p>
+ * <p>
+ * The resized variants of the cover are generated from the stored cover once the rental is saved.
+ * </p>
+ */
+@Service
+public class StreamingUploadService {
+    private static final Logger log = LoggerFactory.getLogger(StreamingUploadService.class);
+
+    private final RentalService rentalService;
+    private final StorageBackend storage;
+    private final UploadLimits uploadLimits;
+
+    @Value("${rental.upload.max-field-size:64KB}")
+    private DataSize maxFieldSize;
+
+    /**
+     * Constructs a StreamingUploadService instance with necessary dependencies.
+     *
+     * @param rentalService The service saving the rentals.
+     * @param storage The backend the pictures are streamed to.
+     * @param uploadLimits The size limits of the uploads.
+     */
+    public StreamingUploadService(RentalService rentalService, StorageBackend storage, UploadLimits uploadLimits) {
+        this.rentalService = rentalService;
+        this.storage = storage;
+        this.uploadLimits = uploadLimits;
+    }
+
+    /**
+     * Creates a rental from a {@code multipart/form-data} request.
+     * <p>
+     * Expects the {@code name}, {@code surface}, {@code price} and {@code description} fields and
+     * optional {@code picture} files, in any order. Other parts are skipped. Pictures are streamed
+     * one after the other as they arrive, and form the gallery in the same order.
+     * </p>
+     *
+     * @param request The multipart request, whose body has not been read.
+     * @return The created Rental entity.
+     * @throws FileUploadSizeException if the request, the picture or a field is over its size limit.
+     * @throws FileUploadException if the request is not a valid multipart request.
+     * @throws IllegalArgumentException if a field is missing or invalid, or if there are too many pictures.
+     * @throws IOException if reading the request fails.
+     */
+    public Rental createRental(HttpServletRequest request) throws IOException {
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>();
+        upload.setSizeMax(uploadLimits.getMaxRequestSize().toBytes());
+        upload.setFileSizeMax(uploadLimits.getMaxPictureSize().toBytes());
+
+        RentalCreateDto input = new RentalCreateDto();
+        String name = null;
+        String surface = null;
+        String price = null;
+        String description = null;
+        List<String> provisionalKeys = new ArrayList<>();
+        List<String> pictureKeys = new ArrayList<>();
+        int moved = 0;
+        try {
+            FileItemInputIterator items = upload.getItemIterator(request);
+            while (items.hasNext()) {
+                FileItemInput item = items.next();
+                if (item.isFormField()) {
+                    String value = readField(item);
+                    switch (item.getFieldName()) {
+                        case "name" -> name = value;
+                        case "surface" -> surface = value;
+                        case "price" -> price = value;
+                        case "description" -> description = value;
+                        default -> { }
+                    }
+                } else if ("picture".equals(item.getFieldName())
+                    && item.getName() != null && !item.getName().isEmpty()) {
+                    if (provisionalKeys.size() >= uploadLimits.getMaxPictures()) {
+                        throw new IllegalArgumentException("A rental has at most " + uploadLimits.getMaxPictures() + " pictures");
+                    }
+                    String provisionalKey = PictureKeys.provisionalKey();
+                    provisionalKeys.add(provisionalKey);
+                    MessageDigest digest = PictureKeys.newDigest();
+                    try (InputStream in = new DigestInputStream(item.getInputStream(), digest)) {
+                        storage.uploadStream(provisionalKey, in, item.getContentType());
+                    }
+                    pictureKeys.add(PictureKeys.contentKey(digest.digest(), item.getName()));
+                }
+            }
+
+            input.setName(required("name", name));
+            input.setSurface(parse("surface", surface, Integer::parseInt));
+            input.setPrice(parse("price", price, Double::parseDouble));
+            input.setDescription(required("description", description));
+
+            for (; moved < provisionalKeys.size(); moved++) {
+                storePicture(provisionalKeys.get(moved), pictureKeys.get(moved));
+            }
+        } catch (IOException | RuntimeException e) {
+            // Pictures already moved to their content key may be shared, only the provisional ones are deleted
+            provisionalKeys.subList(moved, provisionalKeys.size()).forEach(this::deletePicture);
+            throw e;
+        }
+
+        List<String> pictureUrls = pictureKeys.stream().map(key -> storage.getFileUrl(key).toString()).toList();
+        return rentalService.addRental(input, pictureUrls, pictureKeys.isEmpty() ? null : pictureKeys.get(0));
+    }
+
+    /**
+     * Reads a form field, failing once it is over {@code rental.upload.max-field-size}.
+     */
+    private String readField(FileItemInput item) throws IOException {
+        int max = (int) maxFieldSize.toBytes();
+        try (InputStream in = item.getInputStream()) {
+            byte[] value = in.readNBytes(max + 1);
+            if (value.length > max) {
+                throw new FileUploadSizeException("Field " + item.getFieldName() + " is too large", max + 1L, max);
+            }
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private String required(String field, String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing field " + field);
+        }
+        return value;
+    }
+
+    private <T> T parse(String field, String value, Function<String, T> parser) {
+        try {
+            return parser.apply(required(field, value).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid field " + field, e);
+        }
+    }
+
+    /**
+     * Moves a picture from its provisional key to its content key, or deletes it if the same
+     * picture is already stored.
+     */
+    private void storePicture(String provisionalKey, String contentKey) {
+        if (storage.exists(contentKey)) {
+            storage.deleteFile(provisionalKey);
+            return;
+        }
+        storage.moveFile(provisionalKey, contentKey);
+    }
+
+    private void deletePicture(String keyName) {
+        try {
+            storage.deleteFile(keyName);
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete picture {}", keyName, e);
+        }
+    }
+}
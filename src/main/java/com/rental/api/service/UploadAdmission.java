@@ -0,0 +1,208 @@
+package com.rental.api.service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Admission control of the rental uploads, applied before their body is read.
+ * <p>
+ * At most {@code rental.upload-admission.max-in-flight} uploads totalling
+ * {@code rental.upload-admission.max-in-flight-bytes} are received at once. Uploads over either
+ * limit wait in a short queue, which new uploads join whenever it is not empty, for at most
+ * {@code rental.upload-admission.max-wait}; once the queue is full, or the wait is over, they
+ * are rejected at once so that clients back off instead of holding request threads and heap.
+ * </p>
+ * <p>
+ * An upload larger than the byte limit on its own is admitted when no other upload is in flight,
+ * its size is enforced by the upload size limits.
+ * </p>
+ */
+@Service
+public class UploadAdmission implements MeterBinder {
+    private final int maxInFlight;
+    private final long maxInFlightBytes;
+    private final int queueCapacity;
+    private final Duration maxWait;
+    private final Duration retryAfter;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition released = lock.newCondition();
+    private int inFlight;
+    private long inFlightBytes;
+    private int waiting;
+
+    private final Counter queueFullRejections;
+    private final Counter timeoutRejections;
+
+    /**
+     * Constructs the admission control and registers its rejection counters, its gauges are
+     * registered by {@link #bindTo}.
+     *
+     * @param maxInFlight The maximum number of uploads received at once.
+     * @param maxInFlightBytes The maximum total size of the uploads received at once.
+     * @param queueCapacity The maximum number of uploads waiting to be admitted.
+     * @param maxWait The maximum time an upload waits to be admitted.
+     * @param retryAfter The delay after which rejected clients are told to retry.
+     * @param meterRegistry The registry exposing the rejections.
+     */
+    public UploadAdmission(
+        @Value("${rental.upload-admission.max-in-flight:16}") int maxInFlight,
+        @Value("${rental.upload-admission.max-in-flight-bytes:1GB}") DataSize maxInFlightBytes,
+        @Value("${rental.upload-admission.queue-capacity:32}") int queueCapacity,
+        @Value("${rental.upload-admission.max-wait:2s}") Duration maxWait,
+        @Value("${rental.upload-admission.retry-after:5s}") Duration retryAfter,
+        MeterRegistry meterRegistry
+    ) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxInFlightBytes = maxInFlightBytes.toBytes();
+        this.queueCapacity = queueCapacity;
+        this.maxWait = maxWait;
+        this.retryAfter = retryAfter;
+
+        this.queueFullRejections = Counter.builder("rental.upload.admission.rejections")
+            .description("Rental uploads rejected before their body is read")
+            .tag("reason", "queue-full")
+            .register(meterRegistry);
+        this.timeoutRejections = Counter.builder("rental.upload.admission.rejections")
+            .description("Rental uploads rejected before their body is read")
+            .tag("reason", "timeout")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Registers the gauges of the uploads in flight and waiting, once the admission control is
+     * constructed so that they never observe it partially initialized.
+     *
+     * @param meterRegistry The registry exposing the uploads in flight.
+     */
+    @Override
+    public void bindTo(@NonNull MeterRegistry meterRegistry) {
+        Gauge.builder("rental.upload.admission.in.flight", this, admission -> admission.locked(() -> admission.inFlight))
+            .description("Rental uploads being received")
+            .register(meterRegistry);
+        Gauge.builder("rental.upload.admission.in.flight.bytes", this, admission -> admission.locked(() -> admission.inFlightBytes))
+            .description("Declared size of the rental uploads being received")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("rental.upload.admission.waiting", this, admission -> admission.locked(() -> admission.waiting))
+            .description("Rental uploads waiting to be admitted")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Admits an upload, waiting for in-flight uploads to complete if needed.
+     *
+     * @param bytes The declared size of the upload.
+     * @return The permit of the admitted upload, to close once it is received,
+     *         or empty if the upload is rejected.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public Optional<Permit> tryAdmit(long bytes) throws InterruptedException {
+        long size = Math.max(0, bytes);
+        lock.lock();
+        try {
+            // New uploads queue behind the waiting ones, so that small uploads do not starve large ones
+            if (waiting == 0 && fits(size)) {
+                return Optional.of(admit(size));
+            }
+            if (waiting >= queueCapacity) {
+                queueFullRejections.increment();
+                return Optional.empty();
+            }
+
+            waiting++;
+            try {
+                long remaining = maxWait.toNanos();
+                while (!fits(size)) {
+                    if (remaining <= 0) {
+                        timeoutRejections.increment();
+                        return Optional.empty();
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                return Optional.of(admit(size));
+            } finally {
+                waiting--;
+                // The next waiting upload may fit in the remaining capacity
+                released.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the delay after which rejected clients should retry.
+     *
+     * @return The retry delay.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    private boolean fits(long bytes) {
+        return inFlight < maxInFlight && (inFlight == 0 || inFlightBytes + bytes <= maxInFlightBytes);
+    }
+
+    private Permit admit(long bytes) {
+        inFlight++;
+        inFlightBytes += bytes;
+        return new Permit(bytes);
+    }
+
+    private void release(long bytes) {
+        lock.lock();
+        try {
+            inFlight--;
+            inFlightBytes -= bytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double locked(LongSupplier value) {
+        lock.lock();
+        try {
+            return value.getAsLong();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The admission of an upload, releasing its capacity once closed.
+     */
+    public final class Permit implements AutoCloseable {
+        private final long bytes;
+        private boolean closed;
+
+        private Permit(long bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Releases the capacity held by the upload. Closing a permit again has no effect.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(bytes);
+            }
+        }
+    }
+}
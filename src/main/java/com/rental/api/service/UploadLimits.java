@@ -0,0 +1,66 @@
+package com.rental.api.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Size limits of the rental uploads, shared by every endpoint receiving pictures.
+ * <p>
+ * A request may carry a full gallery: its size limit is {@code rental.gallery.max-pictures}
+ * times {@code rental.upload.max-picture-size}, plus {@code rental.upload.max-form-size} for
+ * the form fields and the part headers. The servlet multipart limits of {@code POST} and
+ * {@code PUT /api/rentals} are set from the same values.
+ * </p>
+ */
+@Component
+public class UploadLimits {
+    private final DataSize maxPictureSize;
+    private final DataSize maxRequestSize;
+    private final int maxPictures;
+
+    /**
+     * Constructs the upload limits.
+     *
+     * @param maxPictureSize The maximum size of a picture.
+     * @param maxPictures The maximum number of pictures of a rental.
+     * @param maxFormSize The room left in a request for its form fields and part headers.
+     */
+    public UploadLimits(
+        @Value("${rental.upload.max-picture-size:20MB}") DataSize maxPictureSize,
+        @Value("${rental.gallery.max-pictures:30}") int maxPictures,
+        @Value("${rental.upload.max-form-size:1MB}") DataSize maxFormSize
+    ) {
+        this.maxPictureSize = maxPictureSize;
+        this.maxPictures = maxPictures;
+        this.maxRequestSize = DataSize.ofBytes(
+            Math.addExact(Math.multiplyExact(maxPictures, maxPictureSize.toBytes()), maxFormSize.toBytes()));
+    }
+
+    /**
+     * Retrieves the maximum size of a picture.
+     *
+     * @return The picture size limit.
+     */
+    public DataSize getMaxPictureSize() {
+        return maxPictureSize;
+    }
+
+    /**
+     * Retrieves the maximum size of a request, large enough for a full gallery.
+     *
+     * @return The request size limit.
+     */
+    public DataSize getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    /**
+     * Retrieves the maximum number of pictures of a rental.
+     *
+     * @return The picture count limit.
+     */
+    public int getMaxPictures() {
+        return maxPictures;
+    }
+}
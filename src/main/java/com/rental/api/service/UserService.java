@@ -1,5 +1,6 @@
 package com.rental.api.service;
 
+import java.util.Date;
 import java.util.Optional;
 
 import org.springframework.stereotype.Service;
@@ -32,4 +33,28 @@ public class UserService {
     public Optional<User> getUserById(final Integer id) {
         return userRepository.findById(id);
     }
+
+    /**
+     * Retrieves the last update timestamp of a user without loading them.
+     *
+     * @param id The ID of the user.
+     * @return An Optional containing the last update timestamp, or empty if the user does not exist.
+     */
+    public Optional<Date> getUserVersion(final Integer id) {
+        return userRepository.findUpdatedAtById(id);
+    }
+
+    /**
+     * Retrieves a reference to a user without loading their state.
+     * <p>
+     * Meant for the ID of the authenticated user, which comes from a signed token: the
+     * existence of the user is left to the foreign key constraints.
+     * </p>
+     *
+     * @param id The ID of the user to reference.
+     * @return A reference to the user.
+     */
+    public User getUserReference(final Integer id) {
+        return userRepository.getReferenceById(id);
+    }
 }
@@ -0,0 +1,91 @@
+package com.rental.api.service;
+
+import java.util.Date;
+
+/**
+ * A JWT token whose signature and expiration have been verified by {@link JwtService}.
+ * <p>
+ * Instances are immutable, so a verified token can be shared between requests presenting
+ * the same token.
+ * </p>
+ */
+public final class VerifiedToken {
+    private final String subject;
+    private final Integer userId;
+    private final String name;
+    private final long issuedAt;
+    private final long expiration;
+
+    VerifiedToken(String subject, Integer userId, String name, Date issuedAt, Date expiration) {
+        this.subject = subject;
+        this.userId = userId;
+        this.name = name;
+        this.issuedAt = issuedAt != null ? issuedAt.getTime() : -1;
+        this.expiration = expiration.getTime();
+    }
+
+    /**
+     * Retrieves the subject of the token.
+     *
+     * @return The username (email) the token was issued to
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * Retrieves the ID of the user the token was issued to.
+     *
+     * @return The user ID, or null for tokens issued before the claim was added
+     */
+    public Integer getUserId() {
+        return userId;
+    }
+
+    /**
+     * Retrieves the name of the user the token was issued to.
+     *
+     * @return The user name, or null for tokens issued before the claim was added
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the issue date of the token.
+     *
+     * @return The issue date, or null if the token does not carry one
+     */
+    public Date getIssuedAt() {
+        return issuedAt >= 0 ? new Date(issuedAt) : null;
+    }
+
+    /**
+     * Retrieves the expiration date of the token.
+     *
+     * @return The expiration date
+     */
+    public Date getExpiration() {
+        return new Date(expiration);
+    }
+
+    /**
+     * Checks whether the token has expired at the given time.
+     *
+     * @param nowMillis The current epoch milliseconds
+     * @return true if the token is expired
+     */
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiration;
+    }
+
+    /**
+     * Retrieves the time left before the token expires.
+     *
+     * @param nowMillis The current epoch milliseconds
+     * @return The milliseconds left, zero or negative once expired
+     */
+    long millisUntilExpiration(long nowMillis) {
+        return expiration - nowMillis;
+    }
+}
@@ -0,0 +1,274 @@
+package com.rental.api;
+
+import static com.rental.api.monitoring.QueryBudget.assertWithinBudget;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import com.jayway.jsonpath.JsonPath;
+import com.rental.api.model.AuthenticatedUser;
+import com.rental.api.model.Message;
+import com.rental.api.model.Rental;
+import com.rental.api.model.User;
+import com.rental.api.monitoring.QueryStats;
+import com.rental.api.monitoring.QueryStatsRecorder;
+import com.rental.api.repository.MessageRepository;
+import com.rental.api.repository.RentalRepository;
+import com.rental.api.repository.UserRepository;
+import com.rental.api.service.JwtService;
+import com.rental.api.service.MessageWriteBehind;
+import com.rental.api.service.RentalResponseCache;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class EndpointStatementCountTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private RentalRepository rentalRepository;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Autowired
+	private MessageWriteBehind messageWriteBehind;
+
+	@Autowired
+	private RentalResponseCache rentalResponseCache;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private JwtService jwtService;
+
+	private User caller;
+	private Rental rental;
+
+	@BeforeEach
+	void setUp() throws InterruptedException {
+		// Messages acknowledged by a previous test may still be queued
+		assertThat(messageWriteBehind.flush(Duration.ofSeconds(5))).isTrue();
+		messageRepository.deleteAll();
+		rentalRepository.deleteAll();
+		userRepository.deleteAll();
+
+		// Several owners so that a per-owner select would show up
+		for (int i = 0; i < 3; i++) {
+			User owner = userRepository.save(new User.Builder()
+				.setName("owner" + i)
+				.setEmail("owner" + i + "@test.com")
+				.setPassword("password")
+				.build());
+			for (int j = 0; j < 2; j++) {
+				rental = rentalRepository.save(new Rental.Builder()
+					.setName("rental" + i + j)
+					.setSurface(50)
+					.setPrice(500)
+					.setDescription("description")
+					.setOwner(owner)
+					.build());
+			}
+			caller = owner;
+		}
+	}
+
+	private RequestPostProcessor asCaller() {
+		return authentication(new UsernamePasswordAuthenticationToken(AuthenticatedUser.of(caller), null, List.of()));
+	}
+
+	@Test
+	void authenticatingWithATokenDoesNotLoadTheUser() throws Exception {
+		String token = jwtService.generateToken(caller);
+		// Neither the user nor the rental may come from the second-level cache
+		entityManagerFactory.getCache().evictAll();
+		rentalResponseCache.invalidateRental(rental.getId());
+
+		assertWithinBudget(1, () -> mockMvc.perform(get("/api/rentals/" + rental.getId())
+				.header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+			.andExpect(status().isOk()));
+	}
+
+	@Test
+	void listingWithManyOwnersRunsASingleStatement() throws Exception {
+		assertWithinBudget(1, () -> mockMvc.perform(get("/api/rentals").with(asCaller()))
+			.andExpect(status().isOk()));
+	}
+
+	@Test
+	void limitsClampedToTheSamePageSizeShareTheCachedPage() throws Exception {
+		rentalResponseCache.invalidateLastPages();
+		mockMvc.perform(get("/api/rentals?limit=200").with(asCaller()))
+			.andExpect(status().isOk());
+
+		assertWithinBudget(0, () -> mockMvc.perform(get("/api/rentals?limit=10000").with(asCaller()))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.rentals.length()").value(6)));
+	}
+
+	@Test
+	void listingPagesAreReadWithASingleStatementOldestFirst() throws Exception {
+		List<Integer> ids = rentalRepository.findAll().stream()
+			.map(Rental::getId)
+			.sorted()
+			.toList();
+
+		String[] nextCursor = new String[1];
+		assertWithinBudget(1, () -> mockMvc.perform(get("/api/rentals?limit=4").with(asCaller()))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.rentals.length()").value(4))
+			.andExpect(jsonPath("$.rentals[0].id").value(ids.get(0)))
+			.andExpect(jsonPath("$.rentals[3].id").value(ids.get(3)))
+			.andExpect(jsonPath("$.next_cursor").isNotEmpty())
+			.andDo(result -> nextCursor[0] = JsonPath.read(result.getResponse().getContentAsString(), "$.next_cursor")));
+
+		mockMvc.perform(get("/api/rentals?limit=4&after=" + nextCursor[0]).with(asCaller()))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.rentals.length()").value(2))
+			.andExpect(jsonPath("$.rentals[0].id").value(ids.get(4)))
+			.andExpect(jsonPath("$.rentals[1].id").value(ids.get(5)))
+			.andExpect(jsonPath("$.next_cursor").isEmpty());
+
+		mockMvc.perform(get("/api/rentals?limit=4&after=not-a-cursor").with(asCaller()))
+			.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void detailRunsASingleStatement() throws Exception {
+		assertWithinBudget(1, () -> mockMvc.perform(get("/api/rentals/" + rental.getId()).with(asCaller()))
+			.andExpect(status().isOk()));
+	}
+
+	@Test
+	void detailFetchesTheGalleryWithTheRentalAndListingsOnlyTheCover() throws Exception {
+		Rental withGallery = rentalRepository.save(new Rental.Builder()
+			.setName("gallery")
+			.setSurface(80)
+			.setPrice(1200)
+			.setDescription("description")
+			.setGallery(List.of("http://pictures/cover.jpg", "http://pictures/kitchen.jpg", "http://pictures/garden.jpg"))
+			.setOwner(caller)
+			.build());
+		entityManagerFactory.getCache().evictAll();
+		rentalResponseCache.invalidateLastPages();
+
+		assertWithinBudget(1, () -> mockMvc.perform(get("/api/rentals/" + withGallery.getId()).with(asCaller()))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.picture").value("http://pictures/cover.jpg"))
+			.andExpect(jsonPath("$.gallery.length()").value(3))
+			.andExpect(jsonPath("$.gallery[2]").value("http://pictures/garden.jpg")));
+		assertWithinBudget(1, () -> mockMvc.perform(get("/api/rentals").with(asCaller()))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.rentals[6].picture").value("http://pictures/cover.jpg"))
+			.andExpect(jsonPath("$.rentals[6].gallery").doesNotExist()));
+	}
+
+	@Test
+	void revalidatingAnUncachedRentalOnlyReadsItsVersion() throws Exception {
+		String etag = mockMvc.perform(get("/api/rentals/" + rental.getId()).with(asCaller()))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		rentalResponseCache.invalidateRental(rental.getId());
+
+		assertWithinBudget(1, () -> mockMvc.perform(get("/api/rentals/" + rental.getId()).with(asCaller())
+				.header(HttpHeaders.IF_NONE_MATCH, etag))
+			.andExpect(status().isNotModified())
+			.andExpect(header().string(HttpHeaders.ETAG, etag))
+			.andExpect(content().bytes(new byte[0])));
+	}
+
+	@Test
+	void sendingAMessageDoesNotLoadTheRental() throws Exception {
+		// existence check, the insert is batched by the writer thread
+		QueryStats stats = assertWithinBudget(1, () -> mockMvc.perform(post("/api/messages").with(asCaller())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"message\":\"hello\",\"rental_id\":" + rental.getId() + "}"))
+			.andExpect(status().isOk()));
+
+		// only the existence check reads a row
+		assertThat(stats.getRowsFetched()).isEqualTo(1);
+
+		assertThat(messageWriteBehind.flush(Duration.ofSeconds(5))).isTrue();
+		assertThat(messageRepository.count()).isEqualTo(1);
+	}
+
+	@Test
+	void inboxPagesAreReadWithASingleStatementNewestFirst() throws Exception {
+		Rental otherRental = rentalRepository.findAll().stream()
+			.filter(candidate -> !candidate.getOwnerId().equals(caller.getId()))
+			.findFirst().orElseThrow();
+		List<Message> received = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			received.add(messageRepository.save(new Message.Builder()
+				.setMessage("hello" + i).setUser(caller).setRental(rental).build()));
+		}
+		messageRepository.save(new Message.Builder()
+			.setMessage("not for the caller").setUser(caller).setRental(otherRental).build());
+
+		String[] nextCursor = new String[1];
+		assertWithinBudget(1, () -> mockMvc.perform(get("/api/messages/inbox?limit=2").with(asCaller()))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.messages.length()").value(2))
+			.andExpect(jsonPath("$.messages[0].id").value(received.get(2).getId()))
+			.andExpect(jsonPath("$.messages[0].rental_id").value(rental.getId()))
+			.andExpect(jsonPath("$.messages[1].id").value(received.get(1).getId()))
+			.andDo(result -> nextCursor[0] = JsonPath.read(result.getResponse().getContentAsString(), "$.next_cursor")));
+
+		mockMvc.perform(get("/api/messages/inbox?limit=2&after=" + nextCursor[0]).with(asCaller()))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.messages.length()").value(1))
+			.andExpect(jsonPath("$.messages[0].id").value(received.get(0).getId()))
+			.andExpect(jsonPath("$.next_cursor").isEmpty());
+	}
+
+	@Test
+	void resolvingAUserByEmailIsServedFromTheSecondLevelCache() throws Exception {
+		userRepository.findByEmail(caller.getEmail());
+
+		QueryStats stats = assertWithinBudget(0, () -> userRepository.findByEmail(caller.getEmail()).orElseThrow());
+
+		assertThat(stats.getEntitiesLoaded()).isZero();
+	}
+
+	@Test
+	void repeatedLookupsAreReportedAsRepeatedShapes() throws Exception {
+		// Lookups by ID would otherwise be served by the second-level cache
+		entityManagerFactory.getCache().evictAll();
+
+		QueryStats stats = QueryStatsRecorder.capture(() -> {
+			rentalRepository.findAll().forEach(r -> userRepository.findById(r.getOwnerId()));
+			return null;
+		});
+
+		assertThat(stats.getRepeatedShapes(2)).isNotEmpty();
+		// 6 rentals and 3 owners, the second lookup of each owner hits the second-level cache
+		assertThat(stats.getEntitiesLoaded()).isEqualTo(9);
+	}
+}
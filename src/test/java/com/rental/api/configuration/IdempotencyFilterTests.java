@@ -0,0 +1,215 @@
+package com.rental.api.configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rental.api.repository.UserRepository;
+import com.rental.api.service.IdempotencyService;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class IdempotencyFilterTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private IdempotencyService idempotencyService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void registrationRetriesGetANewTokenWithoutRegisteringAgain() throws Exception {
+		String body = "{\"email\":\"retried@test.com\",\"password\":\"password\",\"name\":\"retried\"}";
+
+		MvcResult original = mockMvc.perform(register("retry-1", body))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		mockMvc.perform(asyncDispatch(original))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.token").isNotEmpty());
+		Integer id = userRepository.findByEmail("retried@test.com").orElseThrow().getId();
+
+		// Only the ID of the user is kept for the key, never the token
+		byte[] stored = jdbcTemplate.queryForObject(
+			"SELECT body FROM idempotency_keys WHERE idempotency_key = ?", byte[].class, "anonymous:retry-1");
+		assertThat(new String(stored, StandardCharsets.UTF_8)).isEqualTo(String.valueOf(id));
+
+		MvcResult retry = mockMvc.perform(register("retry-1", body)).andReturn();
+		mockMvc.perform(asyncDispatch(retry))
+			.andExpect(status().isOk())
+			.andExpect(header().string(IdempotencyFilter.IDEMPOTENT_REPLAYED, "true"))
+			.andExpect(jsonPath("$.token").isNotEmpty());
+		assertThat(userRepository.findByEmail("retried@test.com").orElseThrow().getId()).isEqualTo(id);
+
+		mockMvc.perform(register("retry-1", body.replace("retried@", "other@")))
+			.andExpect(status().isUnprocessableEntity());
+		assertThat(userRepository.findByEmail("other@test.com")).isEmpty();
+	}
+
+	@Test
+	void loginsAreNotFiltered() throws Exception {
+		String body = "{\"email\":\"nobody@test.com\",\"password\":\"password\"}";
+
+		for (int attempt = 0; attempt < 2; attempt++) {
+			MvcResult login = mockMvc.perform(post("/api/auth/login")
+					.header(IdempotencyFilter.IDEMPOTENCY_KEY, "login-1")
+					.contentType(MediaType.APPLICATION_JSON)
+					.content(body))
+				.andReturn();
+			mockMvc.perform(asyncDispatch(login))
+				.andExpect(status().isUnauthorized())
+				.andExpect(header().doesNotExist(IdempotencyFilter.IDEMPOTENT_REPLAYED));
+		}
+		assertThat(storedKeys("anonymous:login-1")).isZero();
+	}
+
+	@Test
+	void blankKeysAreRejectedBeforeExecutingTheRequest() throws Exception {
+		mockMvc.perform(register(" ", "{\"email\":\"blank@test.com\",\"password\":\"password\",\"name\":\"blank\"}"))
+			.andExpect(status().isBadRequest());
+		assertThat(userRepository.findByEmail("blank@test.com")).isEmpty();
+	}
+
+	@Test
+	void bodiesLargerThanTheLimitAreRejectedBeforeExecutingTheRequest() throws Exception {
+		IdempotencyFilter filter = new IdempotencyFilter(idempotencyService, objectMapper, DataSize.ofBytes(16));
+
+		MockFilterChain withinLimit = filter(filter, json("large-1", "{\"name\":\"flat\"}"), HttpStatus.OK);
+		assertThat(withinLimit.getRequest()).isNotNull();
+
+		MockFilterChain declared = filter(filter, json("large-2", "{\"name\":\"a large flat\"}"), HttpStatus.PAYLOAD_TOO_LARGE);
+		assertThat(declared.getRequest()).isNull();
+
+		MockHttpServletRequest chunked = new MockHttpServletRequest("POST", "/api/rentals") {
+			@Override
+			public long getContentLengthLong() {
+				return -1;
+			}
+		};
+		chunked.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY, "large-3");
+		chunked.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		chunked.setContent("{\"name\":\"a large flat\"}".getBytes(StandardCharsets.UTF_8));
+		assertThat(filter(filter, chunked, HttpStatus.PAYLOAD_TOO_LARGE).getRequest()).isNull();
+	}
+
+	@Test
+	void readBodiesCanBeReadAgainWithoutBlocking() throws Exception {
+		IdempotencyFilter filter = new IdempotencyFilter(idempotencyService, objectMapper, DataSize.ofBytes(64));
+		MockFilterChain chain = filter(filter, json("non-blocking-1", "{\"name\":\"flat\"}"), HttpStatus.OK);
+
+		ServletInputStream input = chain.getRequest().getInputStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		AtomicBoolean allRead = new AtomicBoolean();
+		input.setReadListener(new ReadListener() {
+			@Override
+			public void onDataAvailable() throws IOException {
+				while (input.isReady() && !input.isFinished()) {
+					body.write(input.read());
+				}
+			}
+
+			@Override
+			public void onAllDataRead() {
+				allRead.set(true);
+			}
+
+			@Override
+			public void onError(Throwable error) {
+			}
+		});
+
+		assertThat(allRead).isTrue();
+		assertThat(body.toString(StandardCharsets.UTF_8)).isEqualTo("{\"name\":\"flat\"}");
+	}
+
+	@Test
+	void unreadBodiesAreFingerprintedWithoutTheirLengthAndBoundary() throws Exception {
+		IdempotencyFilter filter = new IdempotencyFilter(idempotencyService, objectMapper, DataSize.ofBytes(16));
+
+		MockFilterChain original = filter(filter, multipart("POST", "/api/rentals", "multipart-1", "boundary-1", "picture"),
+			HttpStatus.OK);
+		assertThat(original.getRequest()).isNotNull();
+
+		MockFilterChain retry = filter(filter, multipart("POST", "/api/rentals", "multipart-1", "a-new-boundary-2", "picture"),
+			HttpStatus.OK);
+		assertThat(retry.getRequest()).isNull();
+		assertThat(retry.getResponse()).isNull();
+
+		MockFilterChain other = filter(filter, multipart("PUT", "/api/rentals/1", "multipart-1", "boundary-1", "picture"),
+			HttpStatus.UNPROCESSABLE_ENTITY);
+		assertThat(other.getRequest()).isNull();
+	}
+
+	private int storedKeys(String key) {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM idempotency_keys WHERE idempotency_key = ?", Integer.class, key);
+	}
+
+	private static MockFilterChain filter(IdempotencyFilter filter, MockHttpServletRequest request, HttpStatus expected)
+		throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain chain = new MockFilterChain();
+		filter.doFilter(request, response, chain);
+		assertThat(response.getStatus()).isEqualTo(expected.value());
+		return chain;
+	}
+
+	private static MockHttpServletRequest json(String key, String body) {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/rentals");
+		request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY, key);
+		request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		request.setContent(body.getBytes(StandardCharsets.UTF_8));
+		return request;
+	}
+
+	private static MockHttpServletRequest multipart(String method, String uri, String key, String boundary, String content) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+		request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY, key);
+		request.setContentType(MediaType.MULTIPART_FORM_DATA_VALUE + "; boundary=" + boundary);
+		request.setContent(("--" + boundary + "\r\n" + content + "\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+		return request;
+	}
+
+	private static MockHttpServletRequestBuilder register(String key, String body) {
+		return post("/api/auth/register")
+			.header(IdempotencyFilter.IDEMPOTENCY_KEY, key)
+			.contentType(MediaType.APPLICATION_JSON)
+			.content(body);
+	}
+}
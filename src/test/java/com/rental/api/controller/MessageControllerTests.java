@@ -0,0 +1,169 @@
+package com.rental.api.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import com.rental.api.model.AuthenticatedUser;
+import com.rental.api.model.Rental;
+import com.rental.api.model.User;
+import com.rental.api.repository.RentalRepository;
+import com.rental.api.repository.UserRepository;
+import com.rental.api.service.MessageCounters;
+import com.rental.api.service.MessageWriteBehind;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class MessageControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private RentalRepository rentalRepository;
+
+	@Autowired
+	private MessageWriteBehind messageWriteBehind;
+
+	@Autowired
+	private MessageCounters messageCounters;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void writtenMessagesArePushedToTheStreamsOfTheOwner() throws Exception {
+		User owner = user("push-owner");
+		User sender = user("push-sender");
+		Rental rental = rental(owner);
+
+		MvcResult ownerStream = mockMvc.perform(get("/api/messages/inbox/stream").with(as(owner)))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		MvcResult senderStream = mockMvc.perform(get("/api/messages/inbox/stream").with(as(sender)))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+
+		mockMvc.perform(post("/api/messages").with(as(sender))
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"message\":\"is it available?\",\"rental_id\":" + rental.getId() + "}"))
+			.andExpect(status().isOk());
+		assertThat(messageWriteBehind.flush(Duration.ofSeconds(5))).isTrue();
+
+		String event = awaitContent(ownerStream, Duration.ofSeconds(5));
+		assertThat(event)
+			.containsPattern("id:\\d+")
+			.contains("event:message")
+			.contains("\"message\":\"is it available?\"")
+			.contains("\"rental_id\":" + rental.getId())
+			.contains("\"user_id\":" + sender.getId());
+		assertThat(senderStream.getResponse().getContentAsString()).isEmpty();
+	}
+
+	@Test
+	void countersFollowWrittenAndReadMessagesAndCountUntrackedRentalsOnStartup() throws Exception {
+		User owner = user("counted-owner");
+		User sender = user("counted-sender");
+		Rental first = rental(owner);
+		Rental second = rental(owner);
+
+		send(sender, first, 2);
+		send(sender, second, 1);
+		mockMvc.perform(get("/api/messages/counts").with(as(owner)))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.messages").value(3))
+			.andExpect(jsonPath("$.unread").value(3))
+			.andExpect(jsonPath("$.rentals[0].rental_id").value(first.getId()))
+			.andExpect(jsonPath("$.rentals[0].unread").value(2));
+
+		mockMvc.perform(post("/api/messages/read").param("rental_id", first.getId().toString()).with(as(owner)))
+			.andExpect(status().isOk());
+		send(sender, first, 1);
+		mockMvc.perform(get("/api/messages/counts").with(as(owner)))
+			.andExpect(jsonPath("$.messages").value(4))
+			.andExpect(jsonPath("$.unread").value(2))
+			.andExpect(jsonPath("$.rentals[0].unread").value(1))
+			.andExpect(jsonPath("$.rentals[1].unread").value(1));
+
+		// Another node starting does not count the messages counted by this one a second time
+		send(sender, second, 2);
+		new MessageCounters(jdbcTemplate).start();
+		mockMvc.perform(get("/api/messages/counts").with(as(owner)))
+			.andExpect(jsonPath("$.messages").value(6))
+			.andExpect(jsonPath("$.rentals[1].messages").value(3))
+			.andExpect(jsonPath("$.rentals[1].unread").value(3));
+
+		// Messages written before the counters existed are counted on startup
+		jdbcTemplate.update("DELETE FROM rental_message_counters WHERE rental_id = ?", first.getId());
+		messageCounters.countUntracked();
+		mockMvc.perform(get("/api/messages/counts").with(as(owner)))
+			.andExpect(jsonPath("$.rentals[0].messages").value(3))
+			.andExpect(jsonPath("$.rentals[0].unread").value(3));
+	}
+
+	private void send(User sender, Rental rental, int count) throws Exception {
+		for (int i = 0; i < count; i++) {
+			mockMvc.perform(post("/api/messages").with(as(sender))
+					.contentType(MediaType.APPLICATION_JSON)
+					.content("{\"message\":\"hello\",\"rental_id\":" + rental.getId() + "}"))
+				.andExpect(status().isOk());
+		}
+		assertThat(messageWriteBehind.flush(Duration.ofSeconds(5))).isTrue();
+	}
+
+	private Rental rental(User owner) {
+		return rentalRepository.save(new Rental.Builder()
+			.setName("messaged")
+			.setSurface(50)
+			.setPrice(500)
+			.setDescription("description")
+			.setOwner(owner)
+			.build());
+	}
+
+	private User user(String name) {
+		return userRepository.save(new User.Builder()
+			.setName(name)
+			.setEmail(name + "@test.com")
+			.setPassword("password")
+			.build());
+	}
+
+	private static RequestPostProcessor as(User user) {
+		return authentication(new UsernamePasswordAuthenticationToken(AuthenticatedUser.of(user), null, List.of()));
+	}
+
+	/**
+	 * Waits for a complete event, which is written in several chunks and ends with a blank line.
+	 */
+	private static String awaitContent(MvcResult stream, Duration timeout) throws Exception {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		String content = stream.getResponse().getContentAsString();
+		while (!content.contains("\n\n") && System.nanoTime() < deadline) {
+			Thread.sleep(20);
+			content = stream.getResponse().getContentAsString();
+		}
+		return content;
+	}
+}
@@ -0,0 +1,372 @@
+package com.rental.api.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.rental.api.configuration.IdempotencyFilter;
+import com.rental.api.model.PictureStatus;
+import com.rental.api.model.Rental;
+import com.rental.api.model.User;
+import com.rental.api.repository.RentalRepository;
+import com.rental.api.repository.UserRepository;
+import com.rental.api.service.JwtService;
+import com.rental.api.service.LocalStorageService;
+import com.rental.api.service.PictureKeys;
+import com.rental.api.service.RentalService;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class PictureControllerTests {
+
+	@TempDir
+	static Path directory;
+
+	private static final byte[] PICTURE = new byte[200_000];
+
+	@DynamicPropertySource
+	static void localStorage(DynamicPropertyRegistry registry) {
+		registry.add("storage.backend", () -> "local");
+		registry.add("storage.local.directory", directory::toString);
+	}
+
+	@BeforeAll
+	static void generatePicture() {
+		new Random(42).nextBytes(PICTURE);
+	}
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private LocalStorageService storage;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private RentalRepository rentalRepository;
+
+	@Autowired
+	private RentalService rentalService;
+
+	@Autowired
+	private JwtService jwtService;
+
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	@Test
+	void picturesAreServedWithoutAuthentication() throws Exception {
+		storage.uploadStream("house.jpg", new ByteArrayInputStream(PICTURE), "image/jpeg");
+
+		HttpResponse<byte[]> response = get("house.jpg", null);
+
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.headers().firstValue("Content-Type")).hasValue("image/jpeg");
+		assertThat(response.headers().firstValue("Accept-Ranges")).hasValue("bytes");
+		assertThat(response.body()).isEqualTo(PICTURE);
+		assertThat(storage.getFileUrl("house.jpg").toString()).endsWith("/api/pictures/house.jpg");
+	}
+
+	@Test
+	void rangesAreServedAsPartialContent() throws Exception {
+		storage.uploadStream("garden.jpg", new ByteArrayInputStream(PICTURE), "image/jpeg");
+
+		HttpResponse<byte[]> range = get("garden.jpg", "bytes=1000-1999");
+		assertThat(range.statusCode()).isEqualTo(206);
+		assertThat(range.headers().firstValue("Content-Range")).hasValue("bytes 1000-1999/200000");
+		assertThat(range.body()).isEqualTo(Arrays.copyOfRange(PICTURE, 1000, 2000));
+
+		HttpResponse<byte[]> suffix = get("garden.jpg", "bytes=-500");
+		assertThat(suffix.statusCode()).isEqualTo(206);
+		assertThat(suffix.body()).isEqualTo(Arrays.copyOfRange(PICTURE, 199_500, 200_000));
+
+		HttpResponse<byte[]> unsatisfiable = get("garden.jpg", "bytes=300000-");
+		assertThat(unsatisfiable.statusCode()).isEqualTo(416);
+		assertThat(unsatisfiable.headers().firstValue("Content-Range")).hasValue("bytes */200000");
+	}
+
+	@Test
+	void onlyImagesAreServedAsSuch() throws Exception {
+		storage.uploadStream("page.html", new ByteArrayInputStream("<script>alert(1)</script>".getBytes(StandardCharsets.UTF_8)), "text/html");
+
+		HttpResponse<byte[]> response = get("page.html", null);
+
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.headers().firstValue("Content-Type")).hasValue("application/octet-stream");
+		assertThat(response.headers().firstValue("Content-Disposition")).hasValue("attachment");
+		assertThat(response.headers().firstValue("X-Content-Type-Options")).hasValue("nosniff");
+	}
+
+	@Test
+	void nonImageExtensionsAreNotKeptInContentKeys() throws Exception {
+		User owner = user("scripting");
+		String token = jwtService.generateToken(owner);
+		byte[] picture = galleryPicture(0, 98);
+
+		assertThat(createRental(token, "x.svg", "900", picture).statusCode()).isEqualTo(201);
+
+		String url = rentalsOf(owner).get(0).getPicture();
+		String key = url.substring(url.lastIndexOf('/') + 1);
+		assertThat(key).doesNotContain(".");
+		assertThat(PictureKeys.contentKey(PictureKeys.newDigest().digest(picture), "x.WEBP")).endsWith(".webp");
+		HttpResponse<byte[]> response = get(key, null);
+		assertThat(response.headers().firstValue("Content-Type")).hasValue("application/octet-stream");
+		assertThat(response.body()).isEqualTo(picture);
+	}
+
+	@Test
+	void unknownAndInvalidKeysAreNotFound() throws Exception {
+		assertThat(get("missing.jpg", null).statusCode()).isEqualTo(404);
+		assertThat(get(".upload-1.tmp", null).statusCode()).isEqualTo(404);
+	}
+
+	@Test
+	void samePictureIsStoredOnceUnderItsContentKey() throws Exception {
+		User owner = user("agency");
+		String token = jwtService.generateToken(owner);
+
+		assertThat(createRental(token, "first.JPG").statusCode()).isEqualTo(201);
+		assertThat(createRental(token, "second.jpg").statusCode()).isEqualTo(201);
+
+		List<String> pictures = rentalsOf(owner).stream()
+			.map(Rental::getPicture)
+			.distinct()
+			.toList();
+		assertThat(pictures).hasSize(1);
+		String key = pictures.get(0).substring(pictures.get(0).lastIndexOf('/') + 1);
+		assertThat(PictureKeys.isContentAddressed(key)).isTrue();
+		try (Stream<Path> files = Files.list(directory)) {
+			assertThat(files.filter(file -> !file.getFileName().toString().matches("(house|garden)\\.jpg"))
+				.filter(file -> Arrays.equals(read(file), PICTURE))).hasSize(1);
+		}
+
+		HttpResponse<byte[]> response = get(key, null);
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.headers().firstValue("Cache-Control")).hasValue(PictureKeys.IMMUTABLE_CACHE_CONTROL);
+		assertThat(response.body()).isEqualTo(PICTURE);
+	}
+
+	@Test
+	void picturesOfAnInvalidRentalAreNotStored() throws Exception {
+		String token = jwtService.generateToken(user("failing"));
+		byte[] picture = galleryPicture(0, 99);
+
+		assertThat(createRental(token, "dropped.jpg", "not a price", picture).statusCode()).isEqualTo(400);
+
+		String key = PictureKeys.contentKey(PictureKeys.newDigest().digest(picture), "dropped.jpg");
+		assertThat(get(key, null).statusCode()).isEqualTo(404);
+		try (Stream<Path> files = Files.list(directory)) {
+			assertThat(files.filter(file -> Arrays.equals(read(file), picture))).isEmpty();
+		}
+	}
+
+	@Test
+	void retriedUploadsAreReplayedDespiteANewMultipartBoundary() throws Exception {
+		User owner = user("retrying");
+		String token = jwtService.generateToken(owner);
+
+		HttpResponse<String> original = createRental(token, "retried.jpg", "900", PICTURE, "boundary-1", "upload-1");
+		HttpResponse<String> retry = createRental(token, "retried.jpg", "900", PICTURE, "another-boundary-2", "upload-1");
+
+		assertThat(original.statusCode()).isEqualTo(201);
+		assertThat(retry.statusCode()).isEqualTo(201);
+		assertThat(retry.headers().firstValue(IdempotencyFilter.IDEMPOTENT_REPLAYED)).hasValue("true");
+		assertThat(retry.body()).isEqualTo(original.body());
+		assertThat(rentalsOf(owner)).hasSize(1);
+	}
+
+	@Test
+	void galleryIsUploadedThenReplacedOnUpdate() throws Exception {
+		User owner = user("gallery");
+		String token = jwtService.generateToken(owner);
+
+		assertThat(sendGallery(token, "POST", "/api/rentals", 2).statusCode()).isEqualTo(201);
+		Rental rental = rentalsOf(owner).get(0);
+		List<String> gallery = awaitGallery(rental.getId());
+		assertThat(gallery).hasSize(2);
+		assertThat(rentalService.getRentalById(rental.getId()).orElseThrow().getPicture()).isEqualTo(gallery.get(0));
+
+		assertThat(sendGallery(token, "PUT", "/api/rentals/" + rental.getId(), 3).statusCode()).isEqualTo(200);
+		List<String> replaced = awaitGallery(rental.getId());
+		assertThat(replaced).hasSize(3).doesNotHaveDuplicates().doesNotContainAnyElementsOf(gallery);
+		assertThat(get(replaced.get(2).substring(replaced.get(2).lastIndexOf('/') + 1), null).body())
+			.isEqualTo(galleryPicture(2, 3));
+	}
+
+	@Test
+	void onlyTheGalleryOfTheLastUpdateIsKept() throws Exception {
+		User owner = user("updated");
+		String token = jwtService.generateToken(owner);
+		assertThat(sendGallery(token, "POST", "/api/rentals", 1).statusCode()).isEqualTo(201);
+		Rental rental = rentalsOf(owner).get(0);
+		assertThat(awaitGallery(rental.getId())).hasSize(1);
+
+		// The larger gallery of the first update may be uploaded last
+		assertThat(sendGallery(token, "PUT", "/api/rentals/" + rental.getId(), 4).statusCode()).isEqualTo(200);
+		assertThat(sendGallery(token, "PUT", "/api/rentals/" + rental.getId(), 2).statusCode()).isEqualTo(200);
+
+		// Waits for both updates, whichever completes last
+		List<String> gallery = awaitGallery(rental.getId());
+		assertThat(gallery).hasSize(2);
+		assertThat(get(gallery.get(1).substring(gallery.get(1).lastIndexOf('/') + 1), null).body())
+			.isEqualTo(galleryPicture(1, 2));
+		assertThat(rentalService.getRentalWithGallery(rental.getId()).orElseThrow().getGalleryGeneration()).isEqualTo(2);
+	}
+
+	@Test
+	void galleriesOfFullSizePicturesAreAccepted() throws Exception {
+		User owner = user("photographer");
+		String token = jwtService.generateToken(owner);
+
+		// Larger than a single picture upload and than the default servlet multipart limits
+		assertThat(sendGallery(token, "POST", "/api/rentals", 12, 4_000_000).statusCode()).isEqualTo(201);
+		Rental rental = rentalsOf(owner).get(0);
+		assertThat(awaitGallery(rental.getId())).hasSize(12);
+
+		assertThat(sendGallery(token, "PUT", "/api/rentals/" + rental.getId(), 12, 4_000_000).statusCode()).isEqualTo(200);
+		assertThat(awaitGallery(rental.getId())).hasSize(12);
+		assertThat(sendGallery(token, "POST", "/api/rentals/stream", 12, 4_000_000).statusCode()).isEqualTo(201);
+		assertThat(rentalsOf(owner)).hasSize(2);
+	}
+
+	private User user(String name) {
+		return userRepository.save(new User.Builder()
+			.setName(name)
+			.setEmail(name + "@test.com")
+			.setPassword("password")
+			.build());
+	}
+
+	private List<Rental> rentalsOf(User owner) {
+		return rentalRepository.findAll().stream()
+			.filter(rental -> owner.getId().equals(rental.getOwnerId()))
+			.toList();
+	}
+
+	/**
+	 * Waits for the last gallery sent to be uploaded, as older galleries never mark the rental READY.
+	 */
+	private List<String> awaitGallery(Integer id) throws Exception {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		Rental rental = rentalService.getRentalWithGallery(id).orElseThrow();
+		while (rental.getPictureStatus() == PictureStatus.PENDING && System.nanoTime() < deadline) {
+			Thread.sleep(20);
+			rental = rentalService.getRentalWithGallery(id).orElseThrow();
+		}
+		assertThat(rental.getPictureStatus()).isEqualTo(PictureStatus.READY);
+		return rental.getGallery();
+	}
+
+	private HttpResponse<String> sendGallery(String token, String method, String path, int pictures)
+		throws IOException, InterruptedException {
+		return sendGallery(token, method, path, pictures, 10_000);
+	}
+
+	private HttpResponse<String> sendGallery(String token, String method, String path, int pictures, int pictureSize)
+		throws IOException, InterruptedException {
+		List<HttpRequest.BodyPublisher> parts = new ArrayList<>();
+		parts.add(HttpRequest.BodyPublishers.ofString("--boundary\r\nContent-Disposition: form-data; name=\"name\"\r\n\r\nHouse\r\n"
+			+ "--boundary\r\nContent-Disposition: form-data; name=\"surface\"\r\n\r\n120\r\n"
+			+ "--boundary\r\nContent-Disposition: form-data; name=\"price\"\r\n\r\n2000\r\n"
+			+ "--boundary\r\nContent-Disposition: form-data; name=\"description\"\r\n\r\nLarge\r\n"));
+		for (int i = 0; i < pictures; i++) {
+			parts.add(HttpRequest.BodyPublishers.ofString("--boundary\r\nContent-Disposition: form-data; name=\"picture\"; "
+				+ "filename=\"room" + i + ".jpg\"\r\nContent-Type: image/jpeg\r\n\r\n"));
+			parts.add(HttpRequest.BodyPublishers.ofByteArray(galleryPicture(i, pictures, pictureSize)));
+			parts.add(HttpRequest.BodyPublishers.ofString("\r\n"));
+		}
+		parts.add(HttpRequest.BodyPublishers.ofString("--boundary--\r\n"));
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+			.header("Authorization", "Bearer " + token)
+			.header("Content-Type", "multipart/form-data; boundary=boundary")
+			.method(method, HttpRequest.BodyPublishers.concat(parts.toArray(HttpRequest.BodyPublisher[]::new)))
+			.build();
+		return client.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	/**
+	 * A picture of a gallery, distinct from the pictures of galleries of other sizes.
+	 */
+	private byte[] galleryPicture(int position, int pictures) {
+		return galleryPicture(position, pictures, 10_000);
+	}
+
+	private byte[] galleryPicture(int position, int pictures, int size) {
+		byte[] picture = Arrays.copyOf(PICTURE, size);
+		picture[0] = (byte) position;
+		picture[1] = (byte) pictures;
+		return picture;
+	}
+
+	private HttpResponse<String> createRental(String token, String filename) throws IOException, InterruptedException {
+		return createRental(token, filename, "900", PICTURE);
+	}
+
+	private HttpResponse<String> createRental(String token, String filename, String price, byte[] picture)
+		throws IOException, InterruptedException {
+		return createRental(token, filename, price, picture, "boundary", null);
+	}
+
+	private HttpResponse<String> createRental(String token, String filename, String price, byte[] picture,
+		String boundary, String idempotencyKey) throws IOException, InterruptedException {
+		String delimiter = "--" + boundary + "\r\n";
+		byte[] head = (delimiter + "Content-Disposition: form-data; name=\"name\"\r\n\r\nFlat\r\n"
+			+ delimiter + "Content-Disposition: form-data; name=\"surface\"\r\n\r\n40\r\n"
+			+ delimiter + "Content-Disposition: form-data; name=\"price\"\r\n\r\n" + price + "\r\n"
+			+ delimiter + "Content-Disposition: form-data; name=\"description\"\r\n\r\nNice\r\n"
+			+ delimiter + "Content-Disposition: form-data; name=\"picture\"; filename=\"" + filename + "\"\r\n"
+			+ "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+		byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/rentals/stream"))
+			.header("Authorization", "Bearer " + token)
+			.header("Content-Type", "multipart/form-data; boundary=" + boundary)
+			.POST(HttpRequest.BodyPublishers.concat(
+				HttpRequest.BodyPublishers.ofByteArray(head),
+				HttpRequest.BodyPublishers.ofByteArray(picture),
+				HttpRequest.BodyPublishers.ofByteArray(tail)));
+		if (idempotencyKey != null) {
+			request.header(IdempotencyFilter.IDEMPOTENCY_KEY, idempotencyKey);
+		}
+		return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private static byte[] read(Path file) {
+		try {
+			return Files.readAllBytes(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private HttpResponse<byte[]> get(String key, String range) throws IOException, InterruptedException {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/pictures/" + key));
+		if (range != null) {
+			request.header("Range", range);
+		}
+		return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+	}
+}
@@ -0,0 +1,34 @@
+package com.rental.api.monitoring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Test helper asserting the SQL statement budget of an action, typically a MockMvc call.
+ */
+public final class QueryBudget {
+
+	private QueryBudget() {}
+
+	/**
+	 * Runs the action and asserts it stays within the given number of SQL statements
+	 * without executing the same statement twice.
+	 *
+	 * @param maxStatements The statement budget of the action
+	 * @param action        The action to run
+	 * @return The SQL activity of the action, for further assertions
+	 * @throws Exception if the action fails
+	 */
+	public static QueryStats assertWithinBudget(int maxStatements, Callable<?> action) throws Exception {
+		QueryStats stats = QueryStatsRecorder.capture(action);
+
+		assertThat(stats.getStatementCount())
+			.as("SQL statements (%s): %s", stats, stats.getStatementShapes().keySet())
+			.isLessThanOrEqualTo(maxStatements);
+		assertThat(stats.getRepeatedShapes(2))
+			.as("Repeated SQL statements (N+1)")
+			.isEmpty();
+		return stats;
+	}
+}
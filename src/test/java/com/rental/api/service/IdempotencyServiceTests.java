@@ -0,0 +1,67 @@
+package com.rental.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.rental.api.service.IdempotencyService.Claim;
+import com.rental.api.service.IdempotencyService.ClaimState;
+import com.rental.api.service.IdempotencyService.StoredResponse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@SpringBootTest
+class IdempotencyServiceTests {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void duplicateOnAnotherNodeWaitsForTheOriginalThenReplaysIt() throws Exception {
+		IdempotencyService first = node();
+		IdempotencyService second = node();
+		Claim original = first.claim("user:1:nodes", "POST /api/messages");
+		assertThat(original.getState()).isEqualTo(ClaimState.EXECUTE);
+
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			CompletableFuture<Claim> duplicate = CompletableFuture.supplyAsync(() -> {
+				try {
+					return second.claim("user:1:nodes", "POST /api/messages");
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}, executor);
+			Thread.sleep(200);
+			assertThat(duplicate).isNotDone();
+
+			original.complete(new StoredResponse(200, "application/json", null, "{\"message\":\"sent\"}".getBytes(StandardCharsets.UTF_8)));
+
+			Claim replayed = duplicate.join();
+			assertThat(replayed.getState()).isEqualTo(ClaimState.REPLAY);
+			assertThat(new String(replayed.getResponse().getBody(), StandardCharsets.UTF_8)).isEqualTo("{\"message\":\"sent\"}");
+		}
+		assertThat(second.claim("user:1:nodes", "POST /api/rentals").getState()).isEqualTo(ClaimState.MISMATCH);
+	}
+
+	@Test
+	void serverErrorsReleaseTheKey() throws Exception {
+		IdempotencyService node = node();
+		node.claim("user:1:errors", "POST /api/rentals").complete(new StoredResponse(503, null, null, null));
+
+		assertThat(node().claim("user:1:errors", "POST /api/rentals").getState()).isEqualTo(ClaimState.EXECUTE);
+	}
+
+	private IdempotencyService node() {
+		return new IdempotencyService(jdbcTemplate, new SimpleMeterRegistry(), Duration.ofHours(1), Duration.ofSeconds(5),
+			Duration.ofMinutes(5), 100);
+	}
+}
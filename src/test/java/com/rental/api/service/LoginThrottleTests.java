@@ -0,0 +1,34 @@
+package com.rental.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LoginThrottleTests {
+
+	private final LoginThrottle throttle = new LoginThrottle(5, 3, 60, 10, new SimpleMeterRegistry());
+
+	@Test
+	void emailIsThrottledAfterItsBurst() {
+		for (int i = 0; i < 3; i++) {
+			assertThat(throttle.tryAcquire("10.0.0." + i, "User@test.com")).isZero();
+		}
+
+		Duration retryAfter = throttle.tryAcquire("10.0.0.9", "user@test.com");
+		assertThat(retryAfter).isPositive().isLessThanOrEqualTo(Duration.ofSeconds(12));
+	}
+
+	@Test
+	void addressIsThrottledWhateverTheEmail() {
+		for (int i = 0; i < 10; i++) {
+			assertThat(throttle.tryAcquire("10.0.0.1", "user" + i + "@test.com")).isZero();
+		}
+
+		assertThat(throttle.tryAcquire("10.0.0.1", "other@test.com")).isPositive();
+		assertThat(throttle.tryAcquire("10.0.0.2", "other@test.com")).isZero();
+	}
+}
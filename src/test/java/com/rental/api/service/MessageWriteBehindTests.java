@@ -0,0 +1,142 @@
+package com.rental.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MessageWriteBehindTests {
+
+	private final MessagePushService messagePushService = mock(MessagePushService.class);
+	private final MessageCounters messageCounters = mock(MessageCounters.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private MessageWriteBehind writeBehind;
+
+	@BeforeEach
+	void createTables() {
+		database = new EmbeddedDatabaseBuilder()
+			.setType(EmbeddedDatabaseType.H2)
+			.generateUniqueName(true)
+			.build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE rentals (id INT PRIMARY KEY)");
+		jdbcTemplate.execute("CREATE TABLE messages (id INT AUTO_INCREMENT PRIMARY KEY, message VARCHAR(255), "
+			+ "user_id INT, rental_id INT REFERENCES rentals (id), created_at TIMESTAMP, updated_at TIMESTAMP)");
+		jdbcTemplate.update("INSERT INTO rentals (id) VALUES (1)");
+	}
+
+	@AfterEach
+	void shutdown() {
+		if (writeBehind != null) {
+			writeBehind.stop();
+		}
+		database.shutdown();
+	}
+
+	@Test
+	void aFullBatchIsWrittenWithoutWaitingForTheFlushInterval() throws Exception {
+		start(3, Duration.ofSeconds(30));
+
+		for (int i = 0; i < 3; i++) {
+			assertThat(writeBehind.enqueue("hello" + i, 1, 1, 2)).isTrue();
+		}
+
+		assertThat(writeBehind.flush(Duration.ofSeconds(5))).isTrue();
+		assertThat(count()).isEqualTo(3);
+		assertThat(batchSizes().max()).isEqualTo(3);
+		verify(messageCounters).add(Map.of(1, 3L));
+	}
+
+	@Test
+	void aPartialBatchIsWrittenOnceTheFlushIntervalElapsed() throws Exception {
+		start(500, Duration.ofMillis(100));
+
+		assertThat(writeBehind.enqueue("hello", 1, 1, 2)).isTrue();
+
+		assertThat(writeBehind.flush(Duration.ofSeconds(5))).isTrue();
+		assertThat(count()).isEqualTo(1);
+		assertThat(batchSizes().count()).isEqualTo(1);
+		assertThat(batchSizes().max()).isEqualTo(1);
+		verify(messageCounters).add(Map.of(1, 1L));
+		verify(messagePushService).publish(eq(2), any());
+	}
+
+	@Test
+	void stoppingWritesTheQueuedMessagesAndRefusesNewOnes() {
+		start(500, Duration.ofMillis(100));
+		for (int i = 0; i < 10; i++) {
+			assertThat(writeBehind.enqueue("hello" + i, 1, 1, 2)).isTrue();
+		}
+
+		writeBehind.stop();
+
+		assertThat(count()).isEqualTo(10);
+		assertThat(writeBehind.enqueue("too late", 1, 1, 2)).isFalse();
+		assertThat(meterRegistry.get("message.ingestion.rejected").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void stoppingWakesTheWriterWaitingForMessages() throws Exception {
+		start(500, Duration.ofSeconds(30));
+		Thread.sleep(100);
+
+		long started = System.nanoTime();
+		writeBehind.stop();
+
+		assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(5));
+	}
+
+	@Test
+	void aFailedBatchIsRolledBackAndOnlyItsInvalidMessagesAreDropped() throws Exception {
+		start(3, Duration.ofSeconds(30));
+
+		writeBehind.enqueue("first", 1, 1, 2);
+		// About a rental deleted meanwhile
+		writeBehind.enqueue("orphan", 1, 404, 2);
+		writeBehind.enqueue("last", 1, 1, 2);
+
+		assertThat(writeBehind.flush(Duration.ofSeconds(5))).isTrue();
+		assertThat(jdbcTemplate.queryForList("SELECT message FROM messages ORDER BY id", String.class))
+			.containsExactly("first", "last");
+		assertThat(meterRegistry.get("message.ingestion.failed").counter().count()).isEqualTo(1);
+		verify(messageCounters, times(2)).add(Map.of(1, 1L));
+		verify(messageCounters, never()).add(Map.of(404, 1L));
+	}
+
+	private void start(int batchSize, Duration flushInterval) {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+		writeBehind = new MessageWriteBehind(jdbcTemplate, transactionTemplate, messagePushService, messageCounters,
+			meterRegistry, 100, batchSize, flushInterval, Duration.ofSeconds(5));
+		writeBehind.start();
+	}
+
+	private int count() {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM messages", Integer.class);
+	}
+
+	private DistributionSummary batchSizes() {
+		return meterRegistry.get("message.ingestion.batch.size").summary();
+	}
+}
@@ -0,0 +1,155 @@
+package com.rental.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.rental.api.service.PictureCache.CachedPicture;
+import com.rental.api.service.PictureCache.Tier;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PictureCacheTests {
+
+	@TempDir
+	Path directory;
+
+	private StorageBackend storage;
+	private SimpleMeterRegistry meterRegistry;
+	private PictureCache pictureCache;
+
+	@BeforeEach
+	void setUp() {
+		storage = mock(StorageBackend.class);
+		when(storage.getLocalFile(anyString())).thenReturn(Optional.empty());
+		meterRegistry = new SimpleMeterRegistry();
+		pictureCache = new PictureCache(storage, meterRegistry, directory.resolve("cache"), directory.resolve("pictures"),
+			DataSize.ofKilobytes(64), DataSize.ofKilobytes(4), DataSize.ofMegabytes(1));
+	}
+
+	@AfterEach
+	void shutdown() {
+		pictureCache.shutdown();
+	}
+
+	@Test
+	void onlyCacheFilesAreDeletedOnStartupAndTheLocalStorageIsRefused() throws Exception {
+		Path cache = directory.resolve("cache");
+		Files.writeString(cache.resolve("picture-1.cache"), "stale");
+		Files.writeString(cache.resolve("house.jpg"), "kept");
+
+		new PictureCache(storage, meterRegistry, cache, directory.resolve("pictures"),
+			DataSize.ofKilobytes(64), DataSize.ofKilobytes(4), DataSize.ofMegabytes(1)).shutdown();
+
+		try (Stream<Path> files = Files.list(cache)) {
+			assertThat(files.map(file -> file.getFileName().toString())).containsExactly("house.jpg");
+		}
+		assertThatThrownBy(() -> new PictureCache(storage, meterRegistry, cache, cache,
+			DataSize.ofKilobytes(64), DataSize.ofKilobytes(4), DataSize.ofMegabytes(1)))
+			.isInstanceOf(IllegalStateException.class);
+		assertThat(cache.resolve("house.jpg")).exists();
+	}
+
+	@Test
+	void concurrentMissesShareOneDownloadAndSmallPicturesAreHeldInMemory() throws Exception {
+		byte[] content = "small picture".getBytes();
+		CountDownLatch release = new CountDownLatch(1);
+		when(storage.download(eq("small.jpg"), any())).thenAnswer(invocation -> {
+			release.await();
+			Files.write(invocation.getArgument(1, Path.class), content);
+			return true;
+		});
+
+		List<CompletableFuture<Optional<CachedPicture>>> requests;
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			requests = IntStream.range(0, 8)
+				.mapToObj(i -> CompletableFuture.supplyAsync(() -> pictureCache.get("small.jpg"), executor))
+				.toList();
+			Thread.sleep(100);
+			release.countDown();
+		}
+
+		verify(storage, times(1)).download(eq("small.jpg"), any());
+		for (CompletableFuture<Optional<CachedPicture>> request : requests) {
+			assertThat(request.join()).isPresent();
+		}
+		CachedPicture picture = pictureCache.get("small.jpg").orElseThrow();
+		assertThat(picture.getTier()).isEqualTo(Tier.MEMORY);
+		assertThat(picture.getLength()).isEqualTo(content.length);
+		ByteBuffer bytes = picture.getContent();
+		assertThat(bytes.isDirect()).isTrue();
+		byte[] read = new byte[bytes.remaining()];
+		bytes.get(read);
+		assertThat(read).isEqualTo(content);
+	}
+
+	@Test
+	void largePicturesAreServedFromDiskAndMissingOnesAreEmpty() throws Exception {
+		byte[] content = new byte[8 * 1024];
+		when(storage.download(eq("large.jpg"), any())).thenAnswer(invocation -> {
+			Files.write(invocation.getArgument(1, Path.class), content);
+			return true;
+		});
+		when(storage.download(eq("missing.jpg"), any())).thenReturn(false);
+
+		CachedPicture picture = pictureCache.get("large.jpg").orElseThrow();
+		pictureCache.served(picture, picture.getLength());
+
+		assertThat(picture.getTier()).isEqualTo(Tier.DISK);
+		assertThat(picture.getFile()).hasBinaryContent(content);
+		assertThat(pictureCache.get("large.jpg").orElseThrow().getFile()).isEqualTo(picture.getFile());
+		verify(storage, times(1)).download(eq("large.jpg"), any());
+		assertThat(meterRegistry.get("picture.cache.served.bytes").tag("tier", "disk").counter().count())
+			.isEqualTo(content.length);
+
+		assertThat(pictureCache.get("missing.jpg")).isEmpty();
+	}
+
+	@Test
+	void evictedFilesAreDeletedOnceTheRequestsServingThemAreDone() throws Exception {
+		byte[] content = new byte[8 * 1024];
+		when(storage.download(eq("large.jpg"), any())).thenAnswer(invocation -> {
+			Files.write(invocation.getArgument(1, Path.class), content);
+			return true;
+		});
+		CachedPicture picture = pictureCache.get("large.jpg").orElseThrow();
+
+		AsyncCache<?, ?> disk = (AsyncCache<?, ?>) ReflectionTestUtils.getField(pictureCache, "disk");
+		disk.synchronous().asMap().remove("large.jpg");
+		// Leaves time to the removal listener, which runs asynchronously
+		Thread.sleep(200);
+		assertThat(picture.getFile()).hasBinaryContent(content);
+
+		picture.close();
+		for (int attempt = 0; attempt < 50 && Files.exists(picture.getFile()); attempt++) {
+			Thread.sleep(100);
+		}
+		assertThat(picture.getFile()).doesNotExist();
+	}
+}
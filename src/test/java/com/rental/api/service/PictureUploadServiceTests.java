@@ -0,0 +1,92 @@
+package com.rental.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.mock.web.MockMultipartFile;
+
+import com.rental.api.service.PictureUploadService.StagedPicture;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PictureUploadServiceTests {
+
+	private final StorageBackend storage = mock(StorageBackend.class);
+	private final PictureUploadService pictureUploadService = new PictureUploadService(storage, new SimpleMeterRegistry(),
+		4, 2, 1, Duration.ofMillis(10));
+
+	@AfterEach
+	void shutdown() {
+		pictureUploadService.shutdown();
+	}
+
+	@Test
+	void galleryUrlsAreReturnedInGalleryOrder() throws Exception {
+		when(storage.getFileUrl(anyString()))
+			.thenAnswer(invocation -> URI.create("http://pictures/" + invocation.getArgument(0, String.class)).toURL());
+
+		List<String> urls = pictureUploadService.uploadAll(List.of(staged("a.jpg"), staged("b.jpg"), staged("c.jpg")))
+			.join().stream().map(Object::toString).toList();
+
+		assertThat(urls).containsExactly("http://pictures/a.jpg", "http://pictures/b.jpg", "http://pictures/c.jpg");
+	}
+
+	@Test
+	void firstFailureCancelsTheOtherUploads() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch interrupted = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			started.countDown();
+			try {
+				Thread.sleep(Duration.ofMinutes(1));
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+				throw new IllegalStateException(e);
+			}
+			return null;
+		}).when(storage).uploadFile(eq("slow.jpg"), any(), any());
+		doAnswer(invocation -> {
+			started.await();
+			throw new IllegalStateException("storage unavailable");
+		}).when(storage).uploadFile(eq("broken.jpg"), any(), any());
+
+		assertThatThrownBy(() -> pictureUploadService.uploadAll(List.of(staged("slow.jpg"), staged("broken.jpg"))).join())
+			.isInstanceOf(CompletionException.class)
+			.hasRootCauseMessage("storage unavailable");
+		assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	void picturesStagedBeyondTheMaxPendingAreRejectedUntilOneIsDiscarded() {
+		MockMultipartFile file = new MockMultipartFile("picture", "a.jpg", "image/jpeg", new byte[] { 1, 2, 3 });
+		StagedPicture first = pictureUploadService.stage(file);
+		StagedPicture second = pictureUploadService.stage(file);
+
+		assertThatThrownBy(() -> pictureUploadService.stage(file)).isInstanceOf(TaskRejectedException.class);
+
+		pictureUploadService.discard(first.getPath());
+		pictureUploadService.discard(pictureUploadService.stage(file).getPath());
+		pictureUploadService.discard(second.getPath());
+	}
+
+	private StagedPicture staged(String keyName) {
+		return new StagedPicture(Path.of(keyName), keyName, "image/jpeg");
+	}
+}
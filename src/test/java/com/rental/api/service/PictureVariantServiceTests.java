@@ -0,0 +1,98 @@
+package com.rental.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.rental.api.model.PictureVariants;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PictureVariantServiceTests {
+
+	@TempDir
+	Path directory;
+
+	private PictureUploadService pictureUploadService;
+	private PictureVariantService pictureVariantService;
+
+	@AfterEach
+	void shutdown() {
+		pictureVariantService.shutdown();
+		pictureUploadService.shutdown();
+	}
+
+	@Test
+	void variantsFitTheirSizeAndKeepTheAspectRatio() throws IOException {
+		LocalStorageService storage = service(100_000_000);
+		Path picture = picture(4000, 3000);
+
+		PictureVariants variants = pictureVariantService.generate(picture).join();
+
+		assertThat(dimensions(storage, variants.getFull())).containsExactly(1600, 1200);
+		assertThat(dimensions(storage, variants.getCard())).containsExactly(640, 480);
+		assertThat(dimensions(storage, variants.getThumbnail())).containsExactly(240, 180);
+		assertThat(picture).exists();
+	}
+
+	@Test
+	void variantsOfAStoredPictureAreGeneratedFromADownloadedCopy() throws IOException {
+		LocalStorageService storage = service(100_000_000);
+		storage.uploadFile("cover.png", picture(1000, 500), "image/png");
+
+		PictureVariants variants = pictureVariantService.generateStored("cover.png").join();
+
+		assertThat(dimensions(storage, variants.getFull())).containsExactly(1000, 500);
+		assertThat(dimensions(storage, variants.getThumbnail())).containsExactly(240, 120);
+		assertThatThrownBy(() -> pictureVariantService.generateStored("missing.png").join())
+			.isInstanceOf(CompletionException.class)
+			.hasCauseInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void picturesOverThePixelLimitAreRejectedFromTheirHeader() throws IOException {
+		service(1_000_000);
+		Path picture = picture(2000, 1000);
+
+		assertThatThrownBy(() -> pictureVariantService.generate(picture).join())
+			.isInstanceOf(CompletionException.class)
+			.hasCauseInstanceOf(IllegalArgumentException.class);
+	}
+
+	private LocalStorageService service(long maxPixels) {
+		LocalStorageService storage = new LocalStorageService(directory.resolve("storage"), "http://localhost/api/pictures/");
+		pictureUploadService = new PictureUploadService(storage, new SimpleMeterRegistry(), 4, 256, 1, Duration.ZERO);
+		pictureVariantService = new PictureVariantService(pictureUploadService, new SimpleMeterRegistry(),
+			2, 4, maxPixels, 240, 640, 1600, 0.85f);
+		return storage;
+	}
+
+	private Path picture(int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setColor(Color.ORANGE);
+		graphics.fillRect(0, 0, width / 2, height);
+		graphics.dispose();
+		Path file = directory.resolve("picture.png");
+		ImageIO.write(image, "png", file.toFile());
+		return file;
+	}
+
+	private int[] dimensions(LocalStorageService storage, String url) throws IOException {
+		BufferedImage image = ImageIO.read(storage.resolve(url.substring(url.lastIndexOf('/') + 1)).toFile());
+		return new int[] { image.getWidth(), image.getHeight() };
+	}
+}
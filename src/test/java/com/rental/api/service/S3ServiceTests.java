@@ -0,0 +1,143 @@
+package com.rental.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class S3ServiceTests {
+
+	@TempDir
+	Path directory;
+
+	private final AmazonS3 s3client = mock(AmazonS3.class);
+	private final S3Service s3Service = new S3Service(s3client, new SimpleMeterRegistry(), 4, 64, 2, Duration.ZERO);
+
+	@BeforeEach
+	void configure() {
+		ReflectionTestUtils.setField(s3Service, "bucketName", "bucket");
+		ReflectionTestUtils.setField(s3Service, "partSize", DataSize.ofMegabytes(5));
+		ReflectionTestUtils.setField(s3Service, "multipartThreshold", DataSize.ofMegabytes(8));
+
+		InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+		initiated.setUploadId("upload");
+		when(s3client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiated);
+	}
+
+	@AfterEach
+	void shutdown() {
+		s3Service.shutdown();
+	}
+
+	@Test
+	void smallFilesAreUploadedWithASingleRequest() throws IOException {
+		s3Service.uploadFile("small.jpg", file(DataSize.ofMegabytes(7)), "image/jpeg");
+
+		verify(s3client).putObject(any(PutObjectRequest.class));
+		verify(s3client, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+	}
+
+	@Test
+	void largeFilesAreUploadedInPartsRetriedOnTheirOwn() throws IOException {
+		AtomicInteger calls = new AtomicInteger();
+		when(s3client.uploadPart(any(UploadPartRequest.class))).thenAnswer(invocation -> {
+			UploadPartRequest part = invocation.getArgument(0);
+			if (part.getPartNumber() == 2 && calls.getAndIncrement() == 0) {
+				throw new SdkClientException("Connection reset");
+			}
+			UploadPartResult result = new UploadPartResult();
+			result.setPartNumber(part.getPartNumber());
+			result.setETag("etag-" + part.getPartNumber());
+			return result;
+		});
+
+		s3Service.uploadFile("large.jpg", file(DataSize.ofMegabytes(12)), "image/jpeg");
+
+		ArgumentCaptor<CompleteMultipartUploadRequest> completed = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+		verify(s3client).completeMultipartUpload(completed.capture());
+		assertThat(completed.getValue().getPartETags()).extracting(etag -> etag.getETag())
+			.containsExactly("etag-1", "etag-2", "etag-3");
+		verify(s3client, times(4)).uploadPart(any(UploadPartRequest.class));
+	}
+
+	@Test
+	void partsBeyondTheQueueAreUploadedByTheUploadingThread() throws IOException {
+		S3Service saturated = new S3Service(s3client, new SimpleMeterRegistry(), 1, 0, 1, Duration.ZERO);
+		ReflectionTestUtils.setField(saturated, "bucketName", "bucket");
+		ReflectionTestUtils.setField(saturated, "partSize", DataSize.ofMegabytes(5));
+		ReflectionTestUtils.setField(saturated, "multipartThreshold", DataSize.ofMegabytes(8));
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+		when(s3client.uploadPart(any(UploadPartRequest.class))).thenAnswer(invocation -> {
+			UploadPartRequest part = invocation.getArgument(0);
+			threads.add(Thread.currentThread().getName());
+			if (part.getPartNumber() == 1) {
+				// Keeps the only executor thread busy while the other parts are submitted
+				Thread.sleep(200);
+			}
+			UploadPartResult result = new UploadPartResult();
+			result.setPartNumber(part.getPartNumber());
+			result.setETag("etag-" + part.getPartNumber());
+			return result;
+		});
+
+		try {
+			saturated.uploadFile("large.jpg", file(DataSize.ofMegabytes(12)), "image/jpeg");
+		} finally {
+			saturated.shutdown();
+		}
+
+		ArgumentCaptor<CompleteMultipartUploadRequest> completed = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+		verify(s3client).completeMultipartUpload(completed.capture());
+		assertThat(completed.getValue().getPartETags()).hasSize(3);
+		assertThat(threads).contains(Thread.currentThread().getName());
+	}
+
+	@Test
+	void failedUploadsAreAborted() throws IOException {
+		when(s3client.uploadPart(any(UploadPartRequest.class))).thenThrow(new SdkClientException("Connection reset"));
+
+		assertThatThrownBy(() -> s3Service.uploadFile("large.jpg", file(DataSize.ofMegabytes(12)), "image/jpeg"))
+			.hasRootCauseMessage("Connection reset");
+
+		verify(s3client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+		verify(s3client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+	}
+
+	private Path file(DataSize size) throws IOException {
+		Path file = Files.createTempFile(directory, "picture-", ".jpg");
+		Files.write(file, new byte[(int) size.toBytes()]);
+		return file;
+	}
+}
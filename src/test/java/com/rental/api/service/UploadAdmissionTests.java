@@ -0,0 +1,73 @@
+package com.rental.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.rental.api.service.UploadAdmission.Permit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class UploadAdmissionTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final UploadAdmission admission = new UploadAdmission(2, DataSize.ofMegabytes(10), 1,
+		Duration.ofMillis(200), Duration.ofSeconds(5), meterRegistry);
+
+	@BeforeEach
+	void bindMetrics() {
+		admission.bindTo(meterRegistry);
+	}
+
+	@Test
+	void uploadsOverTheByteLimitWaitThenTimeOut() throws InterruptedException {
+		Permit first = admission.tryAdmit(DataSize.ofMegabytes(8).toBytes()).orElseThrow();
+
+		assertThat(admission.tryAdmit(DataSize.ofMegabytes(4).toBytes())).isEmpty();
+		assertThat(rejections("timeout")).isEqualTo(1);
+
+		first.close();
+		first.close();
+		assertThat(meterRegistry.get("rental.upload.admission.in.flight").gauge().value()).isZero();
+		// Alone, an upload is admitted whatever its size
+		assertThat(admission.tryAdmit(DataSize.ofMegabytes(50).toBytes())).isPresent();
+	}
+
+	@Test
+	void waitingUploadIsAdmittedOnReleaseAndOthersAreRejectedOnceTheQueueIsFull() throws Exception {
+		Permit first = admission.tryAdmit(1).orElseThrow();
+		Permit second = admission.tryAdmit(1).orElseThrow();
+
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			CompletableFuture<Optional<Permit>> waiting = CompletableFuture.supplyAsync(() -> {
+				try {
+					return admission.tryAdmit(1);
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}, executor);
+			while (meterRegistry.get("rental.upload.admission.waiting").gauge().value() < 1) {
+				Thread.onSpinWait();
+			}
+
+			assertThat(admission.tryAdmit(1)).isEmpty();
+			assertThat(rejections("queue-full")).isEqualTo(1);
+
+			first.close();
+			assertThat(waiting.join()).isPresent();
+		}
+		second.close();
+	}
+
+	private double rejections(String reason) {
+		return meterRegistry.get("rental.upload.admission.rejections").tag("reason", reason).counter().count();
+	}
+}